@@ -9,6 +9,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
+import androidx.lifecycle.ViewModelProvider;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
@@ -16,9 +17,25 @@ import org.greenrobot.eventbus.ThreadMode;
 
 import com.example.prt.R;
 
+import com.example.prt.module.AI.AIRequestCache;
+import com.example.prt.module.AI.AIResponseAssembler;
+import com.example.prt.module.Chat.ChatStore;
+import com.example.prt.module.Chat.ChatViewModel;
+import com.example.prt.module.Geofence.GeofenceEngine;
+import com.example.prt.module.Location.LocationBatcher;
+import com.example.prt.module.Location.LocationSmoother;
+import com.example.prt.module.Network.NetworkCore;
+import com.example.prt.module.Track.TrackPyramidManager;
+import com.example.prt.module.Track.TrackStore;
+import com.example.prt.module.Upload.ImagePreparer;
+import com.example.prt.module.Upload.UploadEngine;
+import com.example.prt.module.Video.ClipRecorder;
+import com.example.prt.module.Video.VideoStreamReceiver;
 import com.example.prt.module.WebSockets.WebSocketManager;
 import com.example.prt.module.WebSockets.WebSocketMessage;
 
+import java.util.UUID;
+
 /**
  * 主Activity - 应用的主界面
  *
@@ -35,6 +52,11 @@ public class MainActivity extends AppCompatActivity {
     // 日志标签，用于在Logcat中查看日志
     private static final String TAG = "MainActivity";
 
+    // 位置批量上传模式
+    // true：位置点先攒起来，由LocationBatcher增量编码后一帧发送
+    // false：每个位置点单独发一条JSON消息
+    private boolean locationBatchingEnabled = true;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -46,11 +68,87 @@ public class MainActivity extends AppCompatActivity {
             return insets;
         });
 
+        // 读取网络配置（assets/websocket_config.json），要在用到任何网络组件之前
+        NetworkCore.init(getApplicationContext());
+
         // 注册EventBus
         // EventBus是一个消息总线，用于接收WebSocket消息
         // 注册后，这个Activity就可以接收WebSocket发来的消息了
         EventBus.getDefault().register(this);
 
+        // 注册位置平滑回调
+        // 位置更新（location_update）不再通过onWebSocketMessage分发，由LocationSmoother做卡尔曼滤波后回调这里
+        // 只有宠物真的移动了才需要重绘地图，GPS抖动会被过滤掉
+        LocationSmoother.getInstance().setListener(new LocationSmoother.Listener() {
+            @Override
+            public void onSmoothedLocation(final String petId, final double latitude, final double longitude,
+                                           boolean significantMove) {
+                if (significantMove) {
+                    // 回调在位置线程，切到主线程更新地图
+                    runOnUiThread(() -> onPetMoved(petId, latitude, longitude));
+                }
+            }
+        });
+
+        // 启动电子围栏引擎
+        // 引擎会自己订阅位置更新，进出围栏时发出geofence_enter / geofence_exit消息
+        GeofenceEngine.getInstance();
+
+        // 初始化轨迹存储
+        // 之后收到的位置更新会自动保存到手机上，可以随时查询历史轨迹
+        TrackStore.getInstance().init(getApplicationContext());
+
+        // 启动轨迹金字塔，收到的位置会按缩放级别增量构建，供地图快速绘制历史轨迹
+        TrackPyramidManager.getInstance();
+
+        // 初始化聊天记录存储
+        // 打开应用时直接显示本地的聊天记录，连接成功后只同步离线期间的新消息
+        ChatStore.getInstance().init(getApplicationContext());
+
+        // 聊天列表
+        // 新消息会攒到下一帧统一处理，差异在后台线程计算，界面只做局部刷新
+        ChatViewModel chatViewModel = new ViewModelProvider(this).get(ChatViewModel.class);
+        chatViewModel.getUpdates().observe(this, update -> {
+            // 这里可以刷新RecyclerView，例如：
+            // chatAdapter.setMessages(update.messages);
+            // update.diff.dispatchUpdatesTo(chatAdapter);
+            Log.d(TAG, "聊天列表更新：" + update.messages.size() + "条");
+        });
+
+        // 启用AI回复的磁盘缓存，应用重启后同样的问题也不用重新请求
+        AIRequestCache.getInstance().init(getApplicationContext());
+
+        // 初始化视频片段录制器，之后可以随时保存最近一段视频
+        ClipRecorder.getInstance().init(getApplicationContext());
+
+        // 初始化上传引擎，照片和视频片段通过HTTP分块上传，中断后可以从断点继续
+        UploadEngine.getInstance().init(getApplicationContext());
+
+        // 初始化图片预处理，照片上传前先在后台缩小、重新压缩
+        ImagePreparer.getInstance().init(getApplicationContext());
+
+        // 注册视频画面回调
+        // 视频帧经过抖动缓冲和后台解码，这里只会收到最新的一帧画面
+        VideoStreamReceiver.getInstance().setFrameListener(new VideoStreamReceiver.FrameListener() {
+            @Override
+            public void onVideoFrame(android.graphics.Bitmap bitmap) {
+                // 这里可以把画面显示到ImageView上
+                // 例如：videoView.setImageBitmap(bitmap);
+            }
+        });
+
+        // 注册AI回复回调
+        // AI回复是分片发过来的，边收边显示，每帧最多回调一次
+        AIResponseAssembler.getInstance().setListener(new AIResponseAssembler.Listener() {
+            @Override
+            public void onResponseUpdated(String requestId, CharSequence text, boolean done) {
+                // 这里可以把回复显示到TextView上，例如：aiTextView.setText(text);
+                if (done) {
+                    Log.d(TAG, "AI回复接收完毕：" + requestId + "，共" + text.length() + "字");
+                }
+            }
+        });
+
         // 初始化WebSocket连接
         initWebSocket();
     }
@@ -116,6 +214,12 @@ public class MainActivity extends AppCompatActivity {
                 handleLocationMessage(message);
                 break;
 
+            case WebSocketMessage.TYPE_GEOFENCE_ENTER:
+            case WebSocketMessage.TYPE_GEOFENCE_EXIT:
+                // 电子围栏事件
+                handleGeofenceEvent(message);
+                break;
+
             case WebSocketMessage.TYPE_AI_RESPONSE:
                 // AI响应
                 handleAIResponse(message);
@@ -162,11 +266,9 @@ public class MainActivity extends AppCompatActivity {
      * 处理聊天消息
      */
     private void handleChatMessage(WebSocketMessage message) {
+        // 消息已经由ChatStore保存，聊天列表通过ChatViewModel按帧批量刷新
+        // 这里不再每条消息弹一个Toast，一下子来很多条时会排很长的队
         Log.d(TAG, "收到聊天消息：" + message.getData());
-        Toast.makeText(this, "聊天消息：" + message.getData(), Toast.LENGTH_SHORT).show();
-
-        // 这里可以更新聊天界面
-        // 例如：把消息添加到聊天列表中
     }
 
     /**
@@ -187,14 +289,39 @@ public class MainActivity extends AppCompatActivity {
         // }
     }
 
+    /**
+     * 宠物发生了显著移动
+     *
+     * @param petId     宠物ID
+     * @param latitude  平滑后的纬度
+     * @param longitude 平滑后的经度
+     */
+    private void onPetMoved(String petId, double latitude, double longitude) {
+        Log.d(TAG, "宠物" + petId + "移动到：" + latitude + ", " + longitude);
+
+        // 这里可以更新地图上宠物的位置
+    }
+
+    /**
+     * 处理电子围栏事件
+     *
+     * data格式：{"petId":"pet1","fenceId":"yard","fenceName":"院子","lat":39.9,"lng":116.4}
+     */
+    private void handleGeofenceEvent(WebSocketMessage message) {
+        Log.d(TAG, "收到围栏事件：" + message.getData());
+
+        if (WebSocketMessage.TYPE_GEOFENCE_EXIT.equals(message.getType())) {
+            // 宠物离开了围栏，提醒用户
+            Toast.makeText(this, "宠物离开了安全区域：" + message.getData(), Toast.LENGTH_LONG).show();
+        }
+    }
+
     /**
      * 处理AI响应
      */
     private void handleAIResponse(WebSocketMessage message) {
-        Log.d(TAG, "收到AI响应：" + message.getData());
-        Toast.makeText(this, "AI回复：" + message.getData(), Toast.LENGTH_LONG).show();
-
-        // 这里可以显示AI的回复
+        // 交给拼接器按请求ID拼接分片，界面在下一帧统一刷新
+        AIResponseAssembler.getInstance().onMessage(message);
     }
 
     /**
@@ -217,6 +344,11 @@ public class MainActivity extends AppCompatActivity {
         // 如果不取消注册，可能会导致内存泄漏
         EventBus.getDefault().unregister(this);
 
+        // 取消位置平滑回调，防止Activity泄漏
+        LocationSmoother.getInstance().setListener(null);
+        VideoStreamReceiver.getInstance().setFrameListener(null);
+        AIResponseAssembler.getInstance().setListener(null);
+
         Log.d(TAG, "MainActivity销毁");
 
         // 注意：这里不要断开WebSocket连接！
@@ -246,12 +378,16 @@ public class MainActivity extends AppCompatActivity {
                 WebSocketMessage.TYPE_CHAT,
                 content
         );
+        // 消息ID用于和服务器同步回来的聊天历史去重
+        message.setMessageId(UUID.randomUUID().toString());
 
         // 发送消息
         boolean success = WebSocketManager.getInstance().sendMessage(message);
 
         if (success) {
             Log.d(TAG, "聊天消息发送成功");
+            ChatStore.getInstance().addOutgoing(message.getMessageId(), content,
+                    message.getTimestamp());
         } else {
             Log.e(TAG, "聊天消息发送失败");
             Toast.makeText(this, "消息发送失败", Toast.LENGTH_SHORT).show();
@@ -270,6 +406,12 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
+        // 批量模式：交给LocationBatcher缓冲，攒够一批或超时后统一发送
+        if (locationBatchingEnabled) {
+            LocationBatcher.getInstance().add(latitude, longitude, System.currentTimeMillis());
+            return;
+        }
+
         // 构造位置数据（JSON格式）
         String locationData = "{\"lat\":" + latitude + ",\"lng\":" + longitude + "}";
 
@@ -287,17 +429,25 @@ public class MainActivity extends AppCompatActivity {
      *
      * @param question 要问AI的问题
      */
-    private void sendAIRequest(String question) {
+    private void sendAIRequest(final String question) {
         if (!WebSocketManager.getInstance().isConnected()) {
             Toast.makeText(this, "WebSocket未连接", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // 发送AI请求
-        WebSocketManager.getInstance().sendMessage(
-                WebSocketMessage.TYPE_AI_REQUEST,
-                question
-        );
+        // 通过缓存发送：同样的问题刚问过时直接用缓存的回复，
+        // 正在等待回复时再问一次也不会重复发送
+        // 没有缓存时会发出带messageId的ai_request，分片回复由AIResponseAssembler边收边显示
+        AIRequestCache.getInstance()
+                .request(question)
+                .whenComplete((answer, error) -> runOnUiThread(() -> {
+                    if (error != null) {
+                        Toast.makeText(this, "AI请求失败：" + error.getMessage(), Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    // 这里可以把完整的回复显示到TextView上
+                    Log.d(TAG, "AI回复：" + answer);
+                }));
 
         Log.d(TAG, "AI请求已发送：" + question);
     }
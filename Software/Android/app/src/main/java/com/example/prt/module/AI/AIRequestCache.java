@@ -0,0 +1,512 @@
+package com.example.prt.module.AI;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.prt.module.WebSockets.WebSocketManager;
+import com.example.prt.module.WebSockets.WebSocketMessage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * AI请求缓存（单例模式）
+ *
+ * AI分析是服务器上最贵的操作，但同样的问题经常会被重复问：
+ * - 用户刚问过一遍，过一会儿又点了一次
+ * - 第一次请求还没回来，用户又点了一次（或者两个页面同时发起同一个请求）
+ *
+ * 缓存的做法：
+ * 1. 缓存键 = 规范化后的问题
+ *    规范化：去掉首尾空白、合并连续空白、转小写、去掉结尾的标点
+ *    所以"今天吃什么？"和" 今天吃什么 "算同一个问题
+ *    ai_request只发送问题本身，服务器的回答只取决于问题，所以键里也只有问题；
+ *    以后请求里带上宠物信息等上下文时，这些内容也要加进缓存键
+ * 2. 内存缓存：LRU（最近最少使用）淘汰，并且每条都有过期时间（TTL）
+ * 3. 磁盘缓存（可选，调用init()之后启用）：保存在cacheDir，应用重启后还能用
+ * 4. 请求合并（single-flight）：同一个键已经有请求在路上时，不再重复发送，
+ *    后来的调用直接拿到同一个CompletableFuture，回复到了一起完成
+ *
+ * 流程：
+ * request() → 内存缓存命中？直接返回
+ *           → 已经有同样的请求在路上？返回那个Future
+ *           → 后台线程查磁盘缓存 → 命中就返回，否则发送ai_request
+ * AIResponseAssembler每收到一个分片 → onResponseProgress()，推迟超时
+ * AIResponseAssembler拼完回复 → onResponseComplete() → 写入缓存，完成Future
+ *
+ * 超时：
+ * 回复是分片流式发回来的，长回答可能要好几分钟，所以超时从最后一个分片算起，
+ * 超过REQUEST_TIMEOUT一个分片也没有收到才让等待的调用方失败
+ * 超时之后回复又到了，仍然写入缓存（在LATE_RESPONSE_WINDOW之内）
+ *
+ * 使用示例：
+ * AIRequestCache.getInstance().request("今天应该喂多少？")
+ *         .thenAccept(answer -> Log.d(TAG, answer));
+ */
+public class AIRequestCache {
+
+    // 日志标签
+    private static final String TAG = "AIRequestCache";
+
+    // 磁盘缓存目录名
+    private static final String DIR_NAME = "ai_cache";
+
+    // 内存缓存最多保存多少条
+    private static final int MAX_MEMORY_ENTRIES = 64;
+
+    // 磁盘缓存最多保存多少条
+    private static final int MAX_DISK_ENTRIES = 256;
+
+    // 默认的缓存有效期（毫秒）
+    private static final long DEFAULT_TTL = 30 * 60 * 1000;
+
+    // 请求超时时间（毫秒）：这么久一个分片也没有收到
+    private static final long REQUEST_TIMEOUT = 60 * 1000;
+
+    // 超时之后还等多久迟到的回复（毫秒），在这之内到达的回复仍然写入缓存
+    private static final long LATE_RESPONSE_WINDOW = 10 * 60 * 1000;
+
+    // ========== 单例相关 ==========
+
+    private static volatile AIRequestCache instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static AIRequestCache getInstance() {
+        if (instance == null) {
+            synchronized (AIRequestCache.class) {
+                if (instance == null) {
+                    instance = new AIRequestCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 成员变量 ==========
+
+    // 内存缓存（accessOrder=true，最近使用的排在最后）
+    private final LinkedHashMap<String, CacheEntry> memory =
+            new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    return size() > MAX_MEMORY_ENTRIES;
+                }
+            };
+
+    // 正在进行的请求：缓存键 → Future
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight =
+            new ConcurrentHashMap<>();
+
+    // 已经发出、还没有收齐回复的请求：请求ID（messageId）→ 请求
+    private final ConcurrentHashMap<String, PendingRequest> pending = new ConcurrentHashMap<>();
+
+    // 磁盘缓存目录，null表示不启用磁盘缓存
+    private volatile File diskDir;
+
+    // 缓存有效期（毫秒）
+    private volatile long ttl = DEFAULT_TTL;
+
+    // 后台线程（读写磁盘缓存）
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+
+    // 主线程Handler（请求超时）
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 统计
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long coalescedCount = 0;
+
+    private AIRequestCache() {
+    }
+
+    // ========== 初始化 ==========
+
+    /**
+     * 启用磁盘缓存（可选）
+     *
+     * @param context 上下文（建议传ApplicationContext）
+     */
+    public void init(Context context) {
+        File dir = new File(context.getCacheDir(), DIR_NAME);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "创建缓存目录失败：" + dir);
+            return;
+        }
+        diskDir = dir;
+        Log.d(TAG, "AI磁盘缓存已启用：" + dir);
+    }
+
+    /**
+     * 设置缓存有效期
+     *
+     * @param ttlMillis 有效期（毫秒）
+     */
+    public void setTtl(long ttlMillis) {
+        this.ttl = ttlMillis;
+    }
+
+    // ========== 发起请求 ==========
+
+    /**
+     * 发起AI请求（优先使用缓存）
+     *
+     * @param question 问题
+     * @return 回复的Future；请求失败或超时时会异常完成
+     */
+    public CompletableFuture<String> request(final String question) {
+        final String key = cacheKey(question);
+
+        // 1. 内存缓存
+        String cached = getFromMemory(key);
+        if (cached != null) {
+            synchronized (this) {
+                hitCount++;
+            }
+            Log.d(TAG, "AI缓存命中：" + key);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // 2. 同样的请求已经在路上了
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            synchronized (this) {
+                coalescedCount++;
+            }
+            Log.d(TAG, "合并重复的AI请求：" + key);
+            return existing;
+        }
+
+        // 3. 磁盘缓存，没有就真正发送请求
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String diskCached = readFromDisk(key);
+                if (diskCached != null) {
+                    synchronized (AIRequestCache.this) {
+                        hitCount++;
+                    }
+                    putToMemory(key, diskCached);
+                    finish(key, diskCached, null);
+                    return;
+                }
+                synchronized (AIRequestCache.this) {
+                    missCount++;
+                }
+                send(key, question);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 收到一个AI回复的分片（由AIResponseAssembler调用）
+     *
+     * @param requestId 请求ID（messageId）
+     */
+    public void onResponseProgress(String requestId) {
+        PendingRequest request = pending.get(requestId);
+        if (request != null) {
+            request.lastActivity = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * 一个AI回复已经拼接完整（由AIResponseAssembler调用）
+     *
+     * @param requestId 请求ID（messageId）
+     * @param text      完整的回复
+     */
+    public void onResponseComplete(String requestId, final String text) {
+        PendingRequest request = pending.remove(requestId);
+        if (request == null) {
+            // 不是通过缓存发出的请求，或者迟到太久了
+            return;
+        }
+        final String key = request.key;
+        putToMemory(key, text);
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeToDisk(key, text);
+            }
+        });
+        if (request.timedOut) {
+            // 等待的调用方已经失败了，回复只写入缓存，下次再问直接命中
+            Log.d(TAG, "超时的AI请求收到了回复，已写入缓存：" + key);
+            return;
+        }
+        finish(key, text, null);
+    }
+
+    /**
+     * 清空缓存（内存和磁盘）
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        final File dir = diskDir;
+        if (dir != null) {
+            diskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    File[] files = dir.listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            file.delete();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 缓存命中率（0~1），合并的请求不计入
+     */
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return total > 0 ? hitCount / (double) total : 0;
+    }
+
+    /**
+     * 被合并掉的重复请求数
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    // ========== 内部实现 ==========
+
+    /**
+     * 发送ai_request
+     */
+    private void send(final String key, String question) {
+        final String requestId = UUID.randomUUID().toString();
+        final PendingRequest request = new PendingRequest(key);
+        pending.put(requestId, request);
+
+        WebSocketMessage message = new WebSocketMessage(WebSocketMessage.TYPE_AI_REQUEST, question);
+        message.setMessageId(requestId);
+        if (!WebSocketManager.getInstance().sendMessage(message)) {
+            pending.remove(requestId);
+            finish(key, null, new IOException("AI请求发送失败"));
+            return;
+        }
+
+        // 一直没有新的分片，让等待的调用方失败，之后同样的请求可以重新发送
+        mainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (pending.get(requestId) != request) {
+                    // 已经收齐了
+                    return;
+                }
+                long idle = SystemClock.elapsedRealtime() - request.lastActivity;
+                if (idle < REQUEST_TIMEOUT) {
+                    // 还在陆续收到分片，从最后一个分片重新计时
+                    mainHandler.postDelayed(this, REQUEST_TIMEOUT - idle);
+                    return;
+                }
+                if (!request.timedOut) {
+                    request.timedOut = true;
+                    Log.w(TAG, "AI请求超时：" + key);
+                    finish(key, null, new TimeoutException("AI请求超时"));
+                    // 再等一段时间迟到的回复
+                    mainHandler.postDelayed(this, LATE_RESPONSE_WINDOW);
+                    return;
+                }
+                pending.remove(requestId, request);
+            }
+        }, REQUEST_TIMEOUT);
+    }
+
+    /**
+     * 完成正在进行的请求
+     */
+    private void finish(String key, String text, Throwable error) {
+        CompletableFuture<String> future = inFlight.remove(key);
+        if (future == null) {
+            return;
+        }
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(text);
+        }
+    }
+
+    private String getFromMemory(String key) {
+        synchronized (memory) {
+            CacheEntry entry = memory.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (SystemClock.elapsedRealtime() > entry.expireAt) {
+                memory.remove(key);
+                return null;
+            }
+            return entry.text;
+        }
+    }
+
+    private void putToMemory(String key, String text) {
+        synchronized (memory) {
+            memory.put(key, new CacheEntry(text, SystemClock.elapsedRealtime() + ttl));
+        }
+    }
+
+    /**
+     * 读磁盘缓存（在后台线程执行）
+     *
+     * 文件格式：long 过期时间（System.currentTimeMillis()） + int 长度 + UTF-8文字
+     */
+    private String readFromDisk(String key) {
+        File dir = diskDir;
+        if (dir == null) {
+            return null;
+        }
+        File file = new File(dir, fileName(key));
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            long expireAt = in.readLong();
+            if (System.currentTimeMillis() > expireAt) {
+                file.delete();
+                return null;
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "读取AI磁盘缓存失败：" + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * 写磁盘缓存（在后台线程执行）
+     */
+    private void writeToDisk(String key, String text) {
+        File dir = diskDir;
+        if (dir == null) {
+            return;
+        }
+        File file = new File(dir, fileName(key));
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeLong(System.currentTimeMillis() + ttl);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.w(TAG, "写入AI磁盘缓存失败：" + e.getMessage());
+            file.delete();
+            return;
+        }
+        trimDisk(dir);
+    }
+
+    /**
+     * 磁盘缓存超过上限时，删掉最早写入的
+     */
+    private static void trimDisk(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= MAX_DISK_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - MAX_DISK_ENTRIES; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * 计算缓存键
+     */
+    static String cacheKey(String question) {
+        return question == null ? "" : question.trim()
+                .replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("[\\p{Punct}？。！，、；：]+$", "");
+    }
+
+    /**
+     * 缓存键对应的文件名（SHA-1）
+     */
+    private static String fileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(String.format(Locale.US, "%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Android一定支持SHA-1，不会走到这里
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    /**
+     * 一个已经发出的请求
+     */
+    private static final class PendingRequest {
+        final String key;
+
+        // 最后一次收到分片的时间（发出请求时算第一次）
+        volatile long lastActivity = SystemClock.elapsedRealtime();
+
+        // 等待的调用方是否已经因为超时失败
+        volatile boolean timedOut = false;
+
+        PendingRequest(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * 内存缓存的一条记录
+     */
+    private static final class CacheEntry {
+        final String text;
+        final long expireAt;
+
+        CacheEntry(String text, long expireAt) {
+            this.text = text;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.prt.module.AI;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import com.example.prt.module.WebSockets.WebSocketMessage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * AI回复拼接器（单例模式）
+ *
+ * AI服务生成一份饮食/健康/运动分析要好几秒，如果等全部生成完再显示，用户只能干等
+ * 现在AI服务会边生成边发送，一个回复拆成多条ai_response消息（分片）
+ * 这个类负责把分片按请求拼起来，并且一边收一边刷新界面
+ *
+ * 分片格式：
+ * - messageId：对应的请求ID（发送ai_request时填的messageId）
+ * - data：{"seq":0,"delta":"今天的饮食","done":false}
+ *   seq   分片序号，从0开始
+ *   delta 这一片新增的文字
+ *   done  是否是最后一片
+ *
+ * 兼容旧格式：data不是上面的JSON时，当作一次性发完的完整回复
+ *
+ * 已经拼完、被取消或者被丢弃的请求ID会记住一段时间（最近MAX_FINISHED个），
+ * 之后服务器重发的分片直接忽略，不会再变成一个永远拼不完的新回复
+ * （那样会一直占着MAX_ACTIVE的名额，还会不停推迟AIRequestCache的超时）
+ *
+ * 界面刷新的节流：
+ * 分片可能一秒来几十上百条，每条都刷新界面没有意义
+ * 收到分片只是追加到StringBuilder并标记"有变化"，然后通过Choreographer
+ * 在下一次屏幕刷新（通常16ms一次）时统一回调一次，每帧最多刷新一次
+ *
+ * 注意：所有方法都要在主线程调用（MainActivity在主线程收到消息后直接转交过来）
+ *
+ * 使用示例：
+ * AIResponseAssembler.getInstance().setListener((requestId, text, done) -> textView.setText(text));
+ * // 收到ai_response时
+ * AIResponseAssembler.getInstance().onMessage(message);
+ */
+public class AIResponseAssembler {
+
+    // 日志标签
+    private static final String TAG = "AIResponseAssembler";
+
+    // 没有messageId时使用的请求ID前缀
+    public static final String DEFAULT_REQUEST_ID = "default";
+
+    // 最多同时拼接多少个回复，超过时丢掉最早的（一般是再也收不到结尾的回复）
+    private static final int MAX_ACTIVE = 16;
+
+    // 最多记住多少个已经结束的请求ID
+    private static final int MAX_FINISHED = 64;
+
+    // ========== 单例相关 ==========
+
+    private static volatile AIResponseAssembler instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static AIResponseAssembler getInstance() {
+        if (instance == null) {
+            synchronized (AIResponseAssembler.class) {
+                if (instance == null) {
+                    instance = new AIResponseAssembler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 回调接口 ==========
+
+    /**
+     * 回复更新回调（在主线程调用，每帧最多一次）
+     */
+    public interface Listener {
+        /**
+         * 回复内容有更新
+         *
+         * @param requestId 请求ID
+         * @param text      目前为止收到的全部文字（只在回调期间有效，需要保存时请调用toString()）
+         * @param done      是否已经接收完毕
+         */
+        void onResponseUpdated(String requestId, CharSequence text, boolean done);
+    }
+
+    // ========== 成员变量 ==========
+
+    // 正在拼接的回复（按开始时间排序）
+    private final LinkedHashMap<String, Response> responses = new LinkedHashMap<>();
+
+    // 最近结束的请求ID（拼完、取消或者丢弃），最早的排在最前面
+    private final LinkedHashMap<String, Boolean> finished =
+            new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_FINISHED;
+                }
+            };
+
+    // JSON解析器
+    private final Gson gson = new Gson();
+
+    // 是否已经预约了下一帧的刷新
+    private boolean frameScheduled = false;
+
+    // 屏幕刷新回调
+    private final Choreographer.FrameCallback frameCallback;
+
+    // 更新回调
+    private Listener listener;
+
+    // 没有messageId的回复的编号
+    private int anonymousCount = 0;
+
+    private AIResponseAssembler() {
+        frameCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                frameScheduled = false;
+                dispatchUpdates();
+            }
+        };
+    }
+
+    // ========== 对外接口 ==========
+
+    /**
+     * 设置更新回调
+     *
+     * @param listener 回调接口，传null表示取消
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 处理一条ai_response消息
+     *
+     * @param message ai_response类型的消息
+     */
+    public void onMessage(WebSocketMessage message) {
+        String requestId = message.getMessageId();
+
+        Chunk chunk = parseChunk(message.getData());
+        if (chunk == null) {
+            // 旧格式：整条回复一次发完
+            chunk = new Chunk();
+            chunk.delta = message.getData();
+            chunk.done = true;
+        }
+        if (requestId == null) {
+            // 没有请求ID时无法关联，每条都当作单独的回复
+            requestId = DEFAULT_REQUEST_ID + "-" + (anonymousCount++);
+        }
+        if (finished.containsKey(requestId)) {
+            // 这个回复已经结束了，是服务器重发的或者迟到的分片
+            Log.d(TAG, "忽略已经结束的回复的分片：" + requestId + " seq=" + chunk.seq);
+            return;
+        }
+
+        Response response = responses.get(requestId);
+        if (response == null) {
+            if (chunk.seq > 0) {
+                Log.w(TAG, "收到没有开头的分片，可能是之前的回复：" + requestId);
+            }
+            response = new Response();
+            responses.put(requestId, response);
+            trimActive();
+        }
+        boolean wasComplete = response.isComplete();
+        response.accept(chunk);
+        AIRequestCache.getInstance().onResponseProgress(requestId);
+
+        // 回复完整了，交给缓存（不是通过缓存发出的请求会被忽略）
+        if (!wasComplete && response.isComplete()) {
+            finished.put(requestId, Boolean.TRUE);
+            AIRequestCache.getInstance().onResponseComplete(requestId, response.text.toString());
+        }
+
+        scheduleFrame();
+    }
+
+    /**
+     * 取消一个回复（比如用户关掉了页面），之后收到的这个请求的分片都会被忽略
+     *
+     * @param requestId 请求ID
+     */
+    public void cancel(String requestId) {
+        responses.remove(requestId);
+        finished.put(requestId, Boolean.TRUE);
+    }
+
+    // ========== 内部实现 ==========
+
+    /**
+     * 解析分片，不是分片格式时返回null
+     */
+    private Chunk parseChunk(String data) {
+        if (data == null || !data.startsWith("{")) {
+            return null;
+        }
+        try {
+            Chunk chunk = gson.fromJson(data, Chunk.class);
+            if (chunk == null || (chunk.delta == null && !chunk.done)) {
+                return null;
+            }
+            return chunk;
+        } catch (JsonSyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 预约下一帧刷新（同一帧内多次调用只会预约一次）
+     */
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    /**
+     * 把有变化的回复交给界面（每帧执行一次）
+     */
+    private void dispatchUpdates() {
+        Iterator<Map.Entry<String, Response>> iterator = responses.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Response> entry = iterator.next();
+            Response response = entry.getValue();
+            if (!response.dirty) {
+                continue;
+            }
+            response.dirty = false;
+
+            boolean done = response.isComplete();
+            Listener current = listener;
+            if (current != null) {
+                current.onResponseUpdated(entry.getKey(), response.text, done);
+            }
+            if (done) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 同时拼接的回复太多时，丢掉最早的
+     */
+    private void trimActive() {
+        Iterator<String> iterator = responses.keySet().iterator();
+        while (responses.size() > MAX_ACTIVE && iterator.hasNext()) {
+            String requestId = iterator.next();
+            Log.w(TAG, "回复一直没有结束，已丢弃：" + requestId);
+            iterator.remove();
+            finished.put(requestId, Boolean.TRUE);
+        }
+    }
+
+    // ========== 数据模型 ==========
+
+    /**
+     * 一个分片（data字段的JSON）
+     */
+    private static class Chunk {
+        int seq;
+        String delta;
+        boolean done;
+    }
+
+    /**
+     * 一个正在拼接的回复
+     */
+    private static class Response {
+        // 目前为止拼好的文字
+        final StringBuilder text = new StringBuilder();
+
+        // 下一个应该拼接的分片序号
+        int nextSeq = 0;
+
+        // 提前到达的分片（WebSocket本身是有序的，只有服务器重发时才会出现）
+        final HashMap<Integer, Chunk> pending = new HashMap<>();
+
+        // 是否收到了最后一片
+        boolean doneReceived = false;
+
+        // 上次刷新界面之后是否有变化
+        boolean dirty = false;
+
+        void accept(Chunk chunk) {
+            if (chunk.seq < nextSeq || doneReceived) {
+                // 重复的分片，或者最后一片之后又来的分片
+                return;
+            }
+            pending.put(chunk.seq, chunk);
+
+            Chunk next;
+            while ((next = pending.remove(nextSeq)) != null) {
+                if (next.delta != null) {
+                    text.append(next.delta);
+                }
+                if (next.done) {
+                    doneReceived = true;
+                }
+                nextSeq++;
+                dirty = true;
+            }
+        }
+
+        boolean isComplete() {
+            return doneReceived && pending.isEmpty();
+        }
+    }
+}
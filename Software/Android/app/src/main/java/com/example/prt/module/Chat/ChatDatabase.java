@@ -0,0 +1,228 @@
+package com.example.prt.module.Chat;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天记录数据库
+ *
+ * 表结构：
+ * messages(
+ *   _id         自增主键，同一时间戳的消息按插入顺序排列
+ *   message_id  消息ID，唯一，重复插入会被忽略（同步时天然去重）
+ *   content     消息内容
+ *   timestamp   消息时间（毫秒）
+ *   outgoing    是否是自己发出的（0/1）
+ *   from_server 是否来自服务器（0/1），同步的进度只看服务器给的消息
+ * )
+ *
+ * 插入使用预编译的SQLiteStatement，批量插入放在一个事务里，
+ * 不用每条都重新解析SQL，也不用每条都单独写一次磁盘
+ *
+ * 注意：这个类不是线程安全的，由ChatStore负责加锁
+ */
+final class ChatDatabase extends SQLiteOpenHelper {
+
+    // 数据库文件名
+    private static final String DB_NAME = "chat.db";
+
+    // 数据库版本
+    private static final int DB_VERSION = 1;
+
+    // 预编译的语句（第一次使用时创建）
+    private SQLiteStatement insertStatement;
+    private SQLiteStatement countStatement;
+    private SQLiteStatement highWaterStatement;
+    private SQLiteStatement newestStatement;
+    private SQLiteStatement maxRowIdStatement;
+
+    ChatDatabase(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE messages ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "message_id TEXT NOT NULL UNIQUE, "
+                + "content TEXT, "
+                + "timestamp INTEGER NOT NULL, "
+                + "outgoing INTEGER NOT NULL, "
+                + "from_server INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_messages_time ON messages(timestamp, _id)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // 目前只有一个版本
+    }
+
+    /**
+     * 批量插入消息（已经存在的消息ID会被忽略）
+     *
+     * @param messages   消息列表
+     * @param fromServer 是否来自服务器
+     * @param rowIds     每条消息插入后的_id，被忽略的为-1（长度和messages相同）
+     * @return 实际插入的条数
+     */
+    int insert(List<ChatMessage> messages, boolean fromServer, long[] rowIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (insertStatement == null) {
+            insertStatement = db.compileStatement("INSERT OR IGNORE INTO messages "
+                    + "(message_id, content, timestamp, outgoing, from_server) VALUES (?, ?, ?, ?, ?)");
+        }
+
+        int inserted = 0;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                ChatMessage message = messages.get(i);
+                if (message.getMessageId() == null) {
+                    // message_id不能为空，没有ID的消息无法去重，跳过
+                    rowIds[i] = -1;
+                    continue;
+                }
+                insertStatement.clearBindings();
+                insertStatement.bindString(1, message.getMessageId());
+                if (message.getContent() != null) {
+                    insertStatement.bindString(2, message.getContent());
+                } else {
+                    insertStatement.bindNull(2);
+                }
+                insertStatement.bindLong(3, message.getTimestamp());
+                insertStatement.bindLong(4, message.isOutgoing() ? 1 : 0);
+                insertStatement.bindLong(5, fromServer ? 1 : 0);
+                rowIds[i] = insertStatement.executeInsert();
+                if (rowIds[i] != -1) {
+                    inserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return inserted;
+    }
+
+    /**
+     * 消息总数
+     */
+    int count() {
+        if (countStatement == null) {
+            countStatement = getReadableDatabase().compileStatement("SELECT COUNT(*) FROM messages");
+        }
+        return (int) countStatement.simpleQueryForLong();
+    }
+
+    /**
+     * 同步进度：服务器给过的消息里最新的时间戳，没有时返回0
+     */
+    long highWater() {
+        if (highWaterStatement == null) {
+            highWaterStatement = getReadableDatabase().compileStatement(
+                    "SELECT IFNULL(MAX(timestamp), 0) FROM messages WHERE from_server = 1");
+        }
+        return highWaterStatement.simpleQueryForLong();
+    }
+
+    /**
+     * 所有消息里最新的时间戳，没有时返回0
+     */
+    long newest() {
+        if (newestStatement == null) {
+            newestStatement = getReadableDatabase().compileStatement(
+                    "SELECT IFNULL(MAX(timestamp), 0) FROM messages");
+        }
+        return newestStatement.simpleQueryForLong();
+    }
+
+    /**
+     * 最大的_id，没有消息时返回0
+     */
+    long maxRowId() {
+        if (maxRowIdStatement == null) {
+            maxRowIdStatement = getReadableDatabase().compileStatement(
+                    "SELECT IFNULL(MAX(_id), 0) FROM messages");
+        }
+        return maxRowIdStatement.simpleQueryForLong();
+    }
+
+    /**
+     * 按时间顺序读取一段消息
+     *
+     * @param offset 从第几条开始（最早的消息是第0条）
+     * @param limit  最多读多少条
+     * @param out    结果
+     */
+    void query(int offset, int limit, List<ChatMessage> out) {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT message_id, content, timestamp, outgoing FROM messages "
+                        + "ORDER BY timestamp, _id LIMIT ? OFFSET ?",
+                new String[]{String.valueOf(limit), String.valueOf(offset)});
+        try {
+            while (cursor.moveToNext()) {
+                out.add(new ChatMessage(cursor.getString(0), cursor.getString(1),
+                        cursor.getLong(2), cursor.getInt(3) != 0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 按_id读取消息（搜索结果）
+     *
+     * @param rowIds 消息的_id
+     * @param out    结果：_id → 消息
+     */
+    void queryByIds(long[] rowIds, Map<Long, ChatMessage> out) {
+        if (rowIds.length == 0) {
+            return;
+        }
+        StringBuilder ids = new StringBuilder();
+        for (long rowId : rowIds) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(rowId);
+        }
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT _id, message_id, content, timestamp, outgoing FROM messages "
+                        + "WHERE _id IN (" + ids + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                out.put(cursor.getLong(0), new ChatMessage(cursor.getString(1),
+                        cursor.getString(2), cursor.getLong(3), cursor.getInt(4) != 0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 按_id递增的顺序把_id不超过maxRowId的消息交给索引（建立搜索索引时使用）
+     *
+     * 不使用共享的预编译语句，可以不加锁在后台线程调用
+     *
+     * @param maxRowId 最大的_id
+     * @param index    搜索索引
+     */
+    void scanInto(long maxRowId, ChatSearchIndex index) {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT _id, content FROM messages WHERE _id <= ? ORDER BY _id",
+                new String[]{String.valueOf(maxRowId)});
+        try {
+            while (cursor.moveToNext()) {
+                index.addExisting(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.prt.module.Chat;
+
+/**
+ * 聊天消息数据模型
+ *
+ * 既用于本地数据库的一行记录，也用于chat_history同步消息里的一条消息
+ *
+ * 同步消息里的格式：
+ * {"messageId":"abc","content":"你好","timestamp":1234567890,"outgoing":false}
+ */
+public class ChatMessage {
+
+    // 消息ID（全局唯一，用于去重）
+    private String messageId;
+
+    // 消息内容
+    private String content;
+
+    // 消息时间（毫秒）
+    private long timestamp;
+
+    // 是否是自己发出的消息
+    private boolean outgoing;
+
+    /**
+     * 无参构造函数（Gson需要）
+     */
+    public ChatMessage() {
+    }
+
+    public ChatMessage(String messageId, String content, long timestamp, boolean outgoing) {
+        this.messageId = messageId;
+        this.content = content;
+        this.timestamp = timestamp;
+        this.outgoing = outgoing;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isOutgoing() {
+        return outgoing;
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.prt.module.Chat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 聊天记录全文索引（倒排索引）
+ *
+ * 几年的聊天记录有十几万条，搜索时一条条去比对太慢
+ * 倒排索引反过来记录"每个词出现在哪些消息里"，搜索时只看包含这些词的消息
+ *
+ * 分词：
+ * - 中文（以及日文、韩文）没有空格分词，按相邻两个字切（二元组）：
+ *   "兽医说" → "兽医"、"医说"；只有一个字时就用这个字本身
+ * - 英文和数字按连续的字母数字切成单词，统一转成小写
+ * 搜索的关键词也用同样的方法切分，所以不需要词典
+ *
+ * 建索引时中日韩文字除了二元组，每个字也单独作为一个词（一元组）：
+ * 关键词只有一个字时（"猫"、"狗"）切出来就是这个字本身，只有二元组的话一条也搜不到
+ * 关键词有两个字以上时还是只用二元组搜索，一元组不参与，结果和以前一样精确
+ * 代价是中文消息的倒排表大约多一倍
+ *
+ * 倒排表的压缩存储：
+ * 每个词一个字节数组，依次存放 [消息ID的差值][词频] 两个varint
+ * 消息ID（数据库的_id）是递增的，差值一般只有一两个字节
+ * 新消息只需要在对应词的数组末尾追加，不用重建索引
+ *
+ * 排序：
+ * 先按命中的关键词个数排序，再按BM25相关度排序
+ * BM25综合考虑词频（出现次数多的更相关）、逆文档频率（少见的词更有区分度）
+ * 和消息长度（同样命中，短消息更相关）
+ *
+ * 注意：这个类的方法都是同步的，可以在多个线程调用
+ */
+final class ChatSearchIndex {
+
+    // BM25参数
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // 每个词的倒排表
+    private final HashMap<String, Postings> postings = new HashMap<>();
+
+    // 每条消息的长度（词数），下标是消息ID
+    private int[] docLengths = new int[1024];
+
+    // 已经索引的消息数和总词数
+    private int docCount = 0;
+    private long totalLength = 0;
+
+    // 已经索引的最大消息ID（只能追加更大的ID）
+    private int maxDocId = 0;
+
+    // 后台建索引期间收到的新消息，建完之后再追加
+    private boolean ready = false;
+    private final List<Long> pendingIds = new ArrayList<>();
+    private final List<String> pendingTexts = new ArrayList<>();
+
+    // ========== 建立索引 ==========
+
+    /**
+     * 添加一条消息
+     *
+     * 索引还在后台建立时，先暂存起来，建完之后按顺序追加
+     *
+     * @param docId 消息ID（数据库的_id）
+     * @param text  消息内容
+     */
+    synchronized void add(long docId, String text) {
+        if (!ready) {
+            pendingIds.add(docId);
+            pendingTexts.add(text);
+            return;
+        }
+        addInternal((int) docId, text);
+    }
+
+    /**
+     * 建索引时添加一条已有的消息（按消息ID递增的顺序调用）
+     */
+    synchronized void addExisting(long docId, String text) {
+        addInternal((int) docId, text);
+    }
+
+    /**
+     * 已有消息全部添加完毕，追加建索引期间收到的新消息
+     */
+    synchronized void finishBuild() {
+        ready = true;
+        for (int i = 0; i < pendingIds.size(); i++) {
+            addInternal(pendingIds.get(i).intValue(), pendingTexts.get(i));
+        }
+        pendingIds.clear();
+        pendingTexts.clear();
+    }
+
+    /**
+     * 已经索引的消息数
+     */
+    synchronized int size() {
+        return docCount;
+    }
+
+    private void addInternal(int docId, String text) {
+        // 历史消息建索引和新消息追加可能重叠，已经索引过的直接跳过
+        if (docId <= maxDocId || text == null) {
+            return;
+        }
+        maxDocId = docId;
+
+        // 统计这条消息里每个词出现的次数
+        List<String> tokens = new ArrayList<>();
+        tokenize(text, tokens, true);
+        HashMap<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            Integer old = frequencies.get(token);
+            frequencies.put(token, old == null ? 1 : old + 1);
+        }
+
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            Postings list = postings.get(entry.getKey());
+            if (list == null) {
+                list = new Postings();
+                postings.put(entry.getKey(), list);
+            }
+            list.append(docId, entry.getValue());
+        }
+
+        if (docId >= docLengths.length) {
+            int[] grown = new int[Math.max(docId + 1, docLengths.length * 2)];
+            System.arraycopy(docLengths, 0, grown, 0, docLengths.length);
+            docLengths = grown;
+        }
+        docLengths[docId] = tokens.size();
+        docCount++;
+        totalLength += tokens.size();
+    }
+
+    // ========== 搜索 ==========
+
+    /**
+     * 搜索
+     *
+     * @param query 关键词
+     * @param limit 最多返回多少条
+     * @return 按相关度从高到低排列的消息ID
+     */
+    synchronized long[] search(String query, int limit) {
+        // 同一个词在关键词里出现多次只算一次
+        List<String> queryTokens = new ArrayList<>();
+        tokenize(query, queryTokens, false);
+        Set<String> terms = new LinkedHashSet<>(queryTokens);
+        if (terms.isEmpty() || docCount == 0 || limit <= 0) {
+            return new long[0];
+        }
+
+        double[] scores = new double[maxDocId + 1];
+        int[] matched = new int[maxDocId + 1];
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        double averageLength = totalLength / (double) docCount;
+
+        for (String term : terms) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (docCount - list.docFrequency + 0.5) / (list.docFrequency + 0.5));
+
+            // 依次解码倒排表
+            byte[] data = list.data;
+            int pos = 0;
+            int docId = 0;
+            while (pos < list.size) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                int tf = 0;
+                shift = 0;
+                do {
+                    b = data[pos++];
+                    tf |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                docId += delta;
+
+                double norm = K1 * (1 - B + B * docLengths[docId] / averageLength);
+                if (matched[docId] == 0) {
+                    if (touchedCount == touched.length) {
+                        int[] grown = new int[touched.length * 2];
+                        System.arraycopy(touched, 0, grown, 0, touchedCount);
+                        touched = grown;
+                    }
+                    touched[touchedCount++] = docId;
+                }
+                matched[docId]++;
+                scores[docId] += idf * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+
+        // 选出最相关的limit条（小顶堆）
+        final double[] finalScores = scores;
+        final int[] finalMatched = matched;
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, (a, b) -> {
+            if (finalMatched[a] != finalMatched[b]) {
+                return Integer.compare(finalMatched[a], finalMatched[b]);
+            }
+            return Double.compare(finalScores[a], finalScores[b]);
+        });
+        for (int i = 0; i < touchedCount; i++) {
+            top.add(touched[i]);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        long[] result = new long[top.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = top.poll();
+        }
+        return result;
+    }
+
+    // ========== 分词 ==========
+
+    /**
+     * 分词：中日韩文字切成二元组，字母数字切成单词
+     *
+     * @param text     文本
+     * @param out      结果
+     * @param unigrams 中日韩文字是否每个字也单独作为一个词（建索引时为true，搜索时为false）
+     */
+    static void tokenize(String text, List<String> out, boolean unigrams) {
+        if (text == null) {
+            return;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            int cp = lower.codePointAt(i);
+            if (isCjk(cp)) {
+                // 一段连续的中日韩文字
+                int start = i;
+                int chars = 0;
+                int previous = -1;
+                while (i < length && isCjk(lower.codePointAt(i))) {
+                    int next = i + Character.charCount(lower.codePointAt(i));
+                    if (unigrams) {
+                        out.add(lower.substring(i, next));
+                    }
+                    if (previous >= 0) {
+                        out.add(lower.substring(previous, next));
+                    }
+                    previous = i;
+                    i = next;
+                    chars++;
+                }
+                if (chars == 1 && !unigrams) {
+                    out.add(lower.substring(start, i));
+                }
+            } else if (Character.isLetterOrDigit(cp)) {
+                // 一个英文单词或数字
+                int start = i;
+                while (i < length) {
+                    int c = lower.codePointAt(i);
+                    if (!Character.isLetterOrDigit(c) || isCjk(c)) {
+                        break;
+                    }
+                    i += Character.charCount(c);
+                }
+                out.add(lower.substring(start, i));
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+    }
+
+    /**
+     * 是否是中日韩文字
+     */
+    private static boolean isCjk(int cp) {
+        if (Character.isIdeographic(cp)) {
+            return true;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    // ========== 倒排表 ==========
+
+    /**
+     * 一个词的倒排表：[消息ID差值 varint][词频 varint]...
+     */
+    private static final class Postings {
+        byte[] data = new byte[8];
+        int size = 0;
+        int lastDocId = 0;
+        int docFrequency = 0;
+
+        void append(int docId, int tf) {
+            if (size + 10 > data.length) {
+                byte[] grown = new byte[data.length * 2];
+                System.arraycopy(data, 0, grown, 0, size);
+                data = grown;
+            }
+            writeVarint(docId - lastDocId);
+            writeVarint(tf);
+            lastDocId = docId;
+            docFrequency++;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+}
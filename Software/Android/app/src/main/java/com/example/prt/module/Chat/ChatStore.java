@@ -0,0 +1,540 @@
+package com.example.prt.module.Chat;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
+import com.example.prt.module.WebSockets.WebSocketManager;
+import com.example.prt.module.WebSockets.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 聊天记录存储（单例模式）
+ *
+ * 聊天记录保存在手机上的SQLite数据库里，打开应用时直接从本地显示，
+ * 不用每次都从服务器拉取全部历史
+ *
+ * 增量同步（chat_history）：
+ * 连接成功后发送 {"since":同步进度,"limit":200}
+ * 同步进度 = 本地已有的服务器消息里最新的时间戳
+ * 服务器只返回这个时间之后（含）的消息，按 (timestamp, messageId) 排序：
+ * {"messages":[{"messageId":"..","content":"..","timestamp":..,"outgoing":false}],"more":true}
+ * more为true表示还没发完，接着用这一批最后一条的时间戳和消息ID继续请求：
+ * {"since":时间戳,"afterId":"消息ID","limit":200}
+ * 服务器只返回 (timestamp, messageId) 排在这条之后的消息
+ * 同一毫秒的消息超过一批时，只用时间戳做进度会一直拿到同一批，消息ID保证每一批都往前走
+ * 第一批（没有afterId）时间戳相同的消息可能被重复返回，靠消息ID去重
+ * 不认识afterId的老服务器还是按时间戳返回，一批里一条新消息都没有、进度也没有前进时停止同步
+ * 所以同步的数据量只和离线期间新增的消息数有关
+ *
+ * 分页缓存（给聊天列表滚动用）：
+ * 消息按时间顺序编号，每50条一页，内存里最多保留5页（LRU淘汰）
+ * 列表滚动到哪里就读哪一页，几千条聊天记录也只占几页的内存
+ *
+ * 全文搜索：
+ * 启动时在后台线程把已有的消息建成倒排索引（ChatSearchIndex），
+ * 之后每存一条新消息就追加到索引里，search()直接查索引，不用逐条比对
+ *
+ * 使用示例：
+ * ChatStore.getInstance().init(getApplicationContext());
+ * int count = ChatStore.getInstance().getCount();
+ * ChatMessage message = ChatStore.getInstance().getMessage(count - 1);
+ */
+public class ChatStore {
+
+    // 日志标签
+    private static final String TAG = "ChatStore";
+
+    // 每页多少条
+    public static final int PAGE_SIZE = 50;
+
+    // 内存里最多保留多少页
+    private static final int MAX_PAGES = 5;
+
+    // 每次同步最多请求多少条
+    private static final int SYNC_LIMIT = 200;
+
+    // ========== 单例相关 ==========
+
+    private static volatile ChatStore instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static ChatStore getInstance() {
+        if (instance == null) {
+            synchronized (ChatStore.class) {
+                if (instance == null) {
+                    instance = new ChatStore();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 回调接口 ==========
+
+    /**
+     * 聊天记录变化回调（在主线程调用）
+     */
+    public interface Listener {
+        /**
+         * 聊天记录有变化（收到新消息或同步完成）
+         *
+         * @param count 当前的消息总数
+         */
+        void onChatChanged(int count);
+    }
+
+    // ========== 成员变量 ==========
+
+    // 数据库
+    private ChatDatabase database;
+
+    // 全文搜索索引
+    private final ChatSearchIndex searchIndex = new ChatSearchIndex();
+
+    // 分页缓存：页号 → 这一页的消息（accessOrder=true，最近使用的排在最后）
+    private final LinkedHashMap<Integer, List<ChatMessage>> pages =
+            new LinkedHashMap<Integer, List<ChatMessage>>(MAX_PAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<ChatMessage>> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            };
+
+    // 消息总数（-1表示还没读取）
+    private int count = -1;
+
+    // 最新消息的时间戳，用来判断新插入的消息是不是都在最后面
+    private long newestTimestamp;
+
+    // 是否正在同步
+    private boolean syncing = false;
+
+    // 正在请求的同步进度（时间戳 + 消息ID）
+    private long syncSince;
+    private String syncAfterId;
+
+    // JSON解析器
+    private final Gson gson = new Gson();
+
+    // 主线程Handler
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 变化回调
+    private volatile Listener listener;
+
+    // 主线程是否已经有一个待执行的变化通知，以及通知时的消息总数
+    private final AtomicBoolean notifyPending = new AtomicBoolean(false);
+    private final AtomicInteger notifyCount = new AtomicInteger();
+
+    private ChatStore() {
+    }
+
+    // ========== 初始化 ==========
+
+    /**
+     * 初始化聊天记录存储
+     *
+     * 必须在使用前调用一次，之后会自动保存收到的聊天消息，连接成功后自动同步
+     *
+     * @param context 上下文（建议传ApplicationContext）
+     */
+    public synchronized void init(Context context) {
+        if (database != null) {
+            return;
+        }
+        database = new ChatDatabase(context);
+
+        // 在后台线程给已有的消息建立搜索索引
+        // 建索引期间新存的消息会先暂存在索引里，建完再追加（已经扫描到的会被跳过）
+        final ChatDatabase db = database;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                long maxRowId;
+                synchronized (ChatStore.this) {
+                    maxRowId = db.maxRowId();
+                }
+                db.scanInto(maxRowId, searchIndex);
+                searchIndex.finishBuild();
+                Log.d(TAG, "聊天搜索索引建立完成：" + searchIndex.size() + "条，耗时"
+                        + (System.currentTimeMillis() - start) + "ms");
+            }
+        }, "ChatIndex").start();
+
+        // 注册EventBus，用于接收聊天消息和同步结果
+        EventBus.getDefault().register(this);
+
+        Log.d(TAG, "ChatStore初始化完成");
+    }
+
+    /**
+     * 设置变化回调
+     *
+     * @param listener 回调接口，传null表示取消
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // ========== 接收消息 ==========
+
+    /**
+     * 接收WebSocket消息（通过EventBus）
+     *
+     * ThreadMode.BACKGROUND表示在后台线程执行，写数据库不会卡住界面
+     */
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onWebSocketMessage(WebSocketMessage message) {
+        switch (message.getType()) {
+            case WebSocketMessage.TYPE_CONNECT:
+                // 连接成功，同步离线期间的消息
+                startSync();
+                break;
+
+            case WebSocketMessage.TYPE_DISCONNECT:
+                synchronized (this) {
+                    syncing = false;
+                }
+                break;
+
+            case WebSocketMessage.TYPE_CHAT:
+                onChatReceived(message);
+                break;
+
+            case WebSocketMessage.TYPE_CHAT_HISTORY:
+                onHistoryReceived(message);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 收到一条实时聊天消息
+     */
+    private void onChatReceived(WebSocketMessage message) {
+        String messageId = message.getMessageId() != null
+                ? message.getMessageId() : "local-" + UUID.randomUUID();
+        ChatMessage chat = new ChatMessage(messageId, message.getData(),
+                message.getTimestamp(), false);
+
+        synchronized (this) {
+            if (database == null) {
+                return;
+            }
+            // 同步过程中收到的实时消息先不计入同步进度，
+            // 否则同步中途断开的话，下次会从这条消息之后开始，漏掉中间的历史
+            insert(Collections.singletonList(chat), !syncing);
+        }
+        notifyChanged();
+    }
+
+    /**
+     * 收到一批同步结果
+     *
+     * 不管这一批能不能用，只要不再请求下一批，就要结束同步（syncing = false），
+     * 否则之后的startSync()都会被挡住，直到断开重连
+     */
+    private void onHistoryReceived(WebSocketMessage message) {
+        ChatMessage last = null;
+        int inserted = 0;
+        boolean more = false;
+        List<ChatMessage> messages;
+        try {
+            HistoryResponse response;
+            try {
+                response = gson.fromJson(message.getData(), HistoryResponse.class);
+            } catch (Exception e) {
+                Log.e(TAG, "解析聊天历史失败：" + e.getMessage());
+                return;
+            }
+            if (response == null || response.messages == null) {
+                return;
+            }
+
+            // 没有消息ID的无法去重，也不能写进数据库（message_id不能为空）
+            messages = new ArrayList<>(response.messages.size());
+            for (ChatMessage chat : response.messages) {
+                if (chat != null && chat.getMessageId() != null) {
+                    messages.add(chat);
+                }
+            }
+            if (messages.size() < response.messages.size()) {
+                Log.w(TAG, "聊天历史里有" + (response.messages.size() - messages.size()) + "条没有消息ID，已忽略");
+            }
+
+            synchronized (this) {
+                if (database == null) {
+                    return;
+                }
+                inserted = insert(messages, true);
+                for (ChatMessage chat : messages) {
+                    if (last == null || compareCursor(chat.getTimestamp(), chat.getMessageId(),
+                            last.getTimestamp(), last.getMessageId()) > 0) {
+                        last = chat;
+                    }
+                }
+                more = response.more && last != null;
+                if (more && inserted == 0 && compareCursor(last.getTimestamp(), last.getMessageId(),
+                        syncSince, syncAfterId) <= 0) {
+                    // 一条新消息都没有，进度也没有前进，再请求也是同一批
+                    Log.w(TAG, "同步进度没有前进，停止同步：" + syncSince + "/" + syncAfterId);
+                    more = false;
+                }
+            }
+        } finally {
+            if (!more) {
+                synchronized (this) {
+                    syncing = false;
+                }
+            }
+        }
+        Log.d(TAG, "同步聊天历史：收到" + messages.size() + "条，新增" + inserted + "条");
+
+        if (more) {
+            // 还没发完，从这一批的最后一条继续
+            requestHistory(last.getTimestamp(), last.getMessageId());
+        }
+        if (inserted > 0) {
+            notifyChanged();
+        }
+    }
+
+    /**
+     * 记录自己发出的消息
+     *
+     * @param messageId 消息ID（和发送的WebSocketMessage的messageId相同，服务器同步回来时可以去重）
+     * @param content   消息内容
+     * @param timestamp 发送时间（毫秒）
+     */
+    public void addOutgoing(String messageId, String content, long timestamp) {
+        synchronized (this) {
+            if (database == null) {
+                return;
+            }
+            insert(Collections.singletonList(new ChatMessage(messageId, content, timestamp, true)),
+                    false);
+        }
+        notifyChanged();
+    }
+
+    /**
+     * 消息总数
+     *
+     * 第一次调用会读数据库，建议在后台线程调用
+     */
+    public synchronized int getCount() {
+        if (database == null) {
+            return 0;
+        }
+        if (count < 0) {
+            count = database.count();
+            newestTimestamp = database.newest();
+        }
+        return count;
+    }
+
+    /**
+     * 获取第position条消息（按时间顺序，最早的是第0条）
+     *
+     * 所在的页不在内存里时会读数据库（一次读一页）
+     *
+     * @param position 位置
+     * @return 消息，位置超出范围时返回null
+     */
+    public synchronized ChatMessage getMessage(int position) {
+        if (position < 0 || position >= getCount()) {
+            return null;
+        }
+        int pageIndex = position / PAGE_SIZE;
+        List<ChatMessage> page = pages.get(pageIndex);
+        if (page == null) {
+            page = new ArrayList<>(PAGE_SIZE);
+            database.query(pageIndex * PAGE_SIZE, PAGE_SIZE, page);
+            pages.put(pageIndex, page);
+        }
+        int offset = position - pageIndex * PAGE_SIZE;
+        return offset < page.size() ? page.get(offset) : null;
+    }
+
+    /**
+     * 搜索聊天记录
+     *
+     * 会读数据库，建议在后台线程调用
+     *
+     * @param query 关键词
+     * @param limit 最多返回多少条
+     * @return 按相关度从高到低排列的消息
+     */
+    public List<ChatMessage> search(String query, int limit) {
+        long[] rowIds = searchIndex.search(query, limit);
+        HashMap<Long, ChatMessage> found = new HashMap<>();
+        synchronized (this) {
+            if (database == null) {
+                return new ArrayList<>();
+            }
+            database.queryByIds(rowIds, found);
+        }
+        List<ChatMessage> result = new ArrayList<>(rowIds.length);
+        for (long rowId : rowIds) {
+            ChatMessage message = found.get(rowId);
+            if (message != null) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 手动发起一次增量同步
+     */
+    public void startSync() {
+        long since;
+        synchronized (this) {
+            if (database == null || syncing) {
+                return;
+            }
+            syncing = true;
+            since = database.highWater();
+        }
+        requestHistory(since, null);
+    }
+
+    // ========== 内部实现 ==========
+
+    /**
+     * 发送chat_history请求
+     *
+     * @param since   时间戳
+     * @param afterId 只要这个时间戳上排在这条消息之后的，null表示这个时间戳上的都要
+     */
+    private void requestHistory(long since, String afterId) {
+        synchronized (this) {
+            syncSince = since;
+            syncAfterId = afterId;
+        }
+        HistoryRequest request = new HistoryRequest();
+        request.since = since;
+        request.afterId = afterId;
+        request.limit = SYNC_LIMIT;
+        if (!WebSocketManager.getInstance().sendMessage(
+                WebSocketMessage.TYPE_CHAT_HISTORY, gson.toJson(request))) {
+            synchronized (this) {
+                syncing = false;
+            }
+        }
+    }
+
+    /**
+     * 比较两个同步进度：先比时间戳，再比消息ID（null排在最前面）
+     */
+    private static int compareCursor(long time1, String id1, long time2, String id2) {
+        if (time1 != time2) {
+            return Long.compare(time1, time2);
+        }
+        if (id1 == null || id2 == null) {
+            return id1 == null ? (id2 == null ? 0 : -1) : 1;
+        }
+        return id1.compareTo(id2);
+    }
+
+    /**
+     * 写数据库并更新分页缓存（调用前需要持有锁）
+     *
+     * @return 实际插入的条数
+     */
+    private int insert(List<ChatMessage> messages, boolean fromServer) {
+        int oldCount = getCount();
+        long[] rowIds = new long[messages.size()];
+        int inserted = database.insert(messages, fromServer, rowIds);
+        if (inserted == 0) {
+            return 0;
+        }
+
+        // 新消息追加到搜索索引
+        for (int i = 0; i < rowIds.length; i++) {
+            if (rowIds[i] != -1) {
+                searchIndex.add(rowIds[i], messages.get(i).getContent());
+            }
+        }
+
+        // 新消息都排在最后面（通常情况）：只有最后一页变了
+        // 否则插到了中间（同步到了更早的消息），后面的页全部错位，直接清空
+        boolean appendOnly = true;
+        for (ChatMessage message : messages) {
+            if (message.getTimestamp() < newestTimestamp) {
+                appendOnly = false;
+            }
+            newestTimestamp = Math.max(newestTimestamp, message.getTimestamp());
+        }
+        if (appendOnly) {
+            pages.remove(oldCount / PAGE_SIZE);
+        } else {
+            pages.clear();
+        }
+        count = oldCount + inserted;
+        return inserted;
+    }
+
+    /**
+     * 通知界面聊天记录有变化
+     *
+     * 主线程还没处理上一次通知时不会重复post，一批消息只通知一次
+     */
+    private void notifyChanged() {
+        notifyCount.set(getCount());
+        if (!notifyPending.compareAndSet(false, true)) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                notifyPending.set(false);
+                Listener l = listener;
+                if (l != null) {
+                    l.onChatChanged(notifyCount.get());
+                }
+            }
+        });
+    }
+
+    // ========== 同步消息的数据格式 ==========
+
+    /**
+     * chat_history请求的data
+     */
+    private static class HistoryRequest {
+        long since;
+        String afterId;
+        int limit;
+    }
+
+    /**
+     * chat_history响应的data
+     */
+    private static class HistoryResponse {
+        List<ChatMessage> messages;
+        boolean more;
+    }
+}
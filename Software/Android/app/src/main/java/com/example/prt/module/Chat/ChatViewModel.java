@@ -0,0 +1,233 @@
+package com.example.prt.module.Chat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 聊天列表的ViewModel
+ *
+ * 以前每收到一条聊天消息就弹一个Toast，重连之后一下子同步过来50条消息，
+ * 就要排队弹50个Toast、往主线程post 50次
+ *
+ * 现在的做法：
+ * 1. ChatStore存好消息后通知这里"有变化"（同一批变化只通知一次）
+ * 2. 这里只标记一下，然后通过Choreographer等到下一帧再统一处理：
+ *    同一帧之内来多少条消息都只处理一次
+ * 3. 在后台线程读取最新的消息列表，并用DiffUtil算出和当前列表的差异
+ * 4. 回到主线程发布新列表 + 差异，界面只需要dispatchUpdatesTo(adapter)局部刷新
+ *
+ * 同一时间最多只有一个后台计算任务，计算期间又有变化时，算完之后再算一次
+ *
+ * 使用示例：
+ * ChatViewModel viewModel = new ViewModelProvider(this).get(ChatViewModel.class);
+ * viewModel.getUpdates().observe(this, update -> {
+ *     adapter.setMessages(update.messages);
+ *     update.diff.dispatchUpdatesTo(adapter);
+ * });
+ */
+public class ChatViewModel extends ViewModel {
+
+    // 列表里最多显示最近多少条（更早的消息滚动时再通过ChatStore分页读取）
+    private static final int WINDOW_SIZE = 200;
+
+    // ========== 列表更新 ==========
+
+    /**
+     * 一次列表更新
+     */
+    public static final class ChatUpdate {
+        // 新的消息列表（按时间顺序，不可修改）
+        public final List<ChatMessage> messages;
+
+        // 和上一次列表的差异
+        public final DiffUtil.DiffResult diff;
+
+        ChatUpdate(List<ChatMessage> messages, DiffUtil.DiffResult diff) {
+            this.messages = messages;
+            this.diff = diff;
+        }
+    }
+
+    // ========== 成员变量 ==========
+
+    // 发布给界面的更新
+    private final MutableLiveData<ChatUpdate> updates = new MutableLiveData<>();
+
+    // 当前界面上的列表（只在主线程访问）
+    private List<ChatMessage> current = Collections.emptyList();
+
+    // 后台计算线程
+    private final ExecutorService diffExecutor = Executors.newSingleThreadExecutor();
+
+    // 主线程Handler
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 以下状态只在主线程访问
+    // 是否有还没处理的变化
+    private boolean dirty = false;
+    // 是否已经预约了下一帧
+    private boolean frameScheduled = false;
+    // 是否有后台计算正在进行
+    private boolean diffRunning = false;
+
+    // 下一帧处理变化
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            frameScheduled = false;
+            startDiff();
+        }
+    };
+
+    // 聊天记录变化回调
+    private final ChatStore.Listener storeListener = new ChatStore.Listener() {
+        @Override
+        public void onChatChanged(int count) {
+            invalidate();
+        }
+    };
+
+    public ChatViewModel() {
+        ChatStore.getInstance().setListener(storeListener);
+        // 先显示本地已有的聊天记录
+        invalidate();
+    }
+
+    // ========== 对外接口 ==========
+
+    /**
+     * 列表更新（每帧最多发布一次）
+     */
+    public LiveData<ChatUpdate> getUpdates() {
+        return updates;
+    }
+
+    /**
+     * 标记列表需要刷新（在主线程调用）
+     */
+    public void invalidate() {
+        dirty = true;
+        if (!frameScheduled && !diffRunning) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        ChatStore.getInstance().setListener(null);
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        diffExecutor.shutdown();
+    }
+
+    // ========== 内部实现 ==========
+
+    /**
+     * 在后台线程读取新列表并计算差异（在主线程调用）
+     */
+    private void startDiff() {
+        if (!dirty || diffRunning) {
+            return;
+        }
+        dirty = false;
+        diffRunning = true;
+
+        final List<ChatMessage> oldList = current;
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<ChatMessage> newList = loadWindow();
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                        new MessageDiff(oldList, newList), false);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        publish(newList, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 发布计算结果（在主线程调用）
+     */
+    private void publish(List<ChatMessage> newList, DiffUtil.DiffResult diff) {
+        diffRunning = false;
+        current = newList;
+        updates.setValue(new ChatUpdate(newList, diff));
+
+        // 计算期间又有新变化，下一帧再算一次
+        if (dirty) {
+            invalidate();
+        }
+    }
+
+    /**
+     * 读取最近的消息（在后台线程执行）
+     */
+    private static List<ChatMessage> loadWindow() {
+        ChatStore store = ChatStore.getInstance();
+        int count = store.getCount();
+        int start = Math.max(0, count - WINDOW_SIZE);
+        List<ChatMessage> list = new ArrayList<>(count - start);
+        for (int i = start; i < count; i++) {
+            ChatMessage message = store.getMessage(i);
+            if (message != null) {
+                list.add(message);
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 比较两个消息列表：消息ID相同就是同一条，内容和时间都相同就不用重绘
+     */
+    private static final class MessageDiff extends DiffUtil.Callback {
+        private final List<ChatMessage> oldList;
+        private final List<ChatMessage> newList;
+
+        MessageDiff(List<ChatMessage> oldList, List<ChatMessage> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return oldList.get(oldPosition).getMessageId()
+                    .equals(newList.get(newPosition).getMessageId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            ChatMessage a = oldList.get(oldPosition);
+            ChatMessage b = newList.get(newPosition);
+            return a.getTimestamp() == b.getTimestamp()
+                    && a.isOutgoing() == b.isOutgoing()
+                    && (a.getContent() == null ? b.getContent() == null
+                    : a.getContent().equals(b.getContent()));
+        }
+    }
+}
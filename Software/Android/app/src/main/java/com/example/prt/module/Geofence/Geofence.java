@@ -0,0 +1,193 @@
+package com.example.prt.module.Geofence;
+
+/**
+ * 电子围栏模型
+ *
+ * 支持两种形状：
+ * 1. 圆形围栏：一个中心点 + 半径（米），例如"以家为中心200米"
+ * 2. 多边形围栏：一组顶点，例如"院子"的轮廓
+ *
+ * 每个围栏创建时会计算好外接矩形（bounding box）
+ * GeofenceGridIndex 用外接矩形决定围栏放进哪些网格
+ *
+ * 距离计算说明：
+ * 围栏一般只有几百米大小，这里把经纬度按当地纬度换算成平面坐标（米）来计算
+ * 在这个尺度下误差可以忽略，比球面公式快得多
+ *
+ * 使用示例：
+ * Geofence home = Geofence.circle("home", "家", 39.9, 116.4, 200);
+ * Geofence yard = Geofence.polygon("yard", "院子",
+ *         new double[]{39.90, 39.90, 39.91, 39.91},
+ *         new double[]{116.40, 116.41, 116.41, 116.40});
+ */
+public final class Geofence {
+
+    // 每度纬度对应的米数（近似值）
+    static final double METERS_PER_DEGREE = 111320.0;
+
+    // 围栏类型
+    public static final int TYPE_CIRCLE = 0;
+    public static final int TYPE_POLYGON = 1;
+
+    // 围栏ID（唯一）
+    private final String id;
+
+    // 围栏名称（用于显示，例如"院子"）
+    private final String name;
+
+    // 围栏类型
+    private final int type;
+
+    // 圆形围栏：中心点和半径
+    private final double centerLat;
+    private final double centerLng;
+    private final double radius;
+
+    // 多边形围栏：顶点数组
+    private final double[] lats;
+    private final double[] lngs;
+
+    // 外接矩形
+    final double minLat;
+    final double maxLat;
+    final double minLng;
+    final double maxLng;
+
+    private Geofence(String id, String name, int type,
+                     double centerLat, double centerLng, double radius,
+                     double[] lats, double[] lngs,
+                     double minLat, double maxLat, double minLng, double maxLng) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+        this.centerLat = centerLat;
+        this.centerLng = centerLng;
+        this.radius = radius;
+        this.lats = lats;
+        this.lngs = lngs;
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLng = minLng;
+        this.maxLng = maxLng;
+    }
+
+    // ========== 创建围栏 ==========
+
+    /**
+     * 创建圆形围栏
+     *
+     * @param id        围栏ID
+     * @param name      围栏名称
+     * @param centerLat 中心点纬度
+     * @param centerLng 中心点经度
+     * @param radius    半径（米）
+     */
+    public static Geofence circle(String id, String name,
+                                  double centerLat, double centerLng, double radius) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("围栏半径必须大于0");
+        }
+        double dLat = radius / METERS_PER_DEGREE;
+        double dLng = radius / metersPerDegreeLng(centerLat);
+        return new Geofence(id, name, TYPE_CIRCLE, centerLat, centerLng, radius, null, null,
+                centerLat - dLat, centerLat + dLat, centerLng - dLng, centerLng + dLng);
+    }
+
+    /**
+     * 创建多边形围栏
+     *
+     * @param id   围栏ID
+     * @param name 围栏名称
+     * @param lats 顶点纬度数组（按顺序排列，首尾不需要重复）
+     * @param lngs 顶点经度数组
+     */
+    public static Geofence polygon(String id, String name, double[] lats, double[] lngs) {
+        if (lats.length != lngs.length || lats.length < 3) {
+            throw new IllegalArgumentException("多边形围栏至少需要3个顶点");
+        }
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE;
+        double maxLng = -Double.MAX_VALUE;
+        for (int i = 0; i < lats.length; i++) {
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLng = Math.min(minLng, lngs[i]);
+            maxLng = Math.max(maxLng, lngs[i]);
+        }
+        return new Geofence(id, name, TYPE_POLYGON, 0, 0, 0, lats.clone(), lngs.clone(),
+                minLat, maxLat, minLng, maxLng);
+    }
+
+    // ========== 几何计算 ==========
+
+    /**
+     * 计算一个点到围栏边界的有符号距离
+     *
+     * @param lat 纬度
+     * @param lng 经度
+     * @return 距离（米）：负数表示在围栏里面，正数表示在外面
+     *
+     * 例如：-30表示在围栏里，离边界还有30米；15表示已经出了围栏15米
+     */
+    public double signedDistance(double lat, double lng) {
+        double mPerLng = metersPerDegreeLng(lat);
+
+        if (type == TYPE_CIRCLE) {
+            double dx = (lng - centerLng) * mPerLng;
+            double dy = (lat - centerLat) * METERS_PER_DEGREE;
+            return Math.sqrt(dx * dx + dy * dy) - radius;
+        }
+
+        // 多边形：先算到最近一条边的距离，再用射线法判断在里面还是外面
+        boolean inside = false;
+        double minDistSq = Double.MAX_VALUE;
+        int n = lats.length;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            // 以当前点为原点，把边的两个端点换算成米
+            double ax = (lngs[j] - lng) * mPerLng;
+            double ay = (lats[j] - lat) * METERS_PER_DEGREE;
+            double bx = (lngs[i] - lng) * mPerLng;
+            double by = (lats[i] - lat) * METERS_PER_DEGREE;
+
+            // 射线法：从当前点向东发一条射线，数和边的交点个数
+            if ((ay > 0) != (by > 0) && 0 < ax + (bx - ax) * (0 - ay) / (by - ay)) {
+                inside = !inside;
+            }
+
+            // 原点到线段AB的距离
+            double ex = bx - ax;
+            double ey = by - ay;
+            double lenSq = ex * ex + ey * ey;
+            double t = lenSq > 0 ? -(ax * ex + ay * ey) / lenSq : 0;
+            t = Math.max(0, Math.min(1, t));
+            double px = ax + t * ex;
+            double py = ay + t * ey;
+            minDistSq = Math.min(minDistSq, px * px + py * py);
+        }
+
+        double dist = Math.sqrt(minDistSq);
+        return inside ? -dist : dist;
+    }
+
+    /**
+     * 某个纬度处，每度经度对应的米数
+     */
+    static double metersPerDegreeLng(double lat) {
+        return METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(lat)));
+    }
+
+    // ========== Getter方法 ==========
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getType() {
+        return type;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.prt.module.Geofence;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
+import com.example.prt.module.Location.LocationUpdate;
+import com.example.prt.module.WebSockets.WebSocketManager;
+import com.example.prt.module.WebSockets.WebSocketMessage;
+
+/**
+ * 电子围栏引擎（单例模式）
+ *
+ * 在手机端实时判断宠物是否进入/离开了某个围栏，例如"宠物离开了院子"
+ *
+ * 工作流程：
+ * WebSocketManager收到location_update → 解析成LocationUpdate，在位置线程通过EventBus分发
+ * → GeofenceEngine接收 → 网格索引找出附近的围栏 → 逐个判断
+ * → 状态发生变化时，通过WebSocketManager的主线程分发器发出geofence_enter / geofence_exit消息
+ *
+ * 什么是滞回（hysteresis）？
+ * GPS会抖动，宠物站在围栏边上时，定位点会在里外之间来回跳
+ * 如果一越线就报警，用户会收到一堆"进入""离开""进入""离开"
+ * 滞回的做法：
+ * - 进入围栏：必须走进边界以内 HYSTERESIS_METERS 米
+ * - 离开围栏：必须走出边界以外 HYSTERESIS_METERS 米
+ * 在边界附近这段"缓冲带"里，保持原来的状态不变（见GeofenceTracker）
+ *
+ * 事件消息的data格式：
+ * {"petId":"pet1","fenceId":"yard","fenceName":"院子","lat":39.9,"lng":116.4}
+ *
+ * 使用示例：
+ * GeofenceEngine engine = GeofenceEngine.getInstance();
+ * engine.addFence(Geofence.circle("home", "家", 39.9, 116.4, 200));
+ * // 之后在EventBus订阅方法里处理 TYPE_GEOFENCE_ENTER / TYPE_GEOFENCE_EXIT 即可
+ */
+public class GeofenceEngine {
+
+    // 日志标签
+    private static final String TAG = "GeofenceEngine";
+
+    // 网格大小（度）：约500米
+    private static final double CELL_SIZE = 0.005;
+
+    // 滞回距离（米）
+    private static final double HYSTERESIS_METERS = 10.0;
+
+    // ========== 单例相关 ==========
+
+    private static volatile GeofenceEngine instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static GeofenceEngine getInstance() {
+        if (instance == null) {
+            synchronized (GeofenceEngine.class) {
+                if (instance == null) {
+                    instance = new GeofenceEngine();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 成员变量 ==========
+
+    // 围栏和每只宠物的围栏状态
+    private final GeofenceTracker tracker = new GeofenceTracker(CELL_SIZE, HYSTERESIS_METERS);
+
+    // 状态变化时发出事件
+    private final GeofenceTracker.Listener eventListener = new GeofenceTracker.Listener() {
+        @Override
+        public void onTransition(boolean entered, String petId, Geofence fence, double lat, double lng) {
+            postEvent(entered ? WebSocketMessage.TYPE_GEOFENCE_ENTER : WebSocketMessage.TYPE_GEOFENCE_EXIT,
+                    petId, fence, lat, lng);
+        }
+    };
+
+    // Gson对象 - 用于构造事件数据
+    private final Gson gson = new Gson();
+
+    // ========== 构造函数 ==========
+
+    private GeofenceEngine() {
+        // 注册EventBus，用于接收位置更新
+        EventBus.getDefault().register(this);
+
+        Log.d(TAG, "GeofenceEngine初始化完成");
+    }
+
+    // ========== 围栏管理 ==========
+
+    /**
+     * 添加围栏（ID相同的旧围栏会被替换）
+     *
+     * @param fence 围栏
+     */
+    public synchronized void addFence(Geofence fence) {
+        tracker.addFence(fence);
+        Log.d(TAG, "添加围栏：" + fence.getName());
+    }
+
+    /**
+     * 删除围栏
+     *
+     * @param fenceId 围栏ID
+     */
+    public synchronized void removeFence(String fenceId) {
+        Geofence fence = tracker.removeFence(fenceId);
+        if (fence != null) {
+            Log.d(TAG, "删除围栏：" + fence.getName());
+        }
+    }
+
+    /**
+     * 删除所有围栏
+     */
+    public synchronized void clearFences() {
+        tracker.clear();
+    }
+
+    /**
+     * 判断宠物当前是否在某个围栏里
+     */
+    public synchronized boolean isInside(String petId, String fenceId) {
+        return tracker.isInside(petId, fenceId);
+    }
+
+    // ========== 接收位置更新 ==========
+
+    /**
+     * 接收位置更新（通过EventBus，在位置线程执行）
+     *
+     * 每个定位点都会送到这里，不会因为主线程忙被合并掉
+     *
+     * @param update 解析好的位置更新
+     */
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onLocationUpdate(LocationUpdate update) {
+        evaluate(update.getPetId(), update.getLat(), update.getLng());
+    }
+
+    /**
+     * 用一个新的定位点更新宠物的围栏状态（滞回判断见GeofenceTracker）
+     *
+     * @param petId 宠物ID
+     * @param lat   纬度
+     * @param lng   经度
+     */
+    public synchronized void evaluate(String petId, double lat, double lng) {
+        tracker.evaluate(petId, lat, lng, eventListener);
+    }
+
+    // ========== 事件通知 ==========
+
+    /**
+     * 发出围栏事件
+     *
+     * 和服务器发来的消息一样交给WebSocketManager的主线程分发器：
+     * 按同样的顺序分发，不会越过前后的连接/断开事件，主线程忙的时候也不会被丢掉（NEVER_DROP）
+     */
+    private void postEvent(String type, String petId, Geofence fence, double lat, double lng) {
+        Log.d(TAG, "围栏事件：" + type + "，宠物=" + petId + "，围栏=" + fence.getName());
+
+        WebSocketMessage event = new WebSocketMessage(
+                type,
+                gson.toJson(new EventData(petId, fence, lat, lng))
+        );
+        WebSocketManager.getInstance().dispatchLocal(event);
+    }
+
+    /**
+     * 围栏事件数据模型
+     */
+    private static class EventData {
+        String petId;
+        String fenceId;
+        String fenceName;
+        double lat;
+        double lng;
+
+        EventData(String petId, Geofence fence, double lat, double lng) {
+            this.petId = petId;
+            this.fenceId = fence.getId();
+            this.fenceName = fence.getName();
+            this.lat = lat;
+            this.lng = lng;
+        }
+    }
+}
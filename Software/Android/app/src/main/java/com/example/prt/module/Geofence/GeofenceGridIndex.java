@@ -0,0 +1,139 @@
+package com.example.prt.module.Geofence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 电子围栏网格索引
+ *
+ * 为什么需要索引？
+ * 用户可能保存了很多个围栏，还可能同时有好几只宠物，每只宠物每秒一个定位点
+ * 如果每个定位点都和所有围栏比一遍，围栏越多越慢
+ *
+ * 网格索引的思路：
+ * 把地图按经纬度切成一个个小方格（默认约500米见方）
+ * 每个围栏登记到它覆盖的所有方格里
+ * 查询时只需要算出定位点落在哪个方格，然后只检查这个方格里登记的围栏
+ * 查询代价只和附近的围栏数有关，和围栏总数无关
+ *
+ * 特别大的围栏（覆盖方格太多）不登记到方格里，单独放在一个列表，每次都检查
+ *
+ * 注意：这个类不是线程安全的，由GeofenceEngine负责加锁
+ */
+class GeofenceGridIndex {
+
+    // 一个围栏最多登记到多少个方格，超过的当作"大围栏"单独处理
+    private static final int MAX_CELLS_PER_FENCE = 1024;
+
+    // 方格大小（度）
+    private final double cellSize;
+
+    // 围栏外接矩形向外扩展的距离（米），保证刚走出围栏的点也能查到这个围栏
+    private final double marginMeters;
+
+    // 方格 → 登记在这个方格里的围栏
+    private final Map<Long, List<Geofence>> cells = new HashMap<>();
+
+    // 大围栏列表
+    private final List<Geofence> largeFences = new ArrayList<>();
+
+    /**
+     * 构造函数
+     *
+     * @param cellSize     方格大小（度），0.005度约等于500米
+     * @param marginMeters 外接矩形扩展距离（米），应该不小于滞回距离
+     */
+    GeofenceGridIndex(double cellSize, double marginMeters) {
+        this.cellSize = cellSize;
+        this.marginMeters = marginMeters;
+    }
+
+    /**
+     * 添加围栏
+     */
+    void add(Geofence fence) {
+        long minLatCell = cell(fence.minLat - marginMeters / Geofence.METERS_PER_DEGREE);
+        long maxLatCell = cell(fence.maxLat + marginMeters / Geofence.METERS_PER_DEGREE);
+        double lngMargin = marginMeters / Geofence.metersPerDegreeLng(
+                Math.max(Math.abs(fence.minLat), Math.abs(fence.maxLat)));
+        long minLngCell = cell(fence.minLng - lngMargin);
+        long maxLngCell = cell(fence.maxLng + lngMargin);
+
+        long cellCount = (maxLatCell - minLatCell + 1) * (maxLngCell - minLngCell + 1);
+        if (cellCount > MAX_CELLS_PER_FENCE) {
+            largeFences.add(fence);
+            return;
+        }
+
+        for (long latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+            for (long lngCell = minLngCell; lngCell <= maxLngCell; lngCell++) {
+                Long key = key(latCell, lngCell);
+                List<Geofence> list = cells.get(key);
+                if (list == null) {
+                    list = new ArrayList<>(2);
+                    cells.put(key, list);
+                }
+                list.add(fence);
+            }
+        }
+    }
+
+    /**
+     * 删除围栏
+     */
+    void remove(Geofence fence) {
+        if (largeFences.remove(fence)) {
+            return;
+        }
+        java.util.Iterator<List<Geofence>> it = cells.values().iterator();
+        while (it.hasNext()) {
+            List<Geofence> list = it.next();
+            list.remove(fence);
+            if (list.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 查询一个点附近可能相关的围栏
+     *
+     * @param lat 纬度
+     * @param lng 经度
+     * @param out 结果列表（调用前会被清空），传入同一个列表可以避免每次查询都分配内存
+     */
+    void query(double lat, double lng, List<Geofence> out) {
+        out.clear();
+        List<Geofence> list = cells.get(key(cell(lat), cell(lng)));
+        if (list != null) {
+            out.addAll(list);
+        }
+        out.addAll(largeFences);
+    }
+
+    /**
+     * 清空索引
+     */
+    void clear() {
+        cells.clear();
+        largeFences.clear();
+    }
+
+    // ========== 工具方法 ==========
+
+    /**
+     * 经纬度 → 方格编号
+     */
+    private long cell(double degrees) {
+        return (long) Math.floor(degrees / cellSize);
+    }
+
+    /**
+     * 两个方格编号合成一个key
+     */
+    private static Long key(long latCell, long lngCell) {
+        return (latCell << 32) ^ (lngCell & 0xFFFFFFFFL);
+    }
+}
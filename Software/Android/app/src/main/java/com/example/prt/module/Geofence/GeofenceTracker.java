@@ -0,0 +1,151 @@
+package com.example.prt.module.Geofence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 围栏状态跟踪（滞回判断）
+ *
+ * 记录每只宠物当前在哪些围栏里，收到新的定位点时判断有没有进入/离开某个围栏
+ * - 进入围栏：必须走进边界以内 hysteresisMeters 米
+ * - 离开围栏：必须走出边界以外 hysteresisMeters 米
+ * 在边界附近这段"缓冲带"里，保持原来的状态不变
+ *
+ * 和GeofenceEngine分开是为了不依赖EventBus和主线程，可以直接做单元测试
+ *
+ * 注意：这个类不是线程安全的，由GeofenceEngine负责加锁
+ */
+final class GeofenceTracker {
+
+    /**
+     * 状态变化回调
+     */
+    interface Listener {
+        /**
+         * 宠物进入或离开了一个围栏
+         *
+         * @param entered true表示进入，false表示离开
+         */
+        void onTransition(boolean entered, String petId, Geofence fence, double lat, double lng);
+    }
+
+    // 滞回距离（米）
+    private final double hysteresisMeters;
+
+    // 所有围栏：ID → 围栏
+    private final Map<String, Geofence> fences = new HashMap<>();
+
+    // 网格索引
+    private final GeofenceGridIndex index;
+
+    // 每只宠物当前在哪些围栏里面：宠物ID → 围栏ID集合
+    private final Map<String, Set<String>> insideFences = new HashMap<>();
+
+    // 查询用的临时列表（复用，避免每次查询都分配内存）
+    private final List<Geofence> candidates = new ArrayList<>();
+
+    /**
+     * @param cellSize         网格大小（度）
+     * @param hysteresisMeters 滞回距离（米）
+     */
+    GeofenceTracker(double cellSize, double hysteresisMeters) {
+        this.hysteresisMeters = hysteresisMeters;
+        this.index = new GeofenceGridIndex(cellSize, hysteresisMeters);
+    }
+
+    // ========== 围栏管理 ==========
+
+    /**
+     * 添加围栏（ID相同的旧围栏会被替换）
+     */
+    void addFence(Geofence fence) {
+        Geofence old = fences.put(fence.getId(), fence);
+        if (old != null) {
+            index.remove(old);
+        }
+        index.add(fence);
+    }
+
+    /**
+     * 删除围栏
+     *
+     * @return 被删除的围栏，不存在时返回null
+     */
+    Geofence removeFence(String fenceId) {
+        Geofence fence = fences.remove(fenceId);
+        if (fence == null) {
+            return null;
+        }
+        index.remove(fence);
+        for (Set<String> inside : insideFences.values()) {
+            inside.remove(fenceId);
+        }
+        return fence;
+    }
+
+    /**
+     * 删除所有围栏
+     */
+    void clear() {
+        fences.clear();
+        index.clear();
+        insideFences.clear();
+    }
+
+    /**
+     * 宠物当前是否在某个围栏里
+     */
+    boolean isInside(String petId, String fenceId) {
+        Set<String> inside = insideFences.get(petId);
+        return inside != null && inside.contains(fenceId);
+    }
+
+    // ========== 判断 ==========
+
+    /**
+     * 用一个新的定位点更新宠物的围栏状态
+     *
+     * @param petId    宠物ID
+     * @param lat      纬度
+     * @param lng      经度
+     * @param listener 状态发生变化时回调（在调用线程同步回调）
+     */
+    void evaluate(String petId, double lat, double lng, Listener listener) {
+        Set<String> inside = insideFences.get(petId);
+        if (inside == null) {
+            inside = new HashSet<>();
+            insideFences.put(petId, inside);
+        }
+
+        index.query(lat, lng, candidates);
+
+        for (int i = 0; i < candidates.size(); i++) {
+            Geofence fence = candidates.get(i);
+            double distance = fence.signedDistance(lat, lng);
+            boolean wasInside = inside.contains(fence.getId());
+
+            if (!wasInside && distance <= -hysteresisMeters) {
+                inside.add(fence.getId());
+                listener.onTransition(true, petId, fence, lat, lng);
+            } else if (wasInside && distance >= hysteresisMeters) {
+                inside.remove(fence.getId());
+                listener.onTransition(false, petId, fence, lat, lng);
+            }
+        }
+
+        // 之前在里面、但这次没有被查到的围栏，说明宠物已经走远了
+        Iterator<String> it = inside.iterator();
+        while (it.hasNext()) {
+            Geofence fence = fences.get(it.next());
+            if (fence != null && !candidates.contains(fence)) {
+                it.remove();
+                listener.onTransition(false, petId, fence, lat, lng);
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.prt.module.Location;
+
+/**
+ * 位置批量编解码器
+ *
+ * 把一批位置点编码成紧凑的二进制格式，用于一次性发送多个定位点
+ *
+ * 为什么不直接发JSON？
+ * 每个位置点单独发一帧 {"lat":..,"lng":..}，真正有用的数据只有十几个字节，
+ * 但加上消息外壳（type、timestamp、token）之后一帧要一两百字节
+ * 宠物的相邻两个定位点通常离得很近，时间间隔也很固定
+ * 所以只记录"和上一个点差了多少"，数字会非常小，用变长整数存只需要1~2个字节
+ *
+ * 编码格式（所有整数都是varint变长编码）：
+ * [版本号][点的数量]
+ * [基准点：纬度、经度（zigzag）、时间（无符号）]
+ * [第2个点相对第1个点的差值：Δ纬度、Δ经度、Δ时间（都是zigzag）]
+ * [第3个点相对第2个点的差值 ...]
+ *
+ * 经纬度先乘以10^7再取整（精度约1厘米），这样就可以用整数做差值
+ *
+ * 什么是zigzag？
+ * 差值可能是负数，负数直接用varint编码会占满10个字节
+ * zigzag把 0,-1,1,-2,2 ... 映射成 0,1,2,3,4 ...，小的负数也能用很少的字节表示
+ *
+ * 使用示例：
+ * byte[] bytes = LocationBatchCodec.encode(lats, lngs, times, count);
+ * LocationBatchCodec.Batch batch = LocationBatchCodec.decode(bytes);
+ */
+public final class LocationBatchCodec {
+
+    // 当前编码格式的版本号，格式有变化时递增
+    public static final int VERSION = 1;
+
+    // 经纬度的缩放倍数：10^7，即保留小数点后7位
+    private static final double COORD_SCALE = 1e7;
+
+    // 私有构造函数，工具类不需要实例化
+    private LocationBatchCodec() {
+    }
+
+    // ========== 编码 ==========
+
+    /**
+     * 把一批位置点编码成字节数组
+     *
+     * @param lats  纬度数组
+     * @param lngs  经度数组
+     * @param times 时间戳数组（毫秒）
+     * @param count 有效的点数（数组可能比count长）
+     * @return 编码后的字节数组
+     */
+    public static byte[] encode(double[] lats, double[] lngs, long[] times, int count) {
+        if (count < 0 || count > lats.length || count > lngs.length || count > times.length) {
+            throw new IllegalArgumentException("点数超出数组范围：" + count);
+        }
+
+        // 每个点最多3个varint，每个varint最多10字节；再加上头部
+        Writer writer = new Writer(2 + 5 + count * 30);
+        writer.writeVarint(VERSION);
+        writer.writeVarint(count);
+
+        if (count == 0) {
+            return writer.toByteArray();
+        }
+
+        // 写入基准点
+        long prevLat = toFixed(lats[0]);
+        long prevLng = toFixed(lngs[0]);
+        long prevTime = times[0];
+        writer.writeVarint(zigzag(prevLat));
+        writer.writeVarint(zigzag(prevLng));
+        writer.writeVarint(prevTime);
+
+        // 后续的点只写差值
+        for (int i = 1; i < count; i++) {
+            long lat = toFixed(lats[i]);
+            long lng = toFixed(lngs[i]);
+            long time = times[i];
+            writer.writeVarint(zigzag(lat - prevLat));
+            writer.writeVarint(zigzag(lng - prevLng));
+            writer.writeVarint(zigzag(time - prevTime));
+            prevLat = lat;
+            prevLng = lng;
+            prevTime = time;
+        }
+
+        return writer.toByteArray();
+    }
+
+    // ========== 解码 ==========
+
+    /**
+     * 把字节数组解码成一批位置点
+     *
+     * @param bytes encode()生成的字节数组
+     * @return 解码结果
+     * @throws IllegalArgumentException 数据格式错误或版本不支持时抛出
+     */
+    public static Batch decode(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+
+        int version = (int) reader.readVarint();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("不支持的位置批量格式版本：" + version);
+        }
+
+        long count = reader.readVarint();
+        // 每个点至少占3个字节，用来防止恶意的超大数量导致内存溢出
+        if (count < 0 || count > reader.remaining() / 3) {
+            throw new IllegalArgumentException("位置点数量不合法：" + count);
+        }
+
+        Batch batch = new Batch((int) count);
+        if (count == 0) {
+            return batch;
+        }
+
+        long lat = unzigzag(reader.readVarint());
+        long lng = unzigzag(reader.readVarint());
+        long time = reader.readVarint();
+        batch.set(0, lat, lng, time);
+
+        for (int i = 1; i < count; i++) {
+            lat += unzigzag(reader.readVarint());
+            lng += unzigzag(reader.readVarint());
+            time += unzigzag(reader.readVarint());
+            batch.set(i, lat, lng, time);
+        }
+
+        return batch;
+    }
+
+    // ========== 工具方法 ==========
+
+    /**
+     * 把经纬度转换成定点整数
+     */
+    private static long toFixed(double degrees) {
+        return Math.round(degrees * COORD_SCALE);
+    }
+
+    /**
+     * zigzag编码：把有符号数映射成无符号数
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * zigzag解码
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // ========== 解码结果 ==========
+
+    /**
+     * 一批解码后的位置点
+     *
+     * 使用基本类型数组保存，避免每个点都创建一个对象
+     */
+    public static final class Batch {
+        // 点的数量
+        public final int count;
+        // 纬度数组
+        public final double[] lats;
+        // 经度数组
+        public final double[] lngs;
+        // 时间戳数组（毫秒）
+        public final long[] times;
+
+        Batch(int count) {
+            this.count = count;
+            this.lats = new double[count];
+            this.lngs = new double[count];
+            this.times = new long[count];
+        }
+
+        private void set(int index, long lat, long lng, long time) {
+            lats[index] = lat / COORD_SCALE;
+            lngs[index] = lng / COORD_SCALE;
+            times[index] = time;
+        }
+    }
+
+    // ========== varint读写 ==========
+
+    /**
+     * varint写入器
+     *
+     * varint：每个字节的低7位存数据，最高位表示后面还有没有字节
+     * 数值越小，占用的字节越少
+     */
+    private static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        Writer(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        void writeVarint(long value) {
+            if (buffer.length - position < 10) {
+                buffer = java.util.Arrays.copyOf(buffer, buffer.length * 2 + 10);
+            }
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return java.util.Arrays.copyOf(buffer, position);
+        }
+    }
+
+    /**
+     * varint读取器
+     */
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return buffer.length - position;
+        }
+
+        long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= buffer.length) {
+                    throw new IllegalArgumentException("位置批量数据被截断");
+                }
+                byte b = buffer[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("varint格式错误");
+        }
+    }
+}
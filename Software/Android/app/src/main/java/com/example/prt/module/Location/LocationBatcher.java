@@ -0,0 +1,190 @@
+package com.example.prt.module.Location;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.prt.module.WebSockets.WebSocketManager;
+import com.example.prt.module.WebSockets.WebSocketMessage;
+
+/**
+ * 位置批量上传器（单例模式）
+ *
+ * 把一段时间内的多个定位点攒起来，编码成一帧一起发送
+ *
+ * 工作流程：
+ * 定位点 → add() 放进缓冲区 → 满足条件后 flush()
+ * → LocationBatchCodec编码 → Base64 → 一条location_batch消息发出去
+ *
+ * 什么时候发送？（满足任意一个就发）
+ * 1. 缓冲区里的点数达到 maxBatchSize
+ * 2. 第一个点放进来之后过了 batchWindowMillis 毫秒
+ *
+ * 使用示例：
+ * LocationBatcher.getInstance().add(39.9, 116.4, System.currentTimeMillis());
+ */
+public class LocationBatcher {
+
+    // 日志标签
+    private static final String TAG = "LocationBatcher";
+
+    // ========== 单例相关 ==========
+
+    private static volatile LocationBatcher instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static LocationBatcher getInstance() {
+        if (instance == null) {
+            synchronized (LocationBatcher.class) {
+                if (instance == null) {
+                    instance = new LocationBatcher();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 成员变量 ==========
+
+    // 批量时间窗口：默认5秒
+    private long batchWindowMillis = 5000;
+
+    // 一批最多多少个点：默认20个
+    private int maxBatchSize = 20;
+
+    // 缓冲区（使用基本类型数组，不为每个点创建对象）
+    private double[] lats;
+    private double[] lngs;
+    private long[] times;
+    private int count = 0;
+
+    // 定时发送用的Handler
+    private final Handler flushHandler;
+
+    // 定时发送任务
+    private final Runnable flushRunnable;
+
+    // ========== 构造函数 ==========
+
+    private LocationBatcher() {
+        allocateBuffer(maxBatchSize);
+
+        flushHandler = new Handler(Looper.getMainLooper());
+        flushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+
+        Log.d(TAG, "LocationBatcher初始化完成");
+    }
+
+    // ========== 配置 ==========
+
+    /**
+     * 设置批量时间窗口
+     *
+     * @param millis 第一个点进入缓冲区后，最多等待多少毫秒就发送
+     */
+    public synchronized void setBatchWindow(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("时间窗口必须大于0");
+        }
+        this.batchWindowMillis = millis;
+    }
+
+    /**
+     * 设置一批最多多少个点
+     *
+     * 修改之前会先把缓冲区里已有的点发出去
+     *
+     * @param size 点数上限
+     */
+    public synchronized void setMaxBatchSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("批量大小必须大于0");
+        }
+        flush();
+        this.maxBatchSize = size;
+        allocateBuffer(size);
+    }
+
+    // ========== 添加和发送 ==========
+
+    /**
+     * 添加一个定位点
+     *
+     * @param latitude  纬度
+     * @param longitude 经度
+     * @param timestamp 定位时间（毫秒）
+     */
+    public synchronized void add(double latitude, double longitude, long timestamp) {
+        lats[count] = latitude;
+        lngs[count] = longitude;
+        times[count] = timestamp;
+        count++;
+
+        if (count >= maxBatchSize) {
+            // 缓冲区满了，立即发送
+            flush();
+        } else if (count == 1) {
+            // 这一批的第一个点，开始计时
+            flushHandler.postDelayed(flushRunnable, batchWindowMillis);
+        }
+    }
+
+    /**
+     * 立即发送缓冲区里的所有点
+     *
+     * @return true表示发送成功或者缓冲区为空，false表示发送失败
+     *
+     * 发送失败时缓冲区里的点会被丢弃（位置数据很快就过时了，没必要重发）
+     */
+    public synchronized boolean flush() {
+        flushHandler.removeCallbacks(flushRunnable);
+
+        if (count == 0) {
+            return true;
+        }
+
+        byte[] encoded = LocationBatchCodec.encode(lats, lngs, times, count);
+        String data = Base64.encodeToString(encoded, Base64.NO_WRAP);
+        int sentCount = count;
+        count = 0;
+
+        boolean result = WebSocketManager.getInstance().sendMessage(
+                WebSocketMessage.TYPE_LOCATION_BATCH,
+                data
+        );
+
+        if (result) {
+            Log.d(TAG, "已批量发送" + sentCount + "个位置点，共" + encoded.length + "字节");
+        } else {
+            Log.e(TAG, "批量发送位置失败，丢弃" + sentCount + "个位置点");
+        }
+        return result;
+    }
+
+    /**
+     * 获取缓冲区中等待发送的点数
+     */
+    public synchronized int getPendingCount() {
+        return count;
+    }
+
+    // ========== 工具方法 ==========
+
+    /**
+     * 分配缓冲区
+     */
+    private void allocateBuffer(int size) {
+        lats = new double[size];
+        lngs = new double[size];
+        times = new long[size];
+        count = 0;
+    }
+}
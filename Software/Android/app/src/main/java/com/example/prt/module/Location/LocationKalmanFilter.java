@@ -0,0 +1,232 @@
+package com.example.prt.module.Location;
+
+/**
+ * 位置卡尔曼滤波器（单只宠物）
+ *
+ * GPS定位点会来回抖动，即使宠物趴着不动，位置也会在几米范围内跳来跳去
+ * 这个类用卡尔曼滤波把抖动的定位点平滑成一条连续的轨迹
+ * 设备端（ESP32的System/Kalman）已经做过一次滤波，这里是手机端的第二道处理
+ *
+ * 模型说明：
+ * - 经纬度先换算成以第一个点为原点的局部坐标（单位：米），东向为x，北向为y
+ * - x、y两个方向各自独立，使用"匀速模型"：状态是[位置, 速度]
+ * - 测量噪声来自定位精度（accuracy，单位米），精度越差越不相信这个点
+ *
+ * 为什么不为每个点创建对象？
+ * 位置更新是持续不断的数据流，每秒都会来
+ * 所有状态都放在一个固定大小的double数组里，update()过程中不分配任何内存
+ *
+ * 使用示例：
+ * LocationKalmanFilter filter = new LocationKalmanFilter();
+ * boolean moved = filter.update(lat, lng, timeMillis, accuracy);
+ * double smoothLat = filter.getLatitude();
+ */
+public class LocationKalmanFilter {
+
+    // 每度纬度对应的米数（近似值）
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    // 两个点间隔超过这个时间（毫秒），认为轨迹断开，重新初始化
+    private static final long MAX_GAP_MILLIS = 60_000;
+
+    // 没有精度信息时使用的默认精度（米）
+    private static final double DEFAULT_ACCURACY = 10.0;
+
+    // ========== 状态数组下标 ==========
+    // state数组布局：[x位置, x速度, x协方差00, x协方差01, x协方差11,
+    //                y位置, y速度, y协方差00, y协方差01, y协方差11]
+    private static final int AXIS_X = 0;
+    private static final int AXIS_Y = 5;
+    private static final int POS = 0;
+    private static final int VEL = 1;
+    private static final int P00 = 2;
+    private static final int P01 = 3;
+    private static final int P11 = 4;
+
+    // 滤波器状态
+    private final double[] state = new double[10];
+
+    // 局部坐标原点（第一个点的经纬度）
+    private double originLat;
+    private double originLng;
+    // 原点纬度处，每度经度对应的米数
+    private double metersPerDegreeLng;
+
+    // 上一次更新的时间（毫秒）
+    private long lastTime;
+
+    // 是否已经初始化
+    private boolean initialized = false;
+
+    // 过程噪声：加速度的方差（米/秒²）²，值越大越跟得上急转弯，但平滑效果越差
+    private double accelerationVariance = 0.25;
+
+    // 显著移动阈值（米）：平滑后的位置离上次报告的位置超过这个距离，才认为宠物真的动了
+    private double movementThreshold = 5.0;
+
+    // 上次报告"移动"时的局部坐标
+    private double reportedX;
+    private double reportedY;
+
+    // ========== 配置 ==========
+
+    /**
+     * 设置过程噪声
+     *
+     * @param variance 加速度方差
+     */
+    public void setAccelerationVariance(double variance) {
+        this.accelerationVariance = variance;
+    }
+
+    /**
+     * 设置显著移动阈值
+     *
+     * @param meters 距离阈值（米）
+     */
+    public void setMovementThreshold(double meters) {
+        this.movementThreshold = meters;
+    }
+
+    // ========== 滤波 ==========
+
+    /**
+     * 输入一个新的定位点
+     *
+     * @param latitude  纬度
+     * @param longitude 经度
+     * @param timeMillis 定位时间（毫秒）
+     * @param accuracy  定位精度（米），小于等于0表示未知
+     * @return true表示宠物发生了显著移动（界面需要重绘），false表示只是抖动
+     */
+    public boolean update(double latitude, double longitude, long timeMillis, double accuracy) {
+        double r = accuracy > 0 ? accuracy : DEFAULT_ACCURACY;
+        r = r * r;
+
+        if (!initialized || timeMillis - lastTime > MAX_GAP_MILLIS) {
+            reset(latitude, longitude, timeMillis, r);
+            return true;
+        }
+
+        double x = (longitude - originLng) * metersPerDegreeLng;
+        double y = (latitude - originLat) * METERS_PER_DEGREE;
+
+        // 时间倒退或重复的点不做预测，只做修正
+        double dt = (timeMillis - lastTime) / 1000.0;
+        if (dt > 0) {
+            predict(AXIS_X, dt);
+            predict(AXIS_Y, dt);
+            lastTime = timeMillis;
+        }
+
+        correct(AXIS_X, x, r);
+        correct(AXIS_Y, y, r);
+
+        // 判断是否发生了显著移动
+        double dx = state[AXIS_X + POS] - reportedX;
+        double dy = state[AXIS_Y + POS] - reportedY;
+        if (dx * dx + dy * dy >= movementThreshold * movementThreshold) {
+            reportedX = state[AXIS_X + POS];
+            reportedY = state[AXIS_Y + POS];
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取平滑后的纬度
+     */
+    public double getLatitude() {
+        return originLat + state[AXIS_Y + POS] / METERS_PER_DEGREE;
+    }
+
+    /**
+     * 获取平滑后的经度
+     */
+    public double getLongitude() {
+        return originLng + state[AXIS_X + POS] / metersPerDegreeLng;
+    }
+
+    /**
+     * 获取估计的速度（米/秒）
+     */
+    public double getSpeed() {
+        double vx = state[AXIS_X + VEL];
+        double vy = state[AXIS_Y + VEL];
+        return Math.sqrt(vx * vx + vy * vy);
+    }
+
+    /**
+     * 是否已经收到过定位点
+     */
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    // ========== 内部计算 ==========
+
+    /**
+     * 重新初始化：以当前点为原点，速度为0
+     */
+    private void reset(double latitude, double longitude, long timeMillis, double r) {
+        originLat = latitude;
+        originLng = longitude;
+        metersPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        lastTime = timeMillis;
+
+        for (int axis = AXIS_X; axis <= AXIS_Y; axis += AXIS_Y) {
+            state[axis + POS] = 0;
+            state[axis + VEL] = 0;
+            state[axis + P00] = r;
+            state[axis + P01] = 0;
+            // 初始速度不确定，给一个较大的方差（约等于10米/秒的标准差）
+            state[axis + P11] = 100;
+        }
+
+        reportedX = 0;
+        reportedY = 0;
+        initialized = true;
+    }
+
+    /**
+     * 预测步骤（匀速模型）
+     *
+     * 位置 = 位置 + 速度 × dt
+     * P = F·P·Fᵀ + Q
+     */
+    private void predict(int axis, double dt) {
+        double p00 = state[axis + P00];
+        double p01 = state[axis + P01];
+        double p11 = state[axis + P11];
+        double q = accelerationVariance;
+        double dt2 = dt * dt;
+
+        state[axis + POS] += state[axis + VEL] * dt;
+        state[axis + P00] = p00 + dt * (2 * p01 + dt * p11) + q * dt2 * dt2 / 4;
+        state[axis + P01] = p01 + dt * p11 + q * dt2 * dt / 2;
+        state[axis + P11] = p11 + q * dt2;
+    }
+
+    /**
+     * 修正步骤（只观测位置）
+     *
+     * @param z 测量到的位置（米）
+     * @param r 测量噪声方差
+     */
+    private void correct(int axis, double z, double r) {
+        double p00 = state[axis + P00];
+        double p01 = state[axis + P01];
+        double p11 = state[axis + P11];
+
+        double s = p00 + r;
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+        double innovation = z - state[axis + POS];
+
+        state[axis + POS] += k0 * innovation;
+        state[axis + VEL] += k1 * innovation;
+        state[axis + P00] = (1 - k0) * p00;
+        state[axis + P01] = (1 - k0) * p01;
+        state[axis + P11] = p11 - k1 * p01;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.prt.module.Location;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 位置平滑处理器（单例模式）
+ *
+ * 接收服务器推送的位置更新（WebSocketManager解析好的LocationUpdate），按宠物分别做卡尔曼滤波
+ * 然后把平滑后的位置和"是否显著移动"通知给界面
+ * 每一个定位点都会送到这里（不经过主线程的接收缓冲区，不会被合并），滤波器不会漏掉中间的点
+ *
+ * 界面只需要在 significantMove 为 true 的时候重绘地图
+ * GPS抖动造成的小幅跳动不会触发重绘
+ *
+ * 位置更新消息的data格式见 LocationUpdate
+ *
+ * 使用示例：
+ * LocationSmoother.getInstance().setListener((petId, lat, lng, moved) -> {
+ *     if (moved) {
+ *         // 回调在位置线程，更新地图要切到主线程
+ *         runOnUiThread(() -> updatePetMarker(petId, lat, lng));
+ *     }
+ * });
+ */
+public class LocationSmoother {
+
+    // 日志标签
+    private static final String TAG = "LocationSmoother";
+
+    // ========== 单例相关 ==========
+
+    private static volatile LocationSmoother instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static LocationSmoother getInstance() {
+        if (instance == null) {
+            synchronized (LocationSmoother.class) {
+                if (instance == null) {
+                    instance = new LocationSmoother();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 回调接口 ==========
+
+    /**
+     * 平滑位置回调接口（在位置线程回调，不是主线程）
+     */
+    public interface Listener {
+        /**
+         * 得到一个平滑后的位置时调用
+         *
+         * @param petId          宠物ID
+         * @param latitude       平滑后的纬度
+         * @param longitude      平滑后的经度
+         * @param significantMove true表示宠物真的移动了，需要重绘
+         */
+        void onSmoothedLocation(String petId, double latitude, double longitude,
+                                boolean significantMove);
+    }
+
+    // ========== 成员变量 ==========
+
+    // 每只宠物一个滤波器（只在第一次收到这只宠物的位置时创建）
+    private final Map<String, LocationKalmanFilter> filters = new HashMap<>();
+
+    // 回调
+    private Listener listener;
+
+    private LocationSmoother() {
+        // 注册EventBus，用于接收位置更新
+        EventBus.getDefault().register(this);
+    }
+
+    // ========== 对外接口 ==========
+
+    /**
+     * 设置回调
+     *
+     * @param listener 回调接口，传null表示取消
+     */
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 接收位置更新（通过EventBus，在位置线程执行）
+     *
+     * @param update 解析好的位置更新
+     */
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onLocationUpdate(LocationUpdate update) {
+        process(update.getPetId(), update.getLat(), update.getLng(),
+                update.getTime(), update.getAccuracy());
+    }
+
+    /**
+     * 处理一个位置点
+     *
+     * @param petId     宠物ID
+     * @param latitude  纬度
+     * @param longitude 经度
+     * @param timeMillis 定位时间（毫秒）
+     * @param accuracy  定位精度（米），小于等于0表示未知
+     */
+    public void process(String petId, double latitude, double longitude,
+                        long timeMillis, double accuracy) {
+        double smoothLat;
+        double smoothLng;
+        boolean moved;
+        Listener callback;
+
+        synchronized (this) {
+            LocationKalmanFilter filter = filters.get(petId);
+            if (filter == null) {
+                filter = new LocationKalmanFilter();
+                filters.put(petId, filter);
+            }
+            moved = filter.update(latitude, longitude, timeMillis, accuracy);
+            smoothLat = filter.getLatitude();
+            smoothLng = filter.getLongitude();
+            callback = listener;
+        }
+
+        if (callback != null) {
+            callback.onSmoothedLocation(petId, smoothLat, smoothLng, moved);
+        }
+    }
+
+    /**
+     * 清除某只宠物的滤波状态（例如重新绑定设备后）
+     *
+     * @param petId 宠物ID
+     */
+    public synchronized void reset(String petId) {
+        filters.remove(petId);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.prt.module.Location;
+
+import com.google.gson.Gson;
+
+import com.example.prt.module.WebSockets.WebSocketMessage;
+
+/**
+ * 位置更新数据模型
+ *
+ * 用于解析location_update消息的data字段
+ *
+ * data格式：
+ * {"petId":"pet1","lat":39.9,"lng":116.4,"accuracy":5.0,"time":1234567890}
+ * 其中lat、lng是必须的，petId、accuracy、time都是可选的：
+ * - 没有坐标、坐标不是有限的数或者超出范围时，整条消息无效（不能当成(0,0)）
+ * - 没有petId时，认为只有一只宠物（DEFAULT_PET_ID）
+ * - 没有time时，使用消息的timestamp
+ *
+ * 每条location_update只由WebSocketManager解析一次，解析结果通过EventBus在位置线程上
+ * 依次交给LocationSmoother、TrackStore、TrackPyramidManager、GeofenceEngine，各模块不再自己解析
+ *
+ * 使用示例：
+ * @Subscribe(threadMode = ThreadMode.BACKGROUND)
+ * public void onLocationUpdate(LocationUpdate update) {
+ *     Log.d(TAG, update.getPetId() + "：" + update.getLat() + ", " + update.getLng());
+ * }
+ */
+public class LocationUpdate {
+
+    // 没有petId时使用的默认宠物ID
+    public static final String DEFAULT_PET_ID = "default";
+
+    // Gson对象是线程安全的，可以共用
+    private static final Gson GSON = new Gson();
+
+    // 宠物ID
+    private String petId;
+
+    // 纬度（没有这个字段时为null）
+    private Double lat;
+
+    // 经度（没有这个字段时为null）
+    private Double lng;
+
+    // 定位精度（米），0表示未知
+    private double accuracy;
+
+    // 定位时间（毫秒），0表示未知
+    private long time;
+
+    /**
+     * 解析一条位置更新消息
+     *
+     * @param message location_update类型的消息
+     * @return 解析结果，格式错误或者没有有效坐标时返回null
+     */
+    public static LocationUpdate parse(WebSocketMessage message) {
+        LocationUpdate update;
+        try {
+            update = GSON.fromJson(message.getData(), LocationUpdate.class);
+        } catch (Exception e) {
+            return null;
+        }
+        if (update == null || !isValid(update.lat, update.lng)) {
+            return null;
+        }
+        if (update.petId == null) {
+            update.petId = DEFAULT_PET_ID;
+        }
+        if (update.time <= 0) {
+            update.time = message.getTimestamp();
+        }
+        return update;
+    }
+
+    /**
+     * 坐标是否有效：都存在、都是有限的数、在经纬度的范围内
+     */
+    static boolean isValid(Double lat, Double lng) {
+        // NaN和无穷大也过不了范围检查
+        return lat != null && lng != null
+                && Math.abs(lat) <= 90 && Math.abs(lng) <= 180;
+    }
+
+    public String getPetId() {
+        return petId;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLng() {
+        return lng;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
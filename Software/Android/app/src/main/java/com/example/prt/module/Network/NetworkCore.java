@@ -0,0 +1,275 @@
+package com.example.prt.module.Network;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网络核心（单例模式）
+ *
+ * 以前WebSocketClient、WebSocketManager各自new一个OkHttpClient，
+ * 每个OkHttpClient都有自己的线程池、连接池和DNS解析，以后再加上HTTP请求又是一套
+ * 线程、内存和TCP/TLS握手都白白多花了
+ *
+ * 现在整个应用只有这一个基础OkHttpClient：
+ * 1. Dispatcher：限制同时进行的请求数（总数和每个服务器）
+ * 2. ConnectionPool：HTTP请求复用已经建立的连接，省掉握手
+ * 3. DNS缓存：同一个域名在DNS_TTL内只解析一次
+ * 4. 超时和ping间隔从websocket_config.json读取（以前读了但没用上）
+ *    配置文件放在assets目录下，init()时读进来；WebSocketManager也从这里取配置
+ * 5. WebSocket的permessage-deflate压缩：超过WS_COMPRESS_THRESHOLD字节的消息才压缩
+ *
+ * 其他组件需要不同的配置时，用getClient().newBuilder()派生，
+ * 派生出来的OkHttpClient和基础的共用线程池、连接池和DNS缓存
+ *
+ * 使用示例：
+ * NetworkCore.init(getApplicationContext());   // 最先调用，在任何getInstance()之前
+ * OkHttpClient http = NetworkCore.getInstance().getClient();
+ * OkHttpClient ws = NetworkCore.getInstance().getWebSocketClient();
+ */
+public class NetworkCore {
+
+    // 日志标签
+    private static final String TAG = "NetworkCore";
+
+    // 同时进行的请求数上限（总数、每个服务器）
+    private static final int MAX_REQUESTS = 32;
+    private static final int MAX_REQUESTS_PER_HOST = 8;
+
+    // 连接池：最多保留几个空闲连接、空闲多久关闭（分钟）
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    // DNS缓存的有效期（毫秒）
+    private static final long DNS_TTL = 60_000;
+
+    // WebSocket消息超过多少字节才压缩（服务器同意permessage-deflate时）
+    // 小消息压缩后省不了几个字节，还白白耗CPU
+    private static final long WS_COMPRESS_THRESHOLD = 1024;
+
+    // 配置文件名（在assets目录下）
+    private static final String CONFIG_FILE = "websocket_config.json";
+
+    // ========== 单例相关 ==========
+
+    private static volatile NetworkCore instance;
+
+    // 配置文件的内容（init()之前为null）
+    private static volatile String configJson;
+
+    /**
+     * 从assets读取配置文件（在启动页和MainActivity的onCreate里最先调用，重复调用没有关系）
+     *
+     * 单例在第一次getInstance()时按配置创建OkHttpClient，
+     * 在这之前没有调用init()的话只能使用默认配置
+     *
+     * @param context 任意Context（只用来取assets）
+     */
+    public static void init(Context context) {
+        if (configJson != null) {
+            return;
+        }
+        try (InputStream input = context.getAssets().open(CONFIG_FILE)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                output.write(buffer, 0, n);
+            }
+            configJson = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "读取配置文件失败：" + e.getMessage());
+        }
+        if (instance != null) {
+            Log.w(TAG, "init()调用得太晚，网络核心已经按默认配置创建");
+        }
+    }
+
+    /**
+     * 配置文件的内容（JSON），还没有init()或者读取失败时返回null
+     */
+    public static String getConfigJson() {
+        return configJson;
+    }
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static NetworkCore getInstance() {
+        if (instance == null) {
+            synchronized (NetworkCore.class) {
+                if (instance == null) {
+                    instance = new NetworkCore();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 配置 ==========
+
+    /**
+     * websocket_config.json里和连接有关的参数（超时单位：秒）
+     */
+    private static class Config {
+        String httpUrl = "http://192.168.1.100:8081";
+        int connectTimeout = 10;
+        int readTimeout = 10;
+        int writeTimeout = 10;
+        int pingInterval = 20;
+    }
+
+    // ========== 成员变量 ==========
+
+    // 配置
+    private final Config config;
+
+    // 基础OkHttpClient（HTTP请求用）
+    private final OkHttpClient client;
+
+    // WebSocket用的OkHttpClient（在基础上加了ping间隔）
+    private final OkHttpClient webSocketClient;
+
+    private NetworkCore() {
+        config = loadConfig();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dns(new CachingDns())
+                .connectTimeout(config.connectTimeout, TimeUnit.SECONDS)
+                .readTimeout(config.readTimeout, TimeUnit.SECONDS)
+                .writeTimeout(config.writeTimeout, TimeUnit.SECONDS)
+                .build();
+
+        // OkHttp会按这个间隔自动发送ping帧保持WebSocket连接
+        webSocketClient = client.newBuilder()
+                .pingInterval(config.pingInterval, TimeUnit.SECONDS)
+                .minWebSocketMessageToCompress(WS_COMPRESS_THRESHOLD)
+                .build();
+
+        Log.d(TAG, "网络核心初始化完成：连接超时=" + config.connectTimeout
+                + "s, 读超时=" + config.readTimeout
+                + "s, 写超时=" + config.writeTimeout
+                + "s, ping间隔=" + config.pingInterval + "s");
+    }
+
+    // ========== 对外接口 ==========
+
+    /**
+     * 基础OkHttpClient（HTTP请求用，需要其他配置时用newBuilder()派生）
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * WebSocket用的OkHttpClient（带ping间隔和压缩阈值）
+     */
+    public OkHttpClient getWebSocketClient() {
+        return webSocketClient;
+    }
+
+    /**
+     * 服务器HTTP接口的地址（MobileHttpController），例如："http://192.168.1.100:8081"
+     */
+    public String getHttpBaseUrl() {
+        return config.httpUrl;
+    }
+
+    // ========== 配置加载 ==========
+
+    /**
+     * 从websocket_config.json读取HTTP地址、超时和ping间隔，读取失败使用默认值
+     */
+    private static Config loadConfig() {
+        Config defaults = new Config();
+        String json = configJson;
+        if (json == null) {
+            Log.w(TAG, "没有读取配置文件（NetworkCore.init()没有调用或者失败），使用默认配置");
+            return defaults;
+        }
+        Config config;
+        try {
+            config = new Gson().fromJson(json, Config.class);
+        } catch (Exception e) {
+            Log.w(TAG, "配置文件格式错误，使用默认配置：" + e.getMessage());
+            return defaults;
+        }
+        if (config == null) {
+            return defaults;
+        }
+        // 没有配置或者配置不合理的项使用默认值
+        if (config.connectTimeout <= 0) {
+            config.connectTimeout = defaults.connectTimeout;
+        }
+        if (config.readTimeout <= 0) {
+            config.readTimeout = defaults.readTimeout;
+        }
+        if (config.writeTimeout <= 0) {
+            config.writeTimeout = defaults.writeTimeout;
+        }
+        if (config.pingInterval <= 0) {
+            config.pingInterval = defaults.pingInterval;
+        }
+        if (config.httpUrl == null || config.httpUrl.isEmpty()) {
+            config.httpUrl = defaults.httpUrl;
+        }
+        return config;
+    }
+
+    // ========== DNS缓存 ==========
+
+    /**
+     * 带缓存的DNS解析
+     *
+     * 系统DNS在有的手机上每次都会真的去查询，重连和并行请求时会重复解析同一个域名
+     * 解析结果在DNS_TTL内直接复用，解析失败不缓存
+     */
+    private static final class CachingDns implements Dns {
+
+        private static final class Record {
+            final List<InetAddress> addresses;
+            final long expiresAt;
+
+            Record(List<InetAddress> addresses, long expiresAt) {
+                this.addresses = addresses;
+                this.expiresAt = expiresAt;
+            }
+        }
+
+        private final ConcurrentHashMap<String, Record> cache = new ConcurrentHashMap<>();
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            long now = System.currentTimeMillis();
+            Record record = cache.get(hostname);
+            if (record != null && record.expiresAt > now) {
+                return record.addresses;
+            }
+            List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+            cache.put(hostname, new Record(addresses, now + DNS_TTL));
+            return addresses;
+        }
+    }
+}
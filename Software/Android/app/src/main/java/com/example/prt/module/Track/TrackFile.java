@@ -0,0 +1,245 @@
+package com.example.prt.module.Track;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 单个轨迹文件（一只宠物的一天）
+ *
+ * 文件通过内存映射（mmap）访问：
+ * 操作系统把文件内容直接映射到进程的地址空间，读写文件就像读写数组一样
+ * 数据不占用Java堆内存，由系统按需换入换出，一整天的轨迹也不会撑爆内存
+ *
+ * 文件格式：
+ * [文件头 32字节]
+ *   int  魔数 "PTRK"
+ *   int  版本号
+ *   int  记录数
+ *   int  标志位（FLAG_COMPACTED：已经抽稀过）
+ *   16字节 保留
+ * [记录1 16字节][记录2 16字节]...
+ *   long 时间戳（毫秒）
+ *   int  纬度 × 10^7
+ *   int  经度 × 10^7
+ *
+ * 记录是定长的，并且按时间递增追加（只追加，不修改）
+ * 所以按时间查询时可以直接二分查找
+ *
+ * 注意：这个类不是线程安全的，由TrackStore负责加锁
+ */
+final class TrackFile {
+
+    // 文件魔数："PTRK"
+    private static final int MAGIC = 0x5054524B;
+
+    // 文件格式版本
+    private static final int VERSION = 1;
+
+    // 文件头大小（字节）
+    static final int HEADER_SIZE = 32;
+
+    // 每条记录的大小（字节）
+    static final int RECORD_SIZE = 16;
+
+    // 文件头里各字段的位置
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_COUNT = 8;
+    private static final int OFFSET_FLAGS = 12;
+
+    // 标志位：已经抽稀过
+    static final int FLAG_COMPACTED = 1;
+
+    // 新文件的初始容量（记录数），约1小时的1Hz定位
+    private static final int INITIAL_CAPACITY = 4096;
+
+    // 经纬度的缩放倍数
+    private static final double COORD_SCALE = 1e7;
+
+    // 文件路径
+    private final File file;
+
+    // 文件通道
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    // 内存映射的缓冲区
+    private MappedByteBuffer buffer;
+
+    // 当前映射的容量（记录数）
+    private int capacity;
+
+    // 当前的记录数
+    private int count;
+
+    // 最后一条记录的时间（用于保证时间递增）
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * 打开（或创建）一个轨迹文件
+     *
+     * @param file 文件路径
+     * @throws IOException 文件读写失败，或者文件格式不正确
+     */
+    TrackFile(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                // 新文件：写入文件头
+                map(INITIAL_CAPACITY);
+                buffer.putInt(OFFSET_MAGIC, MAGIC);
+                buffer.putInt(OFFSET_VERSION, VERSION);
+                buffer.putInt(OFFSET_COUNT, 0);
+                buffer.putInt(OFFSET_FLAGS, 0);
+                count = 0;
+            } else {
+                int mappedCapacity = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+                map(Math.max(mappedCapacity, INITIAL_CAPACITY));
+                if (buffer.getInt(OFFSET_MAGIC) != MAGIC) {
+                    throw new IOException("不是轨迹文件：" + file);
+                }
+                if (buffer.getInt(OFFSET_VERSION) != VERSION) {
+                    throw new IOException("不支持的轨迹文件版本：" + file);
+                }
+                count = Math.min(buffer.getInt(OFFSET_COUNT), capacity);
+                if (count > 0) {
+                    lastTime = timeAt(count - 1);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // ========== 写入 ==========
+
+    /**
+     * 追加一条记录
+     *
+     * @return true表示写入成功，false表示时间早于最后一条记录（被丢弃）
+     */
+    boolean append(long time, double lat, double lng) throws IOException {
+        if (time < lastTime) {
+            return false;
+        }
+        if (count == capacity) {
+            // 容量不够，扩大一倍后重新映射
+            map(capacity * 2);
+        }
+
+        int offset = HEADER_SIZE + count * RECORD_SIZE;
+        buffer.putLong(offset, time);
+        buffer.putInt(offset + 8, (int) Math.round(lat * COORD_SCALE));
+        buffer.putInt(offset + 12, (int) Math.round(lng * COORD_SCALE));
+
+        // 先写记录，再更新记录数，这样即使中途崩溃也不会读到半条记录
+        count++;
+        buffer.putInt(OFFSET_COUNT, count);
+        lastTime = time;
+        return true;
+    }
+
+    /**
+     * 设置标志位
+     */
+    void setFlags(int flags) {
+        buffer.putInt(OFFSET_FLAGS, flags);
+    }
+
+    // ========== 读取 ==========
+
+    /**
+     * 按时间范围查询
+     *
+     * @param from 起始时间（包含）
+     * @param to   结束时间（不包含）
+     * @param out  查询结果追加到这里
+     */
+    void query(long from, long to, TrackPoints out) {
+        int start = lowerBound(from);
+        for (int i = start; i < count; i++) {
+            int offset = HEADER_SIZE + i * RECORD_SIZE;
+            long time = buffer.getLong(offset);
+            if (time >= to) {
+                break;
+            }
+            out.add(time,
+                    buffer.getInt(offset + 8) / COORD_SCALE,
+                    buffer.getInt(offset + 12) / COORD_SCALE);
+        }
+    }
+
+    /**
+     * 二分查找：第一条时间 >= time 的记录下标
+     */
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeAt(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long timeAt(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getFlags() {
+        return buffer.getInt(OFFSET_FLAGS);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    // ========== 映射和关闭 ==========
+
+    /**
+     * 按指定容量重新映射文件
+     */
+    private void map(int newCapacity) throws IOException {
+        long size = HEADER_SIZE + (long) newCapacity * RECORD_SIZE;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = newCapacity;
+    }
+
+    /**
+     * 把数据刷到磁盘，并关闭文件
+     *
+     * 文件末尾多映射出来的空白部分会被截掉
+     */
+    void close() {
+        try {
+            if (buffer != null) {
+                buffer.force();
+                buffer = null;
+            }
+            if (channel.isOpen()) {
+                channel.truncate(HEADER_SIZE + (long) count * RECORD_SIZE);
+            }
+            raf.close();
+        } catch (IOException ignored) {
+            // 关闭失败不影响已经写入的数据
+        }
+    }
+}
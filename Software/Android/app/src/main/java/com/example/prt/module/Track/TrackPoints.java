@@ -0,0 +1,106 @@
+package com.example.prt.module.Track;
+
+import java.util.Arrays;
+
+/**
+ * 轨迹点集合
+ *
+ * 用几个基本类型数组保存一串轨迹点，而不是每个点一个对象
+ * 一天的轨迹可能有几万个点，用对象保存会产生大量小对象，给GC带来压力
+ *
+ * 数组的长度可能大于count，只有前count个元素是有效的
+ *
+ * 分段：
+ * 一串点可能由几段不相连的折线组成（比如视口查询时轨迹中途离开过屏幕），
+ * runStarts记录每一段第一个点的下标，画线时每段单独画，段与段之间抬笔，
+ * 不要把上一段的最后一个点和下一段的第一个点连起来
+ * 没有调用过startRun()时整串点就是一段
+ *
+ * 使用示例：
+ * TrackPoints points = TrackStore.getInstance().query("pet1", from, to);
+ * for (int i = 0; i < points.count; i++) {
+ *     Log.d(TAG, points.times[i] + "：" + points.lats[i] + ", " + points.lngs[i]);
+ * }
+ * // 画线
+ * for (int run = 0; run < points.runCount; run++) {
+ *     drawPolyline(points, points.runStarts[run], points.runEnd(run));
+ * }
+ */
+public final class TrackPoints {
+
+    // 有效的点数
+    public int count;
+
+    // 时间戳数组（毫秒）
+    public long[] times;
+
+    // 纬度数组
+    public double[] lats;
+
+    // 经度数组
+    public double[] lngs;
+
+    // 段数，以及每一段第一个点的下标
+    public int runCount;
+    public int[] runStarts = new int[4];
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 初始容量
+     */
+    public TrackPoints(int capacity) {
+        capacity = Math.max(capacity, 16);
+        times = new long[capacity];
+        lats = new double[capacity];
+        lngs = new double[capacity];
+    }
+
+    /**
+     * 追加一个点（容量不够时自动扩容）
+     */
+    public void add(long time, double lat, double lng) {
+        if (count == 0 && runCount == 0) {
+            startRun();
+        }
+        if (count == times.length) {
+            int newCapacity = count * 2;
+            times = Arrays.copyOf(times, newCapacity);
+            lats = Arrays.copyOf(lats, newCapacity);
+            lngs = Arrays.copyOf(lngs, newCapacity);
+        }
+        times[count] = time;
+        lats[count] = lat;
+        lngs[count] = lng;
+        count++;
+    }
+
+    /**
+     * 开始新的一段：下一个追加的点不和前面的点相连
+     */
+    public void startRun() {
+        if (runCount > 0 && runStarts[runCount - 1] == count) {
+            // 上一段还没有点，不用再开一段
+            return;
+        }
+        if (runCount == runStarts.length) {
+            runStarts = Arrays.copyOf(runStarts, runCount * 2);
+        }
+        runStarts[runCount++] = count;
+    }
+
+    /**
+     * 某一段最后一个点之后的下标（不包含）
+     */
+    public int runEnd(int run) {
+        return run + 1 < runCount ? runStarts[run + 1] : count;
+    }
+
+    /**
+     * 清空（保留已分配的数组，方便复用）
+     */
+    public void clear() {
+        count = 0;
+        runCount = 0;
+    }
+}
@@ -0,0 +1,372 @@
+package com.example.prt.module.Track;
+
+import java.util.Arrays;
+
+/**
+ * 多分辨率轨迹金字塔（单只宠物）
+ *
+ * 为什么需要金字塔？
+ * 一天的轨迹可能有几万个点，一周就是几十万个点
+ * 地图缩得很小的时候，屏幕上一个像素就代表几百米，画这么多点既慢又没有意义
+ *
+ * 金字塔的思路和地图瓦片一样：事先准备好几份不同精细程度的轨迹
+ * - 第0层：最精细，相邻两点至少相距 BASE_TOLERANCE 米（过滤掉原地抖动）
+ * - 第1层：相邻两点至少相距 BASE_TOLERANCE × 4 米
+ * - 第2层：× 16 米 ……以此类推
+ * 地图缩放级别越小，就用越粗的那一层
+ *
+ * 增量构建：
+ * 每来一个新点，每一层只需要和本层最后一个点比较距离，够远就追加，代价是O(层数)
+ *
+ * 视口查询：
+ * 每一层的点按CHUNK_SIZE个一组，记录每组的外接矩形
+ * 查询时先用外接矩形跳过整组不在屏幕内的点，只复制可见的那些组
+ * 轨迹中途离开过视口时，结果会分成几段（见TrackPoints.startRun），画线时段与段之间抬笔
+ *
+ * 内存上限：
+ * 金字塔只是画图用的索引，完整的原始轨迹在TrackStore的文件里（内存映射，不占Java堆）
+ * 每一层最多保留MAX_LEVEL_POINTS个点，满了就丢掉最旧的一半
+ * 越粗的层点越少，能保留的时间越长；细的层丢掉的那段时间，查询时用粗一层的点补上
+ *
+ * 注意：这个类的方法都是同步的，可以在后台线程追加、在主线程查询
+ */
+public class TrackPyramid {
+
+    // 层数
+    static final int LEVELS = 6;
+
+    // 第0层的抽稀距离（米），每往上一层乘以4
+    private static final double BASE_TOLERANCE = 1.0;
+
+    // 每组的点数
+    private static final int CHUNK_SIZE = 64;
+
+    // 每一层最多保留的点数（CHUNK_SIZE的整数倍），一层最多占 16384 × 24 字节 ≈ 384KB
+    static final int MAX_LEVEL_POINTS = 16384;
+
+    // 每度纬度对应的米数（近似值）
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    // 每一层的数据
+    private final Level[] levels = new Level[LEVELS];
+
+    // 最新收到的原始点（用于让轨迹的末端始终连到宠物的当前位置）
+    private long latestTime = Long.MIN_VALUE;
+    private double latestLat;
+    private double latestLng;
+
+    public TrackPyramid() {
+        double tolerance = BASE_TOLERANCE;
+        for (int i = 0; i < LEVELS; i++) {
+            levels[i] = new Level(tolerance);
+            tolerance *= 4;
+        }
+    }
+
+    // ========== 构建 ==========
+
+    /**
+     * 追加一个点
+     *
+     * @param time 定位时间（毫秒），早于最新点的会被忽略
+     * @param lat  纬度
+     * @param lng  经度
+     */
+    public synchronized void add(long time, double lat, double lng) {
+        if (time < latestTime) {
+            return;
+        }
+        latestTime = time;
+        latestLat = lat;
+        latestLng = lng;
+
+        for (int i = 0; i < LEVELS; i++) {
+            levels[i].offer(time, lat, lng);
+        }
+    }
+
+    /**
+     * 批量追加一串点（例如从TrackStore加载的历史轨迹）
+     */
+    public void addAll(TrackPoints points) {
+        for (int i = 0; i < points.count; i++) {
+            add(points.times[i], points.lats[i], points.lngs[i]);
+        }
+    }
+
+    /**
+     * 把另一个金字塔里晚于某个时间的点追加进来
+     *
+     * 用于重新加载历史轨迹时，把加载期间实时收到的点接到新的金字塔后面
+     *
+     * @param source 旧的金字塔
+     * @param after  只追加晚于这个时间的点
+     */
+    void addNewerThan(TrackPyramid source, long after) {
+        TrackPoints newer = new TrackPoints(16);
+        synchronized (source) {
+            Level finest = source.levels[0];
+            for (int i = finest.lowerBound(after + 1); i < finest.count; i++) {
+                newer.add(finest.times[i], finest.lats[i], finest.lngs[i]);
+            }
+            if (source.latestTime > after
+                    && (newer.count == 0 || newer.times[newer.count - 1] < source.latestTime)) {
+                newer.add(source.latestTime, source.latestLat, source.latestLng);
+            }
+        }
+        addAll(newer);
+    }
+
+
+    // ========== 查询 ==========
+
+    /**
+     * 查询视口内需要绘制的点
+     *
+     * @param minLat 视口最小纬度
+     * @param maxLat 视口最大纬度
+     * @param minLng 视口最小经度
+     * @param maxLng 视口最大经度
+     * @param zoom   地图缩放级别（和常见地图SDK一致，0表示整个地球，数字越大越精细）
+     * @param out    结果（调用前会被清空），传入同一个对象可以避免每次查询都分配内存
+     */
+    public synchronized void query(double minLat, double maxLat, double minLng, double maxLng,
+                                   double zoom, TrackPoints out) {
+        out.clear();
+        if (latestTime == Long.MIN_VALUE) {
+            return;
+        }
+
+        int index = levelForZoom(zoom, (minLat + maxLat) / 2);
+        Level level = levels[index];
+        boolean reachedEnd = queryLevel(index, Long.MAX_VALUE, minLat, maxLat, minLng, maxLng, out);
+
+        // 补上最新的原始点，让轨迹末端连到宠物当前的位置
+        if (level.count > 0 && level.times[level.count - 1] < latestTime
+                && latestLat >= minLat && latestLat <= maxLat
+                && latestLng >= minLng && latestLng <= maxLng) {
+            if (!reachedEnd) {
+                // 本层最后一个点不在结果里：从它开始新的一段连进来，不要和前面的点相连
+                int last = level.count - 1;
+                out.startRun();
+                out.add(level.times[last], level.lats[last], level.lngs[last]);
+            }
+            out.add(latestTime, latestLat, latestLng);
+        }
+    }
+
+    /**
+     * 查询某一层，这一层丢掉过旧点的话，更早的部分先用粗一层的点补上（已加锁）
+     *
+     * @param before 只要早于这个时间的点
+     * @return true表示结果以本层早于before的最后一个点结尾
+     */
+    private boolean queryLevel(int index, long before, double minLat, double maxLat,
+                               double minLng, double maxLng, TrackPoints out) {
+        Level level = levels[index];
+        boolean connected = false;
+        if (level.trimmed && level.count > 0 && index + 1 < LEVELS) {
+            connected = queryLevel(index + 1, level.times[0], minLat, maxLat, minLng, maxLng, out);
+        }
+        return level.query(minLat, maxLat, minLng, maxLng, before, connected, out);
+    }
+
+    /**
+     * 根据缩放级别选择层
+     *
+     * 墨卡托投影下，缩放级别z时每个像素代表 156543 × cos(纬度) / 2^z 米
+     * 选择抽稀距离不超过2个像素的最粗的一层
+     */
+    static int levelForZoom(double zoom, double lat) {
+        double metersPerPixel = 156543.03 * Math.cos(Math.toRadians(lat)) / Math.pow(2, zoom);
+        double maxTolerance = metersPerPixel * 2;
+        int result = 0;
+        double tolerance = BASE_TOLERANCE;
+        for (int i = 0; i < LEVELS; i++) {
+            if (tolerance <= maxTolerance) {
+                result = i;
+            }
+            tolerance *= 4;
+        }
+        return result;
+    }
+
+    /**
+     * 获取某一层的点数（用于调试）
+     */
+    public synchronized int getLevelSize(int level) {
+        return levels[level].count;
+    }
+
+    // ========== 单层数据 ==========
+
+    /**
+     * 金字塔的一层
+     *
+     * 点和每组的外接矩形都用基本类型数组保存
+     */
+    private static final class Level {
+        // 本层的抽稀距离（米）的平方
+        private final double toleranceSq;
+
+        // 点数据
+        private long[] times = new long[CHUNK_SIZE];
+        private double[] lats = new double[CHUNK_SIZE];
+        private double[] lngs = new double[CHUNK_SIZE];
+        private int count;
+
+        // 是否丢掉过最旧的点
+        private boolean trimmed = false;
+
+        // 每组的外接矩形
+        private double[] chunkMinLat = new double[4];
+        private double[] chunkMaxLat = new double[4];
+        private double[] chunkMinLng = new double[4];
+        private double[] chunkMaxLng = new double[4];
+
+        Level(double tolerance) {
+            this.toleranceSq = tolerance * tolerance;
+        }
+
+        /**
+         * 尝试追加一个点
+         *
+         * @return true表示这个点被本层收下
+         */
+        boolean offer(long time, double lat, double lng) {
+            if (count > 0) {
+                double lastLat = lats[count - 1];
+                double dy = (lat - lastLat) * METERS_PER_DEGREE;
+                double dx = (lng - lngs[count - 1]) * METERS_PER_DEGREE
+                        * Math.cos(Math.toRadians(lastLat));
+                if (dx * dx + dy * dy < toleranceSq) {
+                    return false;
+                }
+            }
+
+            if (count == MAX_LEVEL_POINTS) {
+                trimOldest();
+            }
+
+            if (count == times.length) {
+                int newCapacity = count * 2;
+                times = Arrays.copyOf(times, newCapacity);
+                lats = Arrays.copyOf(lats, newCapacity);
+                lngs = Arrays.copyOf(lngs, newCapacity);
+            }
+
+            int chunk = count / CHUNK_SIZE;
+            if (chunk == chunkMinLat.length) {
+                int newChunks = chunk * 2;
+                chunkMinLat = Arrays.copyOf(chunkMinLat, newChunks);
+                chunkMaxLat = Arrays.copyOf(chunkMaxLat, newChunks);
+                chunkMinLng = Arrays.copyOf(chunkMinLng, newChunks);
+                chunkMaxLng = Arrays.copyOf(chunkMaxLng, newChunks);
+            }
+
+            if (count % CHUNK_SIZE == 0) {
+                // 新的一组：外接矩形从上一个点开始算，保证组与组之间的连线也被覆盖
+                double startLat = count > 0 ? lats[count - 1] : lat;
+                double startLng = count > 0 ? lngs[count - 1] : lng;
+                chunkMinLat[chunk] = Math.min(startLat, lat);
+                chunkMaxLat[chunk] = Math.max(startLat, lat);
+                chunkMinLng[chunk] = Math.min(startLng, lng);
+                chunkMaxLng[chunk] = Math.max(startLng, lng);
+            } else {
+                chunkMinLat[chunk] = Math.min(chunkMinLat[chunk], lat);
+                chunkMaxLat[chunk] = Math.max(chunkMaxLat[chunk], lat);
+                chunkMinLng[chunk] = Math.min(chunkMinLng[chunk], lng);
+                chunkMaxLng[chunk] = Math.max(chunkMaxLng[chunk], lng);
+            }
+
+            times[count] = time;
+            lats[count] = lat;
+            lngs[count] = lng;
+            count++;
+            return true;
+        }
+
+        /**
+         * 丢掉最旧的一半点（按组对齐，剩下的组的外接矩形不用重算）
+         */
+        private void trimOldest() {
+            int drop = MAX_LEVEL_POINTS / 2;
+            int remaining = count - drop;
+            System.arraycopy(times, drop, times, 0, remaining);
+            System.arraycopy(lats, drop, lats, 0, remaining);
+            System.arraycopy(lngs, drop, lngs, 0, remaining);
+
+            int dropChunks = drop / CHUNK_SIZE;
+            int remainingChunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE - dropChunks;
+            System.arraycopy(chunkMinLat, dropChunks, chunkMinLat, 0, remainingChunks);
+            System.arraycopy(chunkMaxLat, dropChunks, chunkMaxLat, 0, remainingChunks);
+            System.arraycopy(chunkMinLng, dropChunks, chunkMinLng, 0, remainingChunks);
+            System.arraycopy(chunkMaxLng, dropChunks, chunkMaxLng, 0, remainingChunks);
+
+            count = remaining;
+            trimmed = true;
+        }
+
+        /**
+         * 二分查找：第一个时间 >= time 的点的下标
+         */
+        int lowerBound(long time) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 复制外接矩形和视口相交的组
+         *
+         * 两个可见组之间如果跳过了一些组，说明轨迹中间离开过视口：
+         * 在前一组后面补一个"离开"的点，然后开始新的一段（抬笔），
+         * 新的一段从后一组前面的"进入"点开始，保证线段从视口边缘正确地连出去、连进来，
+         * 又不会在离开点和进入点之间画出一条不存在的直线
+         *
+         * @param before    只要早于这个时间的点
+         * @param connected out的最后一个点是否紧挨着本层的第一个点（粗一层补上的更早的部分）
+         * @return true表示结果以本层早于before的最后一个点结尾
+         */
+        boolean query(double minLat, double maxLat, double minLng, double maxLng,
+                      long before, boolean connected, TrackPoints out) {
+            int limit = before == Long.MAX_VALUE ? count : lowerBound(before);
+            int chunks = (limit + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            int lastCopied = -1;
+            for (int c = 0; c < chunks; c++) {
+                if (chunkMaxLat[c] < minLat || chunkMinLat[c] > maxLat
+                        || chunkMaxLng[c] < minLng || chunkMinLng[c] > maxLng) {
+                    continue;
+                }
+                int start = c * CHUNK_SIZE;
+                int end = Math.min(start + CHUNK_SIZE, limit);
+                boolean joins = lastCopied >= 0 ? lastCopied == start - 1 : connected && start == 0;
+                if (!joins) {
+                    if (lastCopied >= 0) {
+                        // 上一个可见组之后离开视口的点
+                        int exit = lastCopied + 1;
+                        out.add(times[exit], lats[exit], lngs[exit]);
+                    }
+                    out.startRun();
+                    if (start > 0) {
+                        // 进入视口之前的点
+                        start--;
+                    }
+                }
+                for (int i = start; i < end; i++) {
+                    out.add(times[i], lats[i], lngs[i]);
+                }
+                lastCopied = end - 1;
+            }
+            return limit > 0 && lastCopied == limit - 1;
+        }
+    }
+}
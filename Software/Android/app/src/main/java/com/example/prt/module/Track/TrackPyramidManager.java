@@ -0,0 +1,157 @@
+package com.example.prt.module.Track;
+
+import android.util.Log;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
+import com.example.prt.module.Location.LocationUpdate;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 轨迹金字塔管理器（单例模式）
+ *
+ * 为每只宠物维护一个TrackPyramid，收到位置消息时增量更新
+ * 地图界面绘制轨迹时，只需要传入当前的视口和缩放级别，就能拿到需要画的点
+ *
+ * 工作流程：
+ * WebSocketManager收到location_update → 解析成LocationUpdate，在位置线程通过EventBus分发
+ * → 追加到对应宠物的金字塔（和TrackStore保存的是同一批点）
+ * 地图界面 → query(视口, 缩放级别) → 只返回视口内、精细程度刚好够用的点
+ *
+ * 使用示例：
+ * // 打开历史轨迹页面时，先从本地轨迹文件加载一周的数据
+ * TrackPyramidManager.getInstance().loadHistory("pet1", weekAgo, now);
+ * // 地图每次移动或缩放后
+ * TrackPyramidManager.getInstance().query("pet1", minLat, maxLat, minLng, maxLng, zoom, points);
+ */
+public class TrackPyramidManager {
+
+    // 日志标签
+    private static final String TAG = "TrackPyramidManager";
+
+    // ========== 单例相关 ==========
+
+    private static volatile TrackPyramidManager instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static TrackPyramidManager getInstance() {
+        if (instance == null) {
+            synchronized (TrackPyramidManager.class) {
+                if (instance == null) {
+                    instance = new TrackPyramidManager();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 成员变量 ==========
+
+    // 每只宠物一个金字塔
+    private final ConcurrentHashMap<String, TrackPyramid> pyramids = new ConcurrentHashMap<>();
+
+    // 追加实时的点和替换金字塔互斥，保证替换时不会漏掉正在追加的点
+    private final Object swapLock = new Object();
+
+    private TrackPyramidManager() {
+        // 注册EventBus，用于接收位置消息
+        EventBus.getDefault().register(this);
+
+        Log.d(TAG, "TrackPyramidManager初始化完成");
+    }
+
+    // ========== 接收位置消息 ==========
+
+    /**
+     * 接收位置更新（通过EventBus，在位置线程执行）
+     *
+     * 和TrackStore收到的是同一批点（location_update），金字塔里的点重启之后能从轨迹文件重建出来
+     */
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onLocationUpdate(LocationUpdate update) {
+        synchronized (swapLock) {
+            pyramidFor(update.getPetId()).add(update.getTime(), update.getLat(), update.getLng());
+        }
+    }
+
+    // ========== 对外接口 ==========
+
+    /**
+     * 从本地轨迹文件加载一段历史轨迹
+     *
+     * 会读文件，建议在后台线程调用
+     *
+     * @param petId 宠物ID
+     * @param from  起始时间（毫秒）
+     * @param to    结束时间（毫秒）
+     */
+    public void loadHistory(String petId, long from, long to) {
+        TrackPoints points = TrackStore.getInstance().query(petId, from, to);
+
+        // 重新构建，保证历史数据和之后收到的数据按时间顺序排列（读文件和构建都不加锁）
+        TrackPyramid pyramid = new TrackPyramid();
+        pyramid.addAll(points);
+        long loadedUntil = points.count > 0 ? points.times[points.count - 1] : Long.MIN_VALUE;
+
+        // 加载期间收到的实时点还在旧的金字塔里，替换之前接到新的金字塔后面
+        synchronized (swapLock) {
+            TrackPyramid old = pyramids.get(petId);
+            if (old != null) {
+                pyramid.addNewerThan(old, loadedUntil);
+            }
+            pyramids.put(petId, pyramid);
+        }
+
+        Log.d(TAG, "加载历史轨迹：" + petId + "，共" + points.count + "个点");
+    }
+
+    /**
+     * 查询视口内需要绘制的点
+     *
+     * @param petId  宠物ID
+     * @param minLat 视口最小纬度
+     * @param maxLat 视口最大纬度
+     * @param minLng 视口最小经度
+     * @param maxLng 视口最大经度
+     * @param zoom   地图缩放级别
+     * @param out    结果（调用前会被清空）
+     */
+    public void query(String petId, double minLat, double maxLat, double minLng, double maxLng,
+                      double zoom, TrackPoints out) {
+        TrackPyramid pyramid = pyramids.get(petId);
+        if (pyramid == null) {
+            out.clear();
+            return;
+        }
+        pyramid.query(minLat, maxLat, minLng, maxLng, zoom, out);
+    }
+
+    /**
+     * 清除某只宠物的轨迹
+     */
+    public void clear(String petId) {
+        synchronized (swapLock) {
+            pyramids.remove(petId);
+        }
+    }
+
+    /**
+     * 获取宠物的金字塔（不存在时创建）
+     */
+    private TrackPyramid pyramidFor(String petId) {
+        TrackPyramid pyramid = pyramids.get(petId);
+        if (pyramid == null) {
+            TrackPyramid created = new TrackPyramid();
+            pyramid = pyramids.putIfAbsent(petId, created);
+            if (pyramid == null) {
+                pyramid = created;
+            }
+        }
+        return pyramid;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.prt.module.Track;
+
+/**
+ * 轨迹抽稀工具（Douglas–Peucker算法）
+ *
+ * 宠物散步一天会产生几万个定位点，但画在地图上时，
+ * 一条直线上的中间点其实都没有必要保存
+ *
+ * Douglas–Peucker算法的思路：
+ * 1. 连接首尾两个点，画一条直线
+ * 2. 找出离这条直线最远的点
+ * 3. 如果最远距离小于容差，中间的点全部丢掉
+ * 4. 否则保留这个最远点，以它为界分成两段，分别重复上面的步骤
+ *
+ * 这里用一个int数组模拟递归的栈，避免轨迹很长时递归太深导致栈溢出
+ */
+public final class TrackSimplifier {
+
+    // 每度纬度对应的米数（近似值）
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    private TrackSimplifier() {
+    }
+
+    /**
+     * 对轨迹做抽稀
+     *
+     * @param lats      纬度数组
+     * @param lngs      经度数组
+     * @param count     有效点数
+     * @param tolerance 容差（米），偏离直线不超过这个距离的点会被丢掉
+     * @param keep      输出：keep[i]为true表示第i个点需要保留（长度至少为count）
+     * @return 保留下来的点数
+     */
+    public static int simplify(double[] lats, double[] lngs, int count,
+                               double tolerance, boolean[] keep) {
+        if (count <= 2) {
+            for (int i = 0; i < count; i++) {
+                keep[i] = true;
+            }
+            return count;
+        }
+
+        for (int i = 0; i < count; i++) {
+            keep[i] = false;
+        }
+        keep[0] = true;
+        keep[count - 1] = true;
+        int kept = 2;
+
+        // 以第一个点的纬度换算经度方向的米数
+        double metersPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(lats[0]));
+        double toleranceSq = tolerance * tolerance;
+
+        // 栈里存放待处理的区间[first, last]
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            // 把区间的起点当作原点，换算成米
+            double ex = (lngs[last] - lngs[first]) * metersPerDegreeLng;
+            double ey = (lats[last] - lats[first]) * METERS_PER_DEGREE;
+            double lenSq = ex * ex + ey * ey;
+
+            double maxDistSq = -1;
+            int maxIndex = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = (lngs[i] - lngs[first]) * metersPerDegreeLng;
+                double py = (lats[i] - lats[first]) * METERS_PER_DEGREE;
+                double distSq;
+                if (lenSq == 0) {
+                    distSq = px * px + py * py;
+                } else {
+                    // 点到线段的距离
+                    double t = Math.max(0, Math.min(1, (px * ex + py * ey) / lenSq));
+                    double dx = px - t * ex;
+                    double dy = py - t * ey;
+                    distSq = dx * dx + dy * dy;
+                }
+                if (distSq > maxDistSq) {
+                    maxDistSq = distSq;
+                    maxIndex = i;
+                }
+            }
+
+            if (maxIndex >= 0 && maxDistSq > toleranceSq) {
+                keep[maxIndex] = true;
+                kept++;
+
+                if (top + 4 > stack.length) {
+                    stack = java.util.Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = first;
+                stack[top++] = maxIndex;
+                stack[top++] = maxIndex;
+                stack[top++] = last;
+            }
+        }
+
+        return kept;
+    }
+}
@@ -0,0 +1,425 @@
+package com.example.prt.module.Track;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
+import com.example.prt.module.Location.LocationUpdate;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 轨迹存储（单例模式）
+ *
+ * 把收到的location_update定位点保存到手机上，用户不用请求服务器就能看到宠物一整天的散步轨迹
+ *
+ * 存储方式：
+ * - 每只宠物每天一个文件：files/tracks/宠物ID/20251019.trk
+ * - 文件使用内存映射 + 定长记录，只追加写入（见TrackFile）
+ * - 按时间查询时二分查找，数据不需要全部读进Java堆
+ *
+ * 旧数据抽稀：
+ * 当某只宠物的定位进入新的一天时，前一天的文件会在后台线程用Douglas–Peucker算法抽稀
+ * 直线上多余的点被去掉，文件一般能缩小到原来的几分之一，轨迹形状基本不变
+ * 应用被杀掉重启后不知道之前跨过天，所以init()时还会检查一遍今天以前还没抽稀的文件
+ *
+ * 使用示例：
+ * // 在Application或第一个Activity中初始化
+ * TrackStore.getInstance().init(getApplicationContext());
+ * // 查询今天的轨迹
+ * TrackPoints points = TrackStore.getInstance().query("pet1", startOfDay, now);
+ */
+public class TrackStore {
+
+    // 日志标签
+    private static final String TAG = "TrackStore";
+
+    // 轨迹文件目录名
+    private static final String DIR_NAME = "tracks";
+
+    // 轨迹文件扩展名
+    private static final String FILE_SUFFIX = ".trk";
+
+    // 最多同时打开多少个轨迹文件
+    private static final int MAX_OPEN_FILES = 4;
+
+    // 抽稀容差（米）
+    private static final double COMPACT_TOLERANCE = 3.0;
+
+    // 轨迹文件名：8位日期 + 扩展名
+    private static final String FILE_NAME_PATTERN = "\\d{8}\\" + FILE_SUFFIX;
+
+    // 查询范围超出这个时间（9999-12-31）就不用再换算成日期了
+    private static final long MAX_DAY_TIME = 253402300799999L;
+
+    // ========== 单例相关 ==========
+
+    private static volatile TrackStore instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static TrackStore getInstance() {
+        if (instance == null) {
+            synchronized (TrackStore.class) {
+                if (instance == null) {
+                    instance = new TrackStore();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 成员变量 ==========
+
+    // 轨迹文件根目录
+    private File rootDir;
+
+    // 已打开的文件（按访问顺序排列，超出数量时关闭最久没用的）
+    private final LinkedHashMap<String, TrackFile> openFiles =
+            new LinkedHashMap<>(8, 0.75f, true);
+
+    // 每只宠物最后一次写入的日期（用于判断是否跨天）
+    private final Map<String, String> lastDay = new LinkedHashMap<>();
+
+    // 后台抽稀线程
+    private final ExecutorService compactExecutor = Executors.newSingleThreadExecutor();
+
+    // 日期格式（文件名）
+    private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd", Locale.US);
+
+    private TrackStore() {
+        dayFormat.setTimeZone(TimeZone.getDefault());
+    }
+
+    // ========== 初始化 ==========
+
+    /**
+     * 初始化轨迹存储
+     *
+     * 必须在使用前调用一次，之后会自动记录收到的位置更新
+     *
+     * @param context 上下文（建议传ApplicationContext）
+     */
+    public synchronized void init(Context context) {
+        if (rootDir != null) {
+            return;
+        }
+        rootDir = new File(context.getFilesDir(), DIR_NAME);
+        if (!rootDir.exists() && !rootDir.mkdirs()) {
+            Log.e(TAG, "创建轨迹目录失败：" + rootDir);
+        }
+
+        // 注册EventBus，用于接收位置更新
+        EventBus.getDefault().register(this);
+
+        // 上次运行时跨天没来得及抽稀的文件，在后台补上
+        compactExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compactOldDays();
+            }
+        });
+
+        Log.d(TAG, "TrackStore初始化完成：" + rootDir);
+    }
+
+    // ========== 接收位置更新 ==========
+
+    /**
+     * 接收位置更新（通过EventBus）
+     *
+     * WebSocketManager在位置线程上分发，每个定位点都会送到，写文件不会卡住界面
+     */
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onLocationUpdate(LocationUpdate update) {
+        append(update.getPetId(), update.getTime(), update.getLat(), update.getLng());
+    }
+
+    // ========== 写入 ==========
+
+    /**
+     * 追加一个定位点
+     *
+     * @param petId 宠物ID
+     * @param time  定位时间（毫秒）
+     * @param lat   纬度
+     * @param lng   经度
+     * @return true表示写入成功
+     */
+    public synchronized boolean append(String petId, long time, double lat, double lng) {
+        if (rootDir == null) {
+            Log.w(TAG, "TrackStore未初始化，丢弃定位点");
+            return false;
+        }
+
+        String day = dayFormat.format(new Date(time));
+
+        // 跨天了：前一天的文件交给后台抽稀
+        String previousDay = lastDay.put(petId, day);
+        if (previousDay != null && previousDay.compareTo(day) < 0) {
+            scheduleCompact(petId, previousDay);
+        }
+
+        try {
+            TrackFile file = open(petId, day, true);
+            if (!file.append(time, lat, lng)) {
+                Log.w(TAG, "定位点时间早于已有记录，丢弃：" + time);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "写入轨迹失败：" + e.getMessage());
+            return false;
+        }
+    }
+
+    // ========== 查询 ==========
+
+    /**
+     * 按时间范围查询轨迹
+     *
+     * @param petId 宠物ID
+     * @param from  起始时间（毫秒，包含）
+     * @param to    结束时间（毫秒，不包含）
+     * @return 轨迹点（按时间排序）
+     */
+    public synchronized TrackPoints query(String petId, long from, long to) {
+        TrackPoints result = new TrackPoints(256);
+        if (rootDir == null || from >= to) {
+            return result;
+        }
+
+        // 只查询这只宠物已有的、日期在范围内的文件（按日期排序）
+        // 不按天循环：查询范围可能很大（比如0到Long.MAX_VALUE），一天一天地算既慢又会溢出
+        String fromDay = from <= 0 ? "00000000" : dayFormat.format(new Date(from));
+        String toDay = to > MAX_DAY_TIME ? "99999999" : dayFormat.format(new Date(to - 1));
+        for (String day : listDays(petDirFor(petId))) {
+            if (day.compareTo(fromDay) < 0 || day.compareTo(toDay) > 0) {
+                continue;
+            }
+            try {
+                TrackFile file = open(petId, day, false);
+                if (file != null) {
+                    file.query(from, to, result);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "读取轨迹失败：" + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    // ========== 抽稀 ==========
+
+    /**
+     * 在后台线程抽稀某一天的轨迹
+     */
+    private void scheduleCompact(final String petId, final String day) {
+        compactExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compact(petId, day);
+            }
+        });
+    }
+
+    /**
+     * 抽稀今天以前所有还没抽稀的文件（在后台线程执行）
+     *
+     * 跨天时的抽稀只在进程还活着时触发，应用被系统杀掉后重启，
+     * 之前几天的文件就没人管了，所以启动时扫描一遍
+     */
+    private void compactOldDays() {
+        File[] petDirs;
+        String today;
+        synchronized (this) {
+            petDirs = rootDir.listFiles();
+            today = dayFormat.format(new Date());
+        }
+        if (petDirs == null) {
+            return;
+        }
+        for (File petDir : petDirs) {
+            if (!petDir.isDirectory()) {
+                continue;
+            }
+            for (String day : listDays(petDir)) {
+                if (day.compareTo(today) < 0) {
+                    // compact()会检查FLAG_COMPACTED，已经抽稀过的直接跳过
+                    compact(petDir.getName(), day);
+                }
+            }
+        }
+    }
+
+    /**
+     * 抽稀某一天的轨迹文件
+     *
+     * 做法：读出全部点 → Douglas–Peucker → 写入临时文件 → 替换原文件
+     *
+     * @param petId 宠物ID
+     * @param day   日期（yyyyMMdd）
+     */
+    public synchronized void compact(String petId, String day) {
+        try {
+            TrackFile file = open(petId, day, false);
+            if (file == null || (file.getFlags() & TrackFile.FLAG_COMPACTED) != 0) {
+                return;
+            }
+
+            TrackPoints points = new TrackPoints(file.getCount());
+            file.query(Long.MIN_VALUE, Long.MAX_VALUE, points);
+            closeFile(petId, day);
+
+            boolean[] keep = new boolean[points.count];
+            int kept = TrackSimplifier.simplify(points.lats, points.lngs, points.count,
+                    COMPACT_TOLERANCE, keep);
+
+            File source = fileFor(petId, day);
+            File temp = new File(source.getPath() + ".tmp");
+            if (temp.exists() && !temp.delete()) {
+                throw new IOException("无法删除临时文件：" + temp);
+            }
+
+            TrackFile compacted = new TrackFile(temp);
+            for (int i = 0; i < points.count; i++) {
+                if (keep[i]) {
+                    compacted.append(points.times[i], points.lats[i], points.lngs[i]);
+                }
+            }
+            compacted.setFlags(TrackFile.FLAG_COMPACTED);
+            compacted.close();
+
+            if (!temp.renameTo(source)) {
+                throw new IOException("替换轨迹文件失败：" + source);
+            }
+            Log.d(TAG, "轨迹抽稀完成：" + petId + "/" + day + "，" + points.count + " → " + kept);
+        } catch (IOException e) {
+            Log.e(TAG, "轨迹抽稀失败：" + e.getMessage());
+        }
+    }
+
+    // ========== 文件管理 ==========
+
+    /**
+     * 打开轨迹文件
+     *
+     * @param create 文件不存在时是否创建
+     * @return 轨迹文件，不存在且不创建时返回null
+     */
+    private TrackFile open(String petId, String day, boolean create) throws IOException {
+        String key = keyFor(petId, day);
+        TrackFile file = openFiles.get(key);
+        if (file != null) {
+            return file;
+        }
+
+        File path = fileFor(petId, day);
+        if (!path.exists()) {
+            if (!create) {
+                return null;
+            }
+            File dir = path.getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("创建目录失败：" + dir);
+            }
+        }
+
+        file = new TrackFile(path);
+        openFiles.put(key, file);
+
+        // 打开的文件太多，关闭最久没用的
+        if (openFiles.size() > MAX_OPEN_FILES) {
+            Iterator<Map.Entry<String, TrackFile>> it = openFiles.entrySet().iterator();
+            Map.Entry<String, TrackFile> eldest = it.next();
+            eldest.getValue().close();
+            it.remove();
+        }
+        return file;
+    }
+
+    /**
+     * 关闭某个轨迹文件
+     */
+    private void closeFile(String petId, String day) {
+        TrackFile file = openFiles.remove(keyFor(petId, day));
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    /**
+     * 轨迹文件路径
+     */
+    private File fileFor(String petId, String day) {
+        return new File(petDirFor(petId), day + FILE_SUFFIX);
+    }
+
+    /**
+     * 宠物的轨迹目录
+     *
+     * 宠物ID作为目录名，先把不能出现在文件名里的字符替换掉
+     * （替换后的名字再替换一次不变，所以启动时扫描到的目录名也可以直接当宠物ID用）
+     */
+    private File petDirFor(String petId) {
+        return new File(rootDir, safeName(petId));
+    }
+
+    /**
+     * 已打开文件的键（和文件路径一一对应，不同写法的宠物ID不会把同一个文件打开两次）
+     */
+    private static String keyFor(String petId, String day) {
+        return safeName(petId) + "/" + day;
+    }
+
+    private static String safeName(String petId) {
+        return petId.replaceAll("[^A-Za-z0-9_\\-]", "_");
+    }
+
+    /**
+     * 目录里所有轨迹文件的日期（按日期排序）
+     */
+    private static String[] listDays(File petDir) {
+        String[] names = petDir.list();
+        if (names == null) {
+            return new String[0];
+        }
+        String[] days = new String[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.matches(FILE_NAME_PATTERN)) {
+                days[count++] = name.substring(0, name.length() - FILE_SUFFIX.length());
+            }
+        }
+        days = Arrays.copyOf(days, count);
+        Arrays.sort(days);
+        return days;
+    }
+
+    /**
+     * 关闭所有文件
+     *
+     * 注意：一般不需要调用这个方法，因为TrackStore是单例
+     */
+    public synchronized void close() {
+        for (TrackFile file : openFiles.values()) {
+            file.close();
+        }
+        openFiles.clear();
+    }
+}
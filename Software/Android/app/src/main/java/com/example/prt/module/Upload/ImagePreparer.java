@@ -0,0 +1,410 @@
+package com.example.prt.module.Upload;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上传前的图片预处理（单例模式）
+ *
+ * 手机拍的照片一张1200万像素、几MB，AI饮食分析只需要DEFAULT_LONG_EDGE左右的分辨率，
+ * 直接上传原图既浪费流量，服务器还要再缩一遍
+ *
+ * 处理步骤（在后台线程执行）：
+ * 1. 只读图片尺寸（inJustDecodeBounds），不解码像素
+ * 2. 按尺寸算出inSampleSize（2的整数次幂），解码时直接隔行隔列采样：
+ *    4000x3000的照片用inSampleSize=2解码，只占原来1/4的内存，解码也快得多
+ * 3. 缩放到目标尺寸（长边默认DEFAULT_LONG_EDGE，可以用setLongEdge修改），并按EXIF方向旋转摆正
+ * 4. 按设置的画质重新压缩成JPEG，写到缓存目录
+ *
+ * 线程池：
+ * 同时处理PARALLEL张，排队的最多MAX_QUEUED张，再多直接回调失败，
+ * 防止用户一次选几十张照片时把内存撑爆
+ *
+ * 使用示例：
+ * ImagePreparer.getInstance().init(getApplicationContext());
+ * ImagePreparer.getInstance().prepareAndUpload(photo, UploadEngine.PURPOSE_DIET_PHOTO, uploadCallback);
+ */
+public class ImagePreparer {
+
+    // 日志标签
+    private static final String TAG = "ImagePreparer";
+
+    // 输出目录名（在缓存目录下，上传完就可以删）
+    private static final String DIR_NAME = "prepared_images";
+
+    // 默认的目标尺寸（长边像素）和JPEG画质
+    public static final int DEFAULT_LONG_EDGE = 1024;
+    public static final int DEFAULT_QUALITY = 85;
+
+    // 同时处理的图片数
+    private static final int PARALLEL = 3;
+
+    // 最多排队的图片数
+    private static final int MAX_QUEUED = 16;
+
+    // ========== 单例相关 ==========
+
+    private static volatile ImagePreparer instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static ImagePreparer getInstance() {
+        if (instance == null) {
+            synchronized (ImagePreparer.class) {
+                if (instance == null) {
+                    instance = new ImagePreparer();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 回调 ==========
+
+    /**
+     * 处理结果回调（在主线程执行）
+     */
+    public interface Callback {
+        /**
+         * 处理完成
+         *
+         * @param output 处理后的JPEG文件
+         */
+        void onPrepared(File output);
+
+        /**
+         * 处理失败
+         *
+         * @param error 错误信息
+         */
+        void onError(String error);
+    }
+
+    // ========== 成员变量 ==========
+
+    // 输出目录
+    private File outputDir;
+
+    // 目标尺寸（长边）和画质，可以随时修改，对之后提交的图片生效
+    private volatile int longEdge = DEFAULT_LONG_EDGE;
+    private volatile int quality = DEFAULT_QUALITY;
+
+    // 有界线程池
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            PARALLEL, PARALLEL, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_QUEUED));
+
+    // 主线程Handler（用于回调）
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 统计：处理的张数、原图总字节数、输出总字节数、总耗时（纳秒）
+    private final AtomicInteger preparedCount = new AtomicInteger();
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final AtomicLong outputBytes = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    // 输出文件序号
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private ImagePreparer() {
+        // 空闲时不保留线程
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 初始化（在Application或MainActivity中调用一次）
+     */
+    public void init(Context context) {
+        outputDir = new File(context.getCacheDir(), DIR_NAME);
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            Log.e(TAG, "创建目录失败：" + outputDir);
+        }
+    }
+
+    // ========== 设置 ==========
+
+    /**
+     * 设置目标尺寸（长边像素），比原图大时不放大
+     */
+    public void setLongEdge(int longEdge) {
+        this.longEdge = Math.max(1, longEdge);
+    }
+
+    /**
+     * 设置JPEG画质（1～100）
+     */
+    public void setQuality(int quality) {
+        this.quality = Math.max(1, Math.min(100, quality));
+    }
+
+    // ========== 对外接口 ==========
+
+    /**
+     * 预处理一张图片
+     *
+     * @param source   原图文件
+     * @param callback 结果回调（在主线程执行）
+     */
+    public void prepare(final File source, final Callback callback) {
+        final int edge = longEdge;
+        final int jpegQuality = quality;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final File output = prepareSync(source, edge, jpegQuality);
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onPrepared(output);
+                            }
+                        });
+                    } catch (final Exception e) {
+                        Log.e(TAG, "图片处理失败：" + source + "，" + e.getMessage());
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onError(e.getMessage() != null ? e.getMessage() : e.toString());
+                            }
+                        });
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 排队的图片太多了（回调和其他情况一样放到主线程，调用者可能不在主线程）
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onError("图片太多，请稍后再试");
+                }
+            });
+        }
+    }
+
+    /**
+     * 预处理一张图片，然后交给UploadEngine上传，上传完成后删除处理后的文件
+     *
+     * 上传失败时处理后的文件和它的断点状态一起删掉：
+     * 每次处理的输出文件名都不一样，重试时会重新处理、重新上传，旧的断点状态用不上了
+     *
+     * @param source   原图文件
+     * @param purpose  上传用途，比如UploadEngine.PURPOSE_DIET_PHOTO
+     * @param callback 上传结果回调（在主线程执行），预处理失败也通过onError通知
+     */
+    public void prepareAndUpload(File source, final String purpose, final UploadEngine.Callback callback) {
+        prepare(source, new Callback() {
+            @Override
+            public void onPrepared(final File output) {
+                UploadEngine.getInstance().upload(output, purpose, new UploadEngine.Callback() {
+                    @Override
+                    public void onProgress(int uploadedChunks, int totalChunks) {
+                        callback.onProgress(uploadedChunks, totalChunks);
+                    }
+
+                    @Override
+                    public void onComplete(String fileId) {
+                        if (!output.delete()) {
+                            Log.w(TAG, "删除临时文件失败：" + output);
+                        }
+                        callback.onComplete(fileId);
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        // 处理后的图片一般只有一两块，重试时重新处理比续传更简单
+                        // 断点状态也要一起删，否则每失败一次就留下一个没人用的状态文件
+                        UploadEngine.getInstance().discard(output, purpose, true);
+                        callback.onError(error);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    // ========== 统计 ==========
+
+    /**
+     * 已处理的图片数
+     */
+    public int getPreparedCount() {
+        return preparedCount.get();
+    }
+
+    /**
+     * 平均压缩比（输出字节数 / 原图字节数），还没处理过图片时返回0
+     */
+    public double getCompressionRatio() {
+        long input = inputBytes.get();
+        return input > 0 ? outputBytes.get() / (double) input : 0;
+    }
+
+    /**
+     * 平均每张的处理时间（毫秒），还没处理过图片时返回0
+     */
+    public double getAverageMillis() {
+        int count = preparedCount.get();
+        return count > 0 ? totalNanos.get() / 1_000_000.0 / count : 0;
+    }
+
+    // ========== 内部实现（在后台线程执行） ==========
+
+    /**
+     * 同步处理一张图片
+     *
+     * @return 处理后的JPEG文件
+     */
+    private File prepareSync(File source, int edge, int jpegQuality) throws IOException {
+        if (outputDir == null) {
+            throw new IllegalStateException("ImagePreparer未初始化");
+        }
+        long start = System.nanoTime();
+
+        // 1. 只读尺寸
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("无法识别的图片：" + source.getName());
+        }
+
+        // 2. 采样解码：inSampleSize取最大的2的整数次幂，保证解码后长边仍不小于目标尺寸
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, edge);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded = BitmapFactory.decodeFile(source.getPath(), options);
+        if (decoded == null) {
+            throw new IOException("图片解码失败：" + source.getName());
+        }
+
+        // 3. 缩放并按EXIF方向摆正
+        Bitmap scaled = scaleAndRotate(decoded, edge, readOrientation(source));
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+
+        // 4. 重新压缩
+        File output = new File(outputDir, "img_" + System.currentTimeMillis()
+                + "_" + sequence.incrementAndGet() + ".jpg");
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+                if (!scaled.compress(Bitmap.CompressFormat.JPEG, jpegQuality, out)) {
+                    throw new IOException("JPEG压缩失败：" + source.getName());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 写了一半的文件不要留在缓存目录里
+            if (output.exists() && !output.delete()) {
+                Log.w(TAG, "删除写了一半的文件失败：" + output);
+            }
+            throw e;
+        } finally {
+            scaled.recycle();
+        }
+
+        long nanos = System.nanoTime() - start;
+        preparedCount.incrementAndGet();
+        inputBytes.addAndGet(source.length());
+        outputBytes.addAndGet(output.length());
+        totalNanos.addAndGet(nanos);
+        Log.d(TAG, source.getName() + "：" + options.outWidth * options.inSampleSize + "x"
+                + options.outHeight * options.inSampleSize + "，" + source.length() / 1024 + "KB → "
+                + output.length() / 1024 + "KB，耗时" + nanos / 1_000_000 + "ms");
+        return output;
+    }
+
+    /**
+     * 计算inSampleSize：最大的2的整数次幂，使采样后的长边仍不小于目标尺寸
+     */
+    static int sampleSize(int width, int height, int edge) {
+        int longSide = Math.max(width, height);
+        int sample = 1;
+        while (longSide / (sample * 2) >= edge) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * 读取EXIF里的拍摄方向，读不到按正常方向处理
+     */
+    private static int readOrientation(File source) {
+        try {
+            return new ExifInterface(source.getPath()).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * 缩放到长边不超过edge，并按EXIF方向旋转/翻转（一次完成，只创建一个新Bitmap）
+     *
+     * @return 处理后的Bitmap，不需要处理时返回原来的Bitmap
+     */
+    private static Bitmap scaleAndRotate(Bitmap bitmap, int edge, int orientation) {
+        int longSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        float scale = longSide > edge ? edge / (float) longSide : 1f;
+
+        Matrix matrix = new Matrix();
+        if (scale < 1f) {
+            matrix.postScale(scale, scale);
+        }
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(270);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(270);
+                matrix.postScale(-1, 1);
+                break;
+            default:
+                break;
+        }
+        if (matrix.isIdentity()) {
+            return bitmap;
+        }
+        // filter=true：缩小时做双线性过滤，避免锯齿
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    }
+}
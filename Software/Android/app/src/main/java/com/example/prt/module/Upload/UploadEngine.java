@@ -0,0 +1,676 @@
+package com.example.prt.module.Upload;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.prt.module.Network.NetworkCore;
+import com.example.prt.module.WebSockets.WebSocketManager;
+import com.example.prt.module.WebSockets.WebSocketMessage;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * 大文件上传引擎（单例模式）
+ *
+ * 饮食分析的照片、保存下来的视频片段动辄几MB，塞进WebSocket的JSON消息里既慢又会堵住其他消息
+ * 所以大文件走服务器的HTTP接口（MobileHttpController）分块上传，
+ * 传完之后WebSocket只发一条很小的"上传完成"通知（upload_complete）
+ *
+ * 上传流程：
+ * 1. POST {httpUrl}/upload  {"fileName","size","chunkSize","chunkCount","purpose"}
+ *    → {"uploadId":"..."}
+ * 2. 每块：PUT {httpUrl}/upload/{uploadId}/chunks/{index}
+ *    请求头X-Chunk-Crc32是这一块的CRC32（十六进制），服务器校验不通过返回400，客户端重传
+ *    同时上传PARALLEL块，每块失败最多重试MAX_RETRIES次
+ * 3. 全部传完：POST {httpUrl}/upload/{uploadId}/complete → {"fileId":"..."}
+ * 4. WebSocket发送upload_complete {"uploadId","fileId","fileName","size","purpose"}
+ *    通知真正交给连接之后才删除状态文件、回调onComplete；
+ *    WebSocket没有连接、或者通知还在发送队列里连接就断开了（被丢弃）时回调onError，
+ *    状态文件里记下fileId，再次上传同一个文件时只补发通知
+ *
+ * 断点续传：
+ * 每个上传任务在uploads/目录下有一个状态文件，记录uploadId和"哪些块已经传完"的位图
+ * 每传完一块就把位图里对应的那一位写到文件里
+ * 上传中断（断网、应用被杀）之后，再次上传同一个文件只传还没传完的块
+ * 文件被修改过（大小或修改时间变了）就从头开始；服务器不认识这个uploadId（404）也从头开始
+ *
+ * 状态文件格式：
+ *   int    魔数 "PUPL"
+ *   int    版本号
+ *   long   文件大小
+ *   long   文件修改时间
+ *   int    块大小
+ *   int    块数
+ *   UTF    uploadId（DataOutput.writeUTF格式）
+ *   byte[] 位图，(块数+7)/8字节，第i块传完后第i位为1
+ *   UTF    fileId（可选，服务器已经合并完成、只差upload_complete通知时才有）
+ *
+ * 使用示例：
+ * UploadEngine.getInstance().init(getApplicationContext());
+ * UploadEngine.getInstance().upload(photoFile, UploadEngine.PURPOSE_DIET_PHOTO, callback);
+ */
+public class UploadEngine {
+
+    // 日志标签
+    private static final String TAG = "UploadEngine";
+
+    // 状态文件目录名
+    private static final String DIR_NAME = "uploads";
+
+    // 状态文件魔数 "PUPL" 和版本号
+    private static final int MAGIC = 0x5055504C;
+    private static final int VERSION = 1;
+
+    // 每块大小
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    // 同时上传的块数
+    private static final int PARALLEL = 3;
+
+    // 每块最多重试次数，第一次重试前等待的时间（毫秒，之后每次翻倍）
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_DELAY = 500;
+
+    // 等待上传完成通知发出去的最长时间（秒）
+    private static final long NOTICE_TIMEOUT = 30;
+
+    // 上传用途
+    public static final String PURPOSE_DIET_PHOTO = "diet_photo";
+    public static final String PURPOSE_VIDEO_CLIP = "video_clip";
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final MediaType OCTET_STREAM = MediaType.get("application/octet-stream");
+
+    // ========== 单例相关 ==========
+
+    private static volatile UploadEngine instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static UploadEngine getInstance() {
+        if (instance == null) {
+            synchronized (UploadEngine.class) {
+                if (instance == null) {
+                    instance = new UploadEngine();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 回调 ==========
+
+    /**
+     * 上传结果回调（在主线程执行）
+     */
+    public interface Callback {
+        /**
+         * 上传进度
+         *
+         * @param uploadedChunks 已经传完的块数（包括之前中断前传完的）
+         * @param totalChunks    总块数
+         */
+        void onProgress(int uploadedChunks, int totalChunks);
+
+        /**
+         * 上传完成（已经通过WebSocket通知了服务器）
+         *
+         * @param fileId 服务器上的文件ID
+         */
+        void onComplete(String fileId);
+
+        /**
+         * 上传失败（已经传完的块会保留，再次调用upload()从断点继续）
+         *
+         * @param error 错误信息
+         */
+        void onError(String error);
+    }
+
+    // ========== 成员变量 ==========
+
+    // 状态文件目录
+    private File stateDir;
+
+    // 上传用的OkHttpClient（从NetworkCore派生，写超时更长）
+    private final OkHttpClient client;
+
+    // 逐个处理上传任务（同一时间只有一个文件在上传，块是并行的）
+    private final ExecutorService uploadExecutor = Executors.newSingleThreadExecutor();
+
+    // 上传块的线程池
+    private final ExecutorService chunkExecutor = Executors.newFixedThreadPool(PARALLEL);
+
+    // 主线程Handler（用于回调）
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private UploadEngine() {
+        client = NetworkCore.getInstance().getClient().newBuilder()
+                // 一块1MB，网络差的时候10秒可能传不完
+                .writeTimeout(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 初始化（在Application或MainActivity中调用一次）
+     */
+    public void init(Context context) {
+        stateDir = new File(context.getFilesDir(), DIR_NAME);
+        if (!stateDir.exists() && !stateDir.mkdirs()) {
+            Log.e(TAG, "创建目录失败：" + stateDir);
+        }
+    }
+
+    // ========== 对外接口 ==========
+
+    /**
+     * 上传文件（之前上传过一部分的话从断点继续）
+     *
+     * @param file     要上传的文件
+     * @param purpose  用途，比如PURPOSE_DIET_PHOTO
+     * @param callback 结果回调（在主线程执行），可以为null
+     */
+    public void upload(final File file, final String purpose, final Callback callback) {
+        uploadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String fileId = uploadInternal(file, purpose, callback);
+                    notifyComplete(callback, fileId);
+                } catch (Exception e) {
+                    Log.e(TAG, "上传失败：" + file + "，" + e.getMessage());
+                    notifyError(callback, e.getMessage() != null ? e.getMessage() : e.toString());
+                }
+            }
+        });
+    }
+
+    /**
+     * 放弃一个文件的上传：删除它的断点状态（不再续传）
+     *
+     * 在上传线程里排队执行，不会和这个文件正在进行的上传冲突
+     * 服务器上没传完的任务不用管，过一段时间服务器会自己清理
+     *
+     * @param file       上传的文件
+     * @param purpose    上传时用的用途
+     * @param deleteFile 是否同时删除文件本身（比如上传前临时生成的文件）
+     */
+    public void discard(final File file, final String purpose, final boolean deleteFile) {
+        uploadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (stateDir != null) {
+                    File stateFile = new File(stateDir, stateName(file, purpose));
+                    if (stateFile.exists() && !stateFile.delete()) {
+                        Log.w(TAG, "删除状态文件失败：" + stateFile);
+                    }
+                }
+                if (deleteFile && file.exists() && !file.delete()) {
+                    Log.w(TAG, "删除文件失败：" + file);
+                }
+            }
+        });
+    }
+
+    // ========== 上传流程（在上传线程执行） ==========
+
+    private String uploadInternal(File file, String purpose, Callback callback) throws Exception {
+        if (stateDir == null) {
+            throw new IllegalStateException("UploadEngine未初始化");
+        }
+        if (!file.isFile()) {
+            throw new IOException("文件不存在：" + file);
+        }
+
+        File stateFile = new File(stateDir, stateName(file, purpose));
+        UploadState state = UploadState.load(stateFile, file);
+        if (state == null) {
+            state = UploadState.create(stateFile, file, startUpload(file, purpose));
+        } else {
+            Log.d(TAG, "从断点继续上传：" + file.getName() + "，已传" + state.countDone()
+                    + "/" + state.chunkCount + "块");
+        }
+
+        String fileId = state.fileId;
+        try {
+            if (fileId == null) {
+                try {
+                    uploadChunks(file, state, callback);
+                } catch (UploadExpiredException e) {
+                    // 服务器已经不认识这个uploadId了（过期或者服务器重启），从头开始
+                    Log.w(TAG, "服务器上的上传任务已失效，从头开始：" + file.getName());
+                    state.close();
+                    state = UploadState.create(stateFile, file, startUpload(file, purpose));
+                    uploadChunks(file, state, callback);
+                }
+                fileId = finishUpload(state);
+                // 先记下来，下面的通知发不出去时，下次只需要补发通知
+                state.saveFileId(fileId);
+            } else {
+                Log.d(TAG, "文件已经上传完成，补发完成通知：" + file.getName());
+            }
+        } finally {
+            // 失败时状态文件保留，下次从断点继续
+            state.close();
+        }
+
+        // WebSocket只发一条很小的完成通知
+        JsonObject notice = new JsonObject();
+        notice.addProperty("uploadId", state.uploadId);
+        notice.addProperty("fileId", fileId);
+        notice.addProperty("fileName", file.getName());
+        notice.addProperty("size", state.fileSize);
+        notice.addProperty("purpose", purpose);
+        if (!sendNotice(new WebSocketMessage(WebSocketMessage.TYPE_UPLOAD_COMPLETE, notice.toString()))) {
+            // 状态文件保留（已经带着fileId），连接恢复后再次调用upload()只补发通知
+            // 超时的那种情况通知之后可能还是发出去了，服务器按uploadId去重，补发一次没有关系
+            throw new IOException("上传完成通知发送失败（WebSocket未连接），连接恢复后重新上传即可");
+        }
+
+        // 通知已经交给连接，断点状态不再需要
+        if (!stateFile.delete()) {
+            Log.w(TAG, "删除状态文件失败：" + stateFile);
+        }
+
+        Log.d(TAG, "上传完成：" + file.getName() + " → " + fileId);
+        return fileId;
+    }
+
+    /**
+     * 发送上传完成通知，等到它真正交给连接（或者被丢弃）
+     *
+     * sendMessage返回true只表示放进了发送队列，连接断开时队列里的消息会被丢掉，
+     * 这时候如果已经删了状态文件，这次上传就再也补发不了通知
+     *
+     * @return true表示通知已经发出去
+     */
+    private boolean sendNotice(WebSocketMessage notice) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean sent = new AtomicBoolean(false);
+        boolean queued = WebSocketManager.getInstance().sendMessage(notice,
+                new WebSocketManager.SendCallback() {
+                    @Override
+                    public void onSent() {
+                        sent.set(true);
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onDropped() {
+                        done.countDown();
+                    }
+                });
+        if (!queued) {
+            return false;
+        }
+        if (!done.await(NOTICE_TIMEOUT, TimeUnit.SECONDS)) {
+            Log.w(TAG, "上传完成通知" + NOTICE_TIMEOUT + "秒内没有发出去");
+            return false;
+        }
+        return sent.get();
+    }
+
+    /**
+     * 并行上传还没传完的块
+     */
+    private void uploadChunks(final File file, final UploadState state, Callback callback) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < state.chunkCount; i++) {
+            if (state.isDone(i)) {
+                continue;
+            }
+            final int index = i;
+            futures.add(chunkExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    uploadChunk(file, state, index);
+                    state.markDone(index);
+                    notifyProgress(callback, state.countDone(), state.chunkCount);
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // 有一块彻底失败了，其他还没开始的块不用再传
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 上传一块（失败自动重试）
+     */
+    private void uploadChunk(File file, UploadState state, int index) throws Exception {
+        long offset = (long) index * state.chunkSize;
+        int length = (int) Math.min(state.chunkSize, state.fileSize - offset);
+        byte[] data = new byte[length];
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            input.seek(offset);
+            input.readFully(data);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        String checksum = String.format(Locale.US, "%08x", crc.getValue());
+
+        Request request = new Request.Builder()
+                .url(NetworkCore.getInstance().getHttpBaseUrl()
+                        + "/upload/" + state.uploadId + "/chunks/" + index)
+                .header("X-Chunk-Crc32", checksum)
+                .put(RequestBody.create(data, OCTET_STREAM))
+                .build();
+
+        long delay = RETRY_DELAY;
+        for (int attempt = 0; ; attempt++) {
+            String error;
+            try (Response response = client.newCall(request).execute()) {
+                if (response.isSuccessful()) {
+                    return;
+                }
+                if (response.code() == 404 || response.code() == 410) {
+                    throw new UploadExpiredException();
+                }
+                // 400是校验和不对（传输中出错），5xx是服务器暂时出错，都可以重试
+                error = "HTTP " + response.code();
+            } catch (IOException e) {
+                error = e.getMessage();
+            }
+
+            if (attempt >= MAX_RETRIES || Thread.currentThread().isInterrupted()) {
+                throw new IOException("第" + index + "块上传失败：" + error);
+            }
+            Log.w(TAG, "第" + index + "块上传失败，" + delay + "ms后重试：" + error);
+            Thread.sleep(delay);
+            delay *= 2;
+        }
+    }
+
+    /**
+     * 在服务器上创建上传任务
+     *
+     * @return uploadId
+     */
+    private String startUpload(File file, String purpose) throws IOException {
+        JsonObject body = new JsonObject();
+        body.addProperty("fileName", file.getName());
+        body.addProperty("size", file.length());
+        body.addProperty("chunkSize", CHUNK_SIZE);
+        body.addProperty("chunkCount", chunkCount(file.length()));
+        body.addProperty("purpose", purpose);
+        JsonObject result = postJson("/upload", body);
+        return result.get("uploadId").getAsString();
+    }
+
+    /**
+     * 通知服务器所有块都传完了
+     *
+     * @return fileId
+     */
+    private String finishUpload(UploadState state) throws IOException {
+        JsonObject body = new JsonObject();
+        body.addProperty("chunkCount", state.chunkCount);
+        JsonObject result = postJson("/upload/" + state.uploadId + "/complete", body);
+        return result.get("fileId").getAsString();
+    }
+
+    private JsonObject postJson(String path, JsonObject body) throws IOException {
+        Request request = new Request.Builder()
+                .url(NetworkCore.getInstance().getHttpBaseUrl() + path)
+                .post(RequestBody.create(body.toString(), JSON))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException(path + "请求失败：HTTP " + response.code());
+            }
+            return JsonParser.parseString(response.body().string()).getAsJsonObject();
+        }
+    }
+
+    // ========== 回调 ==========
+
+    private void notifyProgress(final Callback callback, final int done, final int total) {
+        if (callback == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onProgress(done, total);
+            }
+        });
+    }
+
+    private void notifyComplete(final Callback callback, final String fileId) {
+        if (callback == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onComplete(fileId);
+            }
+        });
+    }
+
+    private void notifyError(final Callback callback, final String error) {
+        if (callback == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onError(error);
+            }
+        });
+    }
+
+    // ========== 工具方法 ==========
+
+    private static int chunkCount(long fileSize) {
+        return (int) Math.max(1, (fileSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /**
+     * 状态文件名：文件路径 + 用途的SHA-1
+     */
+    private static String stateName(File file, String purpose) {
+        String key = file.getAbsolutePath() + "|" + purpose;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(hash.length * 2 + 6);
+            for (byte b : hash) {
+                builder.append(String.format(Locale.US, "%02x", b));
+            }
+            return builder.append(".state").toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Android一定支持SHA-1，不会走到这里
+            return Integer.toHexString(key.hashCode()) + ".state";
+        }
+    }
+
+    /**
+     * 服务器不认识这个uploadId了
+     */
+    private static final class UploadExpiredException extends IOException {
+        UploadExpiredException() {
+            super("服务器上的上传任务已失效");
+        }
+    }
+
+    // ========== 断点状态 ==========
+
+    /**
+     * 一个上传任务的断点状态（对应一个状态文件）
+     */
+    private static final class UploadState {
+        final String uploadId;
+        final long fileSize;
+        final int chunkSize;
+        final int chunkCount;
+
+        // 服务器上的文件ID，服务器还没有合并完成时为null
+        String fileId;
+
+        // 位图（内存里一份，文件里一份）
+        private final byte[] bitmap;
+        // 位图在状态文件里的位置
+        private final long bitmapOffset;
+        // 打开的状态文件
+        private final RandomAccessFile raf;
+
+        private UploadState(RandomAccessFile raf, String uploadId, long fileSize, int chunkSize,
+                            int chunkCount, byte[] bitmap, long bitmapOffset) {
+            this.raf = raf;
+            this.uploadId = uploadId;
+            this.fileSize = fileSize;
+            this.chunkSize = chunkSize;
+            this.chunkCount = chunkCount;
+            this.bitmap = bitmap;
+            this.bitmapOffset = bitmapOffset;
+        }
+
+        /**
+         * 新建状态文件（覆盖旧的）
+         */
+        static UploadState create(File stateFile, File file, String uploadId) throws IOException {
+            if (stateFile.exists() && !stateFile.delete()) {
+                throw new IOException("删除旧的状态文件失败：" + stateFile);
+            }
+            int count = chunkCount(file.length());
+            RandomAccessFile raf = new RandomAccessFile(stateFile, "rw");
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeLong(file.length());
+            raf.writeLong(file.lastModified());
+            raf.writeInt(CHUNK_SIZE);
+            raf.writeInt(count);
+            raf.writeUTF(uploadId);
+            long offset = raf.getFilePointer();
+            byte[] bitmap = new byte[(count + 7) / 8];
+            raf.write(bitmap);
+            return new UploadState(raf, uploadId, file.length(), CHUNK_SIZE, count, bitmap, offset);
+        }
+
+        /**
+         * 读取状态文件
+         *
+         * @return 状态，没有状态文件、格式不对、或者文件已经被修改过时返回null
+         */
+        static UploadState load(File stateFile, File file) {
+            if (!stateFile.exists()) {
+                return null;
+            }
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(stateFile, "rw");
+                if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                    throw new IOException("格式不对");
+                }
+                long size = raf.readLong();
+                long modified = raf.readLong();
+                int chunkSize = raf.readInt();
+                int count = raf.readInt();
+                String uploadId = raf.readUTF();
+                if (size != file.length() || modified != file.lastModified()
+                        || chunkSize != CHUNK_SIZE || count != chunkCount(size)) {
+                    throw new IOException("文件已经被修改过");
+                }
+                long offset = raf.getFilePointer();
+                byte[] bitmap = new byte[(count + 7) / 8];
+                raf.readFully(bitmap);
+                UploadState state = new UploadState(raf, uploadId, size, chunkSize, count, bitmap, offset);
+                if (raf.getFilePointer() < raf.length()) {
+                    state.fileId = raf.readUTF();
+                }
+                return state;
+            } catch (IOException e) {
+                Log.w(TAG, "断点状态不可用，从头开始：" + e.getMessage());
+                if (raf != null) {
+                    try {
+                        raf.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                return null;
+            }
+        }
+
+        synchronized boolean isDone(int index) {
+            return (bitmap[index >> 3] & (1 << (index & 7))) != 0;
+        }
+
+        /**
+         * 标记一块已传完，并立即写进状态文件
+         */
+        synchronized void markDone(int index) throws IOException {
+            int pos = index >> 3;
+            bitmap[pos] |= (byte) (1 << (index & 7));
+            raf.seek(bitmapOffset + pos);
+            raf.write(bitmap[pos]);
+        }
+
+        /**
+         * 记下服务器返回的文件ID，并立即写进状态文件
+         */
+        synchronized void saveFileId(String id) throws IOException {
+            raf.seek(bitmapOffset + bitmap.length);
+            raf.writeUTF(id);
+            fileId = id;
+        }
+
+        synchronized int countDone() {
+            int count = 0;
+            for (byte b : bitmap) {
+                count += Integer.bitCount(b & 0xFF);
+            }
+            return count;
+        }
+
+        synchronized void close() {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                Log.w(TAG, "关闭状态文件失败：" + e.getMessage());
+            }
+        }
+    }
+}
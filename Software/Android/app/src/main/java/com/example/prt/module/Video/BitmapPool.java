@@ -0,0 +1,295 @@
+package com.example.prt.module.Video;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bitmap复用池（单例模式）
+ *
+ * 实时视频每秒要解码二三十张JPEG，如果每次都new一个新的Bitmap，
+ * 一张720p的画面就是3.6MB，内存分配和垃圾回收会造成明显的卡顿
+ *
+ * 复用池的做法：
+ * 1. 不再显示的Bitmap不回收，按"宽 × 高 × 颜色格式"分组放进池子
+ * 2. 解码新图片时先从池子里找一个同样规格的Bitmap，通过BitmapFactory.Options.inBitmap
+ *    直接把新画面解码到这块内存里，不用重新分配
+ * 3. 池子有总大小上限，超过时淘汰最久没用过的那一组里的Bitmap
+ *
+ * 实时视频和截图缩略图共用同一个池子
+ *
+ * 注意：放回池子的Bitmap随时可能被新的画面覆盖，放回之后不能再显示或使用它
+ *
+ * 使用示例：
+ * Bitmap bitmap = BitmapPool.getInstance().decode(jpeg, 0, jpeg.length);
+ * // 不再显示时
+ * BitmapPool.getInstance().put(bitmap);
+ */
+public class BitmapPool {
+
+    // 日志标签
+    private static final String TAG = "BitmapPool";
+
+    // 默认的池子大小上限（字节）
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    // ========== 单例相关 ==========
+
+    private static volatile BitmapPool instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static BitmapPool getInstance() {
+        if (instance == null) {
+            synchronized (BitmapPool.class) {
+                if (instance == null) {
+                    instance = new BitmapPool();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 成员变量 ==========
+
+    // 按规格分组的空闲Bitmap（accessOrder=true，最久没用过的组排在最前面）
+    private final LinkedHashMap<Long, ArrayDeque<Bitmap>> groups =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    // 池子里所有Bitmap的总大小（字节）
+    private long currentBytes = 0;
+
+    // 池子大小上限（字节）
+    private long maxBytes;
+
+    // 统计：命中次数、未命中次数、因为超出上限被淘汰的个数
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    private BitmapPool() {
+        // 不超过应用可用内存的1/8
+        maxBytes = Math.min(DEFAULT_MAX_BYTES, Runtime.getRuntime().maxMemory() / 8);
+        Log.d(TAG, "BitmapPool初始化完成，上限：" + maxBytes / 1024 + "KB");
+    }
+
+    // ========== 取出和放回 ==========
+
+    /**
+     * 取出一个指定规格的空闲Bitmap
+     *
+     * @param width  宽度
+     * @param height 高度
+     * @param config 颜色格式
+     * @return 空闲的Bitmap，池子里没有时返回null
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> group = groups.get(key(width, height, config));
+        Bitmap bitmap = group != null ? group.pollLast() : null;
+        if (bitmap == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        currentBytes -= bitmap.getAllocationByteCount();
+        if (group.isEmpty()) {
+            groups.remove(key(width, height, config));
+        }
+        return bitmap;
+    }
+
+    /**
+     * 把不再使用的Bitmap放回池子
+     *
+     * 放回之后调用方不能再使用这个Bitmap
+     *
+     * @param bitmap 不再使用的Bitmap，传null会被忽略
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        // 不可修改的Bitmap不能作为inBitmap使用
+        if (!bitmap.isMutable() || bitmap.getConfig() == null) {
+            bitmap.recycle();
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> group = groups.get(key);
+        if (group == null) {
+            group = new ArrayDeque<>();
+            groups.put(key, group);
+        }
+        group.addLast(bitmap);
+        currentBytes += bytes;
+
+        trimToSize(maxBytes);
+    }
+
+    // ========== 解码 ==========
+
+    /**
+     * 解码一张图片，尽量复用池子里的Bitmap
+     *
+     * @param data   图片数据（JPEG等）
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 解码后的Bitmap（可修改），数据格式错误时返回null
+     */
+    public Bitmap decode(byte[] data, int offset, int length) {
+        return decode(data, offset, length, 1);
+    }
+
+    /**
+     * 解码截图缩略图：按目标尺寸缩小采样，尽量复用池子里的Bitmap
+     *
+     * 解码出来的尺寸不小于目标尺寸（采样倍数取2的幂）
+     *
+     * @param data      图片数据（JPEG等）
+     * @param reqWidth  目标宽度
+     * @param reqHeight 目标高度
+     * @return 缩略图，数据格式错误时返回null
+     */
+    public Bitmap decodeThumbnail(byte[] data, int reqWidth, int reqHeight) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (bounds.outWidth / (sampleSize * 2) >= reqWidth
+                && bounds.outHeight / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return decode(data, 0, data.length, sampleSize);
+    }
+
+    /**
+     * 解码图片
+     *
+     * 先只读取图片头部拿到尺寸（很快），再到池子里找同样规格的Bitmap来复用
+     */
+    private Bitmap decode(byte[] data, int offset, int length, int sampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inSampleSize = sampleSize;
+        BitmapFactory.decodeByteArray(data, offset, length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap reusable = get(options.outWidth, options.outHeight, Bitmap.Config.ARGB_8888);
+        options.inBitmap = reusable;
+
+        try {
+            return BitmapFactory.decodeByteArray(data, offset, length, options);
+        } catch (IllegalArgumentException e) {
+            // 复用失败（比如采样后的实际尺寸和估计的不一样），放回池子，正常解码
+            Log.w(TAG, "Bitmap复用失败：" + e.getMessage());
+            put(reusable);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, offset, length, options);
+        }
+    }
+
+    // ========== 统计和管理 ==========
+
+    /**
+     * 命中率（0~1），还没有取过时返回0
+     */
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return total > 0 ? hitCount / (double) total : 0;
+    }
+
+    /**
+     * 命中次数
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 未命中次数
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 因为超出上限被淘汰的Bitmap个数
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 池子当前大小（字节）
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * 设置池子大小上限
+     *
+     * @param maxBytes 上限（字节）
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * 清空池子（比如收到系统的内存不足通知时调用）
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+        Log.d(TAG, "BitmapPool已清空");
+    }
+
+    /**
+     * 淘汰Bitmap，直到总大小不超过上限
+     *
+     * 从最久没用过的那一组开始淘汰
+     */
+    private void trimToSize(long limit) {
+        Iterator<Map.Entry<Long, ArrayDeque<Bitmap>>> iterator = groups.entrySet().iterator();
+        while (currentBytes > limit && iterator.hasNext()) {
+            ArrayDeque<Bitmap> group = iterator.next().getValue();
+            while (currentBytes > limit && !group.isEmpty()) {
+                Bitmap bitmap = group.pollFirst();
+                currentBytes -= bitmap.getAllocationByteCount();
+                bitmap.recycle();
+                evictionCount++;
+            }
+            if (group.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 规格对应的键：宽度占高32位，高度和颜色格式占低32位
+     */
+    private static long key(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+}
@@ -0,0 +1,456 @@
+package com.example.prt.module.Video;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 视频片段录制器（单例模式）
+ *
+ * 一直在后台保留最近一段时间收到的视频帧，用户想保存"刚才那一段"时随时可以导出
+ *
+ * 环形缓冲区：
+ * - 收到的JPEG数据原样复制进一块堆外内存（DirectByteBuffer），不重新编码，不占用Java堆
+ * - 另外用几个基本类型数组记录每一帧的时间戳、位置和长度
+ * - 缓冲区写满后从头开始覆盖，最旧的帧自动被淘汰
+ *
+ * 导出片段（在后台线程执行）：
+ * 不复制帧数据：加锁记下要保存哪些帧（时间戳、位置、长度），然后在写文件线程
+ * 直接把环形缓冲区里的那几段交给FileChannel写出去，录制不用等写文件
+ * 写的时候新帧可能正好覆盖了还没写完的旧帧，所以每写完一个分段都检查一下
+ * 这个分段最旧的帧还在不在缓冲区里（帧从最旧的开始淘汰，它在说明整个分段都没被覆盖）
+ *
+ * clips/clip_20250101_120000/
+ *   seg_000.mjpeg  帧数据，JPEG首尾相接（MJPEG），每个文件最大8MB，写满换下一个
+ *   seg_001.mjpeg
+ *   index.bin      索引，每帧一条记录，用于按时间定位
+ *
+ * index.bin格式（小端序）：
+ * [文件头 32字节]
+ *   int  魔数 "PCLP"
+ *   int  版本号
+ *   int  帧数
+ *   int  分段文件数
+ *   16字节 保留
+ * [记录1 20字节][记录2 20字节]...
+ *   long 帧时间戳（毫秒）
+ *   int  分段文件序号
+ *   int  在分段文件里的位置
+ *   int  长度
+ *
+ * 使用示例：
+ * ClipRecorder.getInstance().init(getApplicationContext());
+ * // 用户点击"保存最近30秒"
+ * ClipRecorder.getInstance().saveClip(30, callback);
+ */
+public class ClipRecorder {
+
+    // 日志标签
+    private static final String TAG = "ClipRecorder";
+
+    // 片段保存目录名
+    private static final String DIR_NAME = "clips";
+
+    // 环形缓冲区大小（字节），720p的JPEG每帧约50KB，可以保存约十几秒到半分钟
+    private static final int BUFFER_BYTES = 16 * 1024 * 1024;
+
+    // 最多记录多少帧
+    private static final int MAX_FRAMES = 1024;
+
+    // 每个分段文件的最大大小（字节）
+    private static final int SEGMENT_BYTES = 8 * 1024 * 1024;
+
+    // 索引文件格式
+    private static final int INDEX_MAGIC = 0x50434C50;
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER_SIZE = 32;
+    private static final int INDEX_RECORD_SIZE = 20;
+
+    // ========== 单例相关 ==========
+
+    private static volatile ClipRecorder instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static ClipRecorder getInstance() {
+        if (instance == null) {
+            synchronized (ClipRecorder.class) {
+                if (instance == null) {
+                    instance = new ClipRecorder();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 回调接口 ==========
+
+    /**
+     * 导出结果回调（在主线程调用）
+     */
+    public interface SaveCallback {
+        /**
+         * 导出成功
+         *
+         * @param clipDir    片段目录
+         * @param frameCount 帧数
+         */
+        void onSaved(File clipDir, int frameCount);
+
+        /**
+         * 导出失败
+         *
+         * @param error 错误信息
+         */
+        void onError(String error);
+    }
+
+    // ========== 成员变量 ==========
+
+    // 帧数据（堆外内存）
+    private final ByteBuffer ring = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    // 每一帧的时间戳、在缓冲区里的位置和长度（环形数组）
+    private final long[] framePts = new long[MAX_FRAMES];
+    private final int[] frameOffsets = new int[MAX_FRAMES];
+    private final int[] frameLengths = new int[MAX_FRAMES];
+    private int head = 0;
+    private int count = 0;
+
+    // head那一帧的编号（从开始录制算起的第几帧，淘汰一帧加一），用来判断某一帧有没有被覆盖
+    private long headNumber = 0;
+
+    // 下一帧写入的位置
+    private int writePos = 0;
+
+    // 片段保存目录
+    private File rootDir;
+
+    // 后台写文件线程
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+
+    // 主线程Handler
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 目录名格式
+    private final SimpleDateFormat nameFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+
+    private ClipRecorder() {
+        Log.d(TAG, "ClipRecorder初始化完成，缓冲区：" + BUFFER_BYTES / 1024 + "KB");
+    }
+
+    // ========== 初始化 ==========
+
+    /**
+     * 初始化片段保存目录
+     *
+     * 必须在saveClip()之前调用一次；录制本身不需要初始化
+     *
+     * @param context 上下文（建议传ApplicationContext）
+     */
+    public synchronized void init(Context context) {
+        if (rootDir != null) {
+            return;
+        }
+        rootDir = new File(context.getFilesDir(), DIR_NAME);
+        if (!rootDir.exists() && !rootDir.mkdirs()) {
+            Log.e(TAG, "创建片段目录失败：" + rootDir);
+        }
+    }
+
+    // ========== 录制 ==========
+
+    /**
+     * 记录一帧（由VideoStreamReceiver在网络线程调用）
+     *
+     * 只做一次内存复制，不解码也不写文件
+     *
+     * @param pts  帧时间戳（毫秒）
+     * @param jpeg JPEG数据
+     */
+    public synchronized void record(long pts, byte[] jpeg) {
+        int length = jpeg.length;
+        // 太大的帧放不下，直接跳过
+        if (length == 0 || length > BUFFER_BYTES / 4) {
+            return;
+        }
+
+        // 帧数据必须连续存放，末尾剩下的空间不够就回到开头
+        if (writePos + length > BUFFER_BYTES) {
+            // 末尾这一段里的帧是最旧的，先淘汰掉
+            while (count > 0 && frameOffsets[head] >= writePos) {
+                dropOldest();
+            }
+            writePos = 0;
+        }
+
+        // 淘汰会被新数据覆盖的旧帧
+        while (count > 0 && overlaps(head, writePos, length)) {
+            dropOldest();
+        }
+        if (count == MAX_FRAMES) {
+            dropOldest();
+        }
+
+        ring.position(writePos);
+        ring.put(jpeg, 0, length);
+
+        int index = (head + count) % MAX_FRAMES;
+        framePts[index] = pts;
+        frameOffsets[index] = writePos;
+        frameLengths[index] = length;
+        count++;
+        writePos += length;
+    }
+
+    /**
+     * 清空缓冲区
+     */
+    public synchronized void clear() {
+        // 清空也算淘汰，正在导出的帧会被判定为已覆盖
+        headNumber += count;
+        head = 0;
+        count = 0;
+        writePos = 0;
+    }
+
+    /**
+     * 缓冲区里保存的时长（毫秒）
+     */
+    public synchronized long getBufferedMillis() {
+        if (count < 2) {
+            return 0;
+        }
+        return framePts[(head + count - 1) % MAX_FRAMES] - framePts[head];
+    }
+
+    // ========== 导出 ==========
+
+    /**
+     * 把最近一段时间的视频保存成文件
+     *
+     * 加锁时只记下要保存的帧（几个小数组），帧数据在后台线程直接从环形缓冲区写出去
+     * 录制和界面都不用等；缓冲区在写完之前被覆盖时导出失败
+     *
+     * @param seconds  保存最近多少秒
+     * @param callback 结果回调（在主线程调用），可以为null
+     */
+    public void saveClip(int seconds, final SaveCallback callback) {
+        final File root;
+        final String name;
+        final long firstNumber;
+        final long[] pts;
+        final int[] offsets;
+        final int[] lengths;
+        final ByteBuffer source;
+
+        synchronized (this) {
+            if (rootDir == null) {
+                deliverError(callback, "ClipRecorder未初始化");
+                return;
+            }
+            if (count == 0) {
+                deliverError(callback, "没有可以保存的视频");
+                return;
+            }
+
+            // 找出时间范围内的第一帧
+            long newest = framePts[(head + count - 1) % MAX_FRAMES];
+            long from = newest - seconds * 1000L;
+            int first = 0;
+            while (first < count - 1 && framePts[(head + first) % MAX_FRAMES] < from) {
+                first++;
+            }
+
+            // 只记下帧在环形缓冲区里的位置，不复制数据
+            int frames = count - first;
+            pts = new long[frames];
+            offsets = new int[frames];
+            lengths = new int[frames];
+            for (int i = 0; i < frames; i++) {
+                int index = (head + first + i) % MAX_FRAMES;
+                pts[i] = framePts[index];
+                offsets[i] = frameOffsets[index];
+                lengths[i] = frameLengths[index];
+            }
+            firstNumber = headNumber + first;
+            source = ring.duplicate();
+
+            root = rootDir;
+            name = "clip_" + nameFormat.format(new Date());
+        }
+
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File dir = new File(root, name);
+                // 同一秒内保存了多次
+                for (int n = 1; dir.exists(); n++) {
+                    dir = new File(root, name + "_" + n);
+                }
+                try {
+                    writeClip(dir, source, firstNumber, pts, offsets, lengths);
+                    Log.d(TAG, "视频片段已保存：" + dir + "，共" + pts.length + "帧");
+                    deliverSaved(callback, dir, pts.length);
+                } catch (IOException e) {
+                    Log.e(TAG, "保存视频片段失败：" + e.getMessage());
+                    deleteDir(dir);
+                    deliverError(callback, "保存失败：" + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * 写片段文件（在后台线程执行）
+     *
+     * @param source      环形缓冲区（duplicate，位置和上限可以随便改）
+     * @param firstNumber 第一帧的编号
+     * @param offsets     每一帧在环形缓冲区里的位置
+     */
+    private void writeClip(File dir, ByteBuffer source, long firstNumber, long[] pts,
+                           int[] offsets, int[] lengths) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("创建目录失败：" + dir);
+        }
+
+        int frames = pts.length;
+        ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER_SIZE + frames * INDEX_RECORD_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        index.position(INDEX_HEADER_SIZE);
+
+        // 按分段写：每个分段的帧一次gather write写完
+        int segment = 0;
+        int i = 0;
+        while (i < frames) {
+            int start = i;
+            int segmentBytes = 0;
+            while (i < frames && (segmentBytes == 0 || segmentBytes + lengths[i] <= SEGMENT_BYTES)) {
+                index.putLong(pts[i]);
+                index.putInt(segment);
+                index.putInt(segmentBytes);
+                index.putInt(lengths[i]);
+                segmentBytes += lengths[i];
+                i++;
+            }
+
+            ByteBuffer[] slices = new ByteBuffer[i - start];
+            for (int k = 0; k < slices.length; k++) {
+                ByteBuffer slice = source.duplicate();
+                slice.limit(offsets[start + k] + lengths[start + k]);
+                slice.position(offsets[start + k]);
+                slices[k] = slice;
+            }
+            File file = new File(dir, String.format(Locale.US, "seg_%03d.mjpeg", segment));
+            writeFully(file, slices);
+
+            // 写完再检查：这个分段最旧的帧还在，说明写的过程中这些帧都没有被覆盖
+            if (!isAlive(firstNumber + start)) {
+                throw new IOException("写文件太慢，视频在保存完之前被新的画面覆盖了");
+            }
+            segment++;
+        }
+
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, INDEX_VERSION);
+        index.putInt(8, frames);
+        index.putInt(12, segment);
+        index.flip();
+        // 索引最后写，有索引就说明所有分段都已经写完
+        writeFully(new File(dir, "index.bin"), index);
+    }
+
+    /**
+     * 把缓冲区的内容完整写入文件
+     */
+    private static void writeFully(File file, ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        try (FileOutputStream out = new FileOutputStream(file);
+             FileChannel channel = out.getChannel()) {
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+        }
+    }
+
+    // ========== 工具方法 ==========
+
+    /**
+     * 淘汰最旧的一帧
+     */
+    private void dropOldest() {
+        head = (head + 1) % MAX_FRAMES;
+        headNumber++;
+        count--;
+    }
+
+    /**
+     * 某一帧（按编号）是否还在缓冲区里，没有被淘汰
+     */
+    private synchronized boolean isAlive(long frameNumber) {
+        return frameNumber >= headNumber;
+    }
+
+    /**
+     * 某一帧是否和[start, start + length)有重叠
+     */
+    private boolean overlaps(int index, int start, int length) {
+        int offset = frameOffsets[index];
+        return offset < start + length && offset + frameLengths[index] > start;
+    }
+
+    /**
+     * 删除保存失败的片段目录
+     */
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private void deliverSaved(final SaveCallback callback, final File dir, final int frames) {
+        if (callback == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSaved(dir, frames);
+            }
+        });
+    }
+
+    private void deliverError(final SaveCallback callback, final String error) {
+        if (callback == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onError(error);
+            }
+        });
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.prt.module.Video;
+
+/**
+ * 视频帧（编码后的数据）
+ *
+ * video_frame消息的格式：
+ * - data：Base64编码的JPEG图片
+ * - timestamp：这一帧的采集时间（毫秒），即帧时间戳
+ *
+ * 这里保存的是还没有解码的JPEG数据，只有真正要显示的帧才会被解码
+ */
+final class VideoFrame {
+
+    // 帧时间戳（采集时间，毫秒）
+    final long pts;
+
+    // 到达手机的时间（SystemClock.elapsedRealtime()，毫秒）
+    final long arrivalTime;
+
+    // JPEG数据
+    final byte[] jpeg;
+
+    VideoFrame(long pts, long arrivalTime, byte[] jpeg) {
+        this.pts = pts;
+        this.arrivalTime = arrivalTime;
+        this.jpeg = jpeg;
+    }
+}
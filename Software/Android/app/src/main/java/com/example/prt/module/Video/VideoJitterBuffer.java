@@ -0,0 +1,189 @@
+package com.example.prt.module.Video;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 视频抖动缓冲区
+ *
+ * 网络传输的视频帧不会均匀到达：有时候一卡好几百毫秒，然后一下子涌进来一堆
+ * 如果来一帧就显示一帧，画面会忽快忽慢；卡顿之后还会把几秒前的旧画面重新快进播一遍
+ *
+ * 抖动缓冲区的做法：
+ * 1. 按帧时间戳排序保存收到的帧
+ * 2. 给每一帧算一个"播放时间" = 帧时间戳 + 时钟偏移 + 目标延迟
+ * 3. 目标延迟根据网络抖动自动调整：网络稳定时很小，抖动大时适当加大
+ * 4. 到了播放时间才交出去；同时有好几帧到期时，只交出最新的一帧，旧的直接丢掉
+ * 5. 已经过了截止时间（比已显示的帧还旧）的帧直接丢掉
+ *
+ * 直播看宠物，低延迟比每一帧都完整更重要
+ *
+ * 抖动的计算方法参考RTP（RFC 3550）：
+ * 传输时间 = 到达时间 - 帧时间戳（两边时钟不同步也没关系，只看变化量）
+ * 抖动 += (|本帧传输时间 - 上一帧传输时间| - 抖动) / 16
+ *
+ * 注意：这个类不是线程安全的，由VideoStreamReceiver负责加锁
+ */
+final class VideoJitterBuffer {
+
+    // 目标延迟的上下限（毫秒）
+    private static final long MIN_DELAY = 20;
+    private static final long MAX_DELAY = 300;
+
+    // 最多缓存多少帧，超过时丢掉最旧的
+    private static final int CAPACITY = 30;
+
+    // 按帧时间戳排序的帧
+    private final TreeMap<Long, VideoFrame> frames = new TreeMap<>();
+
+    // 抖动估计值（毫秒）
+    private double jitter = 0;
+
+    // 上一帧的传输时间
+    private long lastTransit;
+
+    // 基准传输时间：观察到的最小传输时间（相当于两边时钟的偏移 + 最小网络延迟）
+    private long baseTransit;
+
+    // 是否已经收到过帧
+    private boolean started = false;
+
+    // 最后交出去的帧的时间戳
+    private long lastPlayedPts = Long.MIN_VALUE;
+
+    // 统计：因为迟到、被更新的帧取代、缓冲区满而丢掉的帧数
+    private long lateDrops = 0;
+    private long supersededDrops = 0;
+    private long overflowDrops = 0;
+
+    // ========== 放入 ==========
+
+    /**
+     * 放入一帧
+     *
+     * @param frame 收到的帧
+     */
+    void offer(VideoFrame frame) {
+        // 比已经显示的帧还旧，放进来也没用了
+        if (frame.pts <= lastPlayedPts) {
+            lateDrops++;
+            return;
+        }
+
+        long transit = frame.arrivalTime - frame.pts;
+        if (!started) {
+            baseTransit = transit;
+            lastTransit = transit;
+            started = true;
+        } else {
+            long d = Math.abs(transit - lastTransit);
+            jitter += (d - jitter) / 16.0;
+            lastTransit = transit;
+
+            if (transit < baseTransit) {
+                // 发现更快的帧，基准立即下调
+                baseTransit = transit;
+            } else {
+                // 缓慢上调，用来跟踪两边时钟的漂移
+                baseTransit += (transit - baseTransit) / 256;
+            }
+        }
+
+        frames.put(frame.pts, frame);
+        while (frames.size() > CAPACITY) {
+            frames.pollFirstEntry();
+            overflowDrops++;
+        }
+    }
+
+    // ========== 取出 ==========
+
+    /**
+     * 取出当前应该显示的帧
+     *
+     * 所有已经到播放时间的帧里，只返回最新的一帧，更旧的直接丢掉
+     *
+     * @param now        当前时间（SystemClock.elapsedRealtime()，毫秒）
+     * @param superseded 被更新的帧取代、主动丢掉的帧放到这里（这些帧不算丢帧）
+     * @return 应该显示的帧，还没有到期的帧时返回null
+     */
+    VideoFrame poll(long now, List<VideoFrame> superseded) {
+        VideoFrame result = null;
+        while (!frames.isEmpty()) {
+            VideoFrame first = frames.firstEntry().getValue();
+            if (playoutTime(first) > now) {
+                break;
+            }
+            frames.pollFirstEntry();
+            if (result != null) {
+                supersededDrops++;
+                superseded.add(result);
+            }
+            result = first;
+        }
+        if (result != null) {
+            lastPlayedPts = result.pts;
+        }
+        return result;
+    }
+
+    /**
+     * 距离下一帧到播放时间还有多久
+     *
+     * @param now 当前时间（毫秒）
+     * @return 等待时间（毫秒），缓冲区为空时返回-1
+     */
+    long nextDelay(long now) {
+        if (frames.isEmpty()) {
+            return -1;
+        }
+        return Math.max(0, playoutTime(frames.firstEntry().getValue()) - now);
+    }
+
+    /**
+     * 计算一帧的播放时间
+     */
+    private long playoutTime(VideoFrame frame) {
+        return frame.pts + baseTransit + getTargetDelay();
+    }
+
+    /**
+     * 当前的目标延迟（毫秒）：抖动的3倍，并限制在上下限之间
+     */
+    long getTargetDelay() {
+        return Math.max(MIN_DELAY, Math.min(MAX_DELAY, (long) (jitter * 3)));
+    }
+
+    /**
+     * 当前的抖动估计值（毫秒）
+     */
+    double getJitter() {
+        return jitter;
+    }
+
+    // ========== 统计和重置 ==========
+
+    /**
+     * 累计丢掉的帧数
+     */
+    long getDroppedCount() {
+        return lateDrops + supersededDrops + overflowDrops;
+    }
+
+    /**
+     * 缓冲区里的帧数
+     */
+    int size() {
+        return frames.size();
+    }
+
+    /**
+     * 清空缓冲区（开始/停止视频时调用）
+     */
+    void reset() {
+        frames.clear();
+        jitter = 0;
+        started = false;
+        lastPlayedPts = Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.prt.module.Video;
+
+import java.util.Arrays;
+
+/**
+ * 视频接收质量监测
+ *
+ * 统计最近一段时间（滑动窗口）视频帧的接收情况，并给出推荐的视频参数
+ * VideoStreamReceiver会定期把推荐结果通过video_control消息发给服务器/机器人
+ *
+ * 统计的指标：
+ * - 有效吞吐量（goodput）：窗口内成功解码显示的数据量，单位kbps
+ * - 到达抖动：来自抖动缓冲区的估计值
+ * - 丢帧率：窗口内真正丢掉的帧 / 发送端发出的帧
+ *   真正丢掉的帧 = 网络上没有收到的帧 + 收到了但是迟到、缓冲区溢出、解码失败的帧
+ *   抖动缓冲区因为有更新的帧到期而主动跳过的帧不算（那是为了追上实时画面，不是丢失）
+ * - 发送帧率：发送端实际的采集帧率
+ *   video_frame的timestamp是发送端的采集时间，相邻两帧采集时间间隔的中位数就是发送端的帧间隔
+ *   用中位数是因为丢帧会让个别间隔变成两倍、三倍，丢帧不到一半时不影响结果
+ * - 解码耗时：窗口内每帧的平均解码时间
+ *
+ * 推荐策略（分档位）：
+ * 档位从高到低依次是 720p30 → 540p25 → 360p20 → 270p15 → 180p10
+ * - 情况变差（丢帧多、抖动大、解码跟不上、收到的帧率不到发送帧率的一半）：立即降一档
+ *   比较的是发送端实际的帧率，不是推荐的帧率：发送端还没有切换到推荐的档位时，
+ *   收到的帧少是因为发出的就少，不是带宽不够
+ * - 连续好几个周期都很好：才升一档，避免在两个档位之间来回跳
+ *
+ * 弱网下宁可画质差一点，也要保证画面流畅，不要卡住不动
+ *
+ * 注意：这个类的方法都是同步的，可以在网络线程和解码线程同时调用
+ */
+final class VideoQualityMonitor {
+
+    // 滑动窗口长度（毫秒）
+    static final long WINDOW_MILLIS = 3000;
+
+    // 刚到达不久的帧可能还在抖动缓冲区里排队，不计入丢帧统计（毫秒）
+    private static final long PENDING_MILLIS = 500;
+
+    // 窗口内最多记录多少帧
+    private static final int MAX_SAMPLES = 256;
+
+    // 档位表：宽、高、帧率、JPEG质量
+    private static final int[][] LADDER = {
+            {1280, 720, 30, 80},
+            {960, 540, 25, 70},
+            {640, 360, 20, 60},
+            {480, 270, 15, 50},
+            {320, 180, 10, 40},
+    };
+
+    // 降档条件
+    private static final double MAX_DROP_RATE = 0.10;
+    private static final double MAX_JITTER_MS = 150;
+
+    // 连续多少个周期情况良好才升档
+    private static final int UPGRADE_PERIODS = 3;
+
+    // decodeMillis的特殊值
+    private static final double NOT_DECODED = -1;
+    private static final double SUPERSEDED = -2;
+
+    // ========== 滑动窗口（环形数组） ==========
+
+    // 每帧的到达时间
+    private final long[] arrivalTimes = new long[MAX_SAMPLES];
+    // 每帧的字节数
+    private final int[] frameBytes = new int[MAX_SAMPLES];
+    // 每帧的解码耗时（毫秒），NOT_DECODED表示没有解码，SUPERSEDED表示被更新的帧取代
+    private final double[] decodeMillis = new double[MAX_SAMPLES];
+    // 帧时间戳，用于把解码结果对应回这一帧
+    private final long[] ptsList = new long[MAX_SAMPLES];
+    private int head = 0;
+    private int size = 0;
+
+    // 当前档位（下标）
+    private int level = 1;
+
+    // 连续良好的周期数
+    private int goodPeriods = 0;
+
+    // ========== 记录 ==========
+
+    /**
+     * 记录收到一帧
+     */
+    synchronized void onFrameReceived(long pts, int bytes, long arrivalTime) {
+        int index = (head + size) % MAX_SAMPLES;
+        if (size == MAX_SAMPLES) {
+            head = (head + 1) % MAX_SAMPLES;
+        } else {
+            size++;
+        }
+        arrivalTimes[index] = arrivalTime;
+        frameBytes[index] = bytes;
+        decodeMillis[index] = NOT_DECODED;
+        ptsList[index] = pts;
+    }
+
+    /**
+     * 记录一帧解码完成
+     */
+    synchronized void onFrameDecoded(long pts, double millis) {
+        mark(pts, millis);
+    }
+
+    /**
+     * 记录一帧被抖动缓冲区主动跳过（有更新的帧同时到期）
+     */
+    synchronized void onFrameSuperseded(long pts) {
+        mark(pts, SUPERSEDED);
+    }
+
+    private void mark(long pts, double value) {
+        // 从最新的往回找，刚处理的帧一般就在末尾附近
+        for (int i = size - 1; i >= 0; i--) {
+            int index = (head + i) % MAX_SAMPLES;
+            if (ptsList[index] == pts) {
+                decodeMillis[index] = value;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 清空统计（开始/停止视频时调用）
+     */
+    synchronized void reset() {
+        head = 0;
+        size = 0;
+        goodPeriods = 0;
+    }
+
+    // ========== 评估 ==========
+
+    /**
+     * 统计窗口内的指标，并给出推荐档位
+     *
+     * @param now    当前时间（SystemClock.elapsedRealtime()，毫秒）
+     * @param jitter 抖动缓冲区估计的抖动（毫秒）
+     * @return 评估报告
+     */
+    synchronized Report evaluate(long now, double jitter) {
+        // 先把窗口之外的旧数据移出去
+        while (size > 0 && now - arrivalTimes[head] > WINDOW_MILLIS) {
+            head = (head + 1) % MAX_SAMPLES;
+            size--;
+        }
+
+        int received = size;
+        int settled = 0;
+        int settledLost = 0;
+        int decoded = 0;
+        long goodBytes = 0;
+        double decodeTotal = 0;
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % MAX_SAMPLES;
+            if (now - arrivalTimes[index] >= PENDING_MILLIS) {
+                settled++;
+                if (decodeMillis[index] == NOT_DECODED) {
+                    // 收到了但是没有显示，也不是被更新的帧取代的：迟到、溢出或者解码失败
+                    settledLost++;
+                }
+            }
+            if (decodeMillis[index] >= 0) {
+                decoded++;
+                goodBytes += frameBytes[index];
+                decodeTotal += decodeMillis[index];
+            }
+        }
+
+        // 发送端的帧间隔，以及网络上没有收到的帧
+        double senderInterval = senderInterval();
+        int missing = 0;
+        if (senderInterval > 0) {
+            long minPts = Long.MAX_VALUE;
+            long maxPts = Long.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                long pts = ptsList[(head + i) % MAX_SAMPLES];
+                minPts = Math.min(minPts, pts);
+                maxPts = Math.max(maxPts, pts);
+            }
+            int sent = (int) Math.round((maxPts - minPts) / senderInterval) + 1;
+            missing = Math.max(0, sent - received);
+        }
+
+        Report report = new Report();
+        report.receivedFps = received * 1000.0 / WINDOW_MILLIS;
+        report.senderFps = senderInterval > 0 ? 1000.0 / senderInterval : 0;
+        report.goodputKbps = goodBytes * 8.0 / WINDOW_MILLIS;
+        report.jitterMs = jitter;
+        report.dropRate = settled + missing > 0 ? (settledLost + missing) / (double) (settled + missing) : 0;
+        report.decodeMs = decoded > 0 ? decodeTotal / decoded : 0;
+
+        // 判断当前档位是否合适
+        int[] current = LADDER[level];
+        double frameInterval = 1000.0 / current[2];
+        boolean tooBad = report.dropRate > MAX_DROP_RATE
+                || report.jitterMs > MAX_JITTER_MS
+                || report.decodeMs > frameInterval * 0.8
+                // 完全收不到帧，或者收到的帧率不到发送帧率的一半，说明带宽不够
+                || received == 0
+                || report.receivedFps < report.senderFps * 0.5;
+
+        if (tooBad) {
+            goodPeriods = 0;
+            if (level < LADDER.length - 1) {
+                level++;
+            }
+        } else {
+            goodPeriods++;
+            if (goodPeriods >= UPGRADE_PERIODS && level > 0) {
+                level--;
+                goodPeriods = 0;
+            }
+        }
+
+        int[] recommended = LADDER[level];
+        report.width = recommended[0];
+        report.height = recommended[1];
+        report.fps = recommended[2];
+        report.quality = recommended[3];
+        return report;
+    }
+
+    /**
+     * 发送端的帧间隔（毫秒）：窗口内相邻两帧采集时间间隔的中位数，帧太少时返回0
+     */
+    private double senderInterval() {
+        long[] intervals = new long[size];
+        int count = 0;
+        for (int i = 1; i < size; i++) {
+            long interval = ptsList[(head + i) % MAX_SAMPLES] - ptsList[(head + i - 1) % MAX_SAMPLES];
+            // 乱序到达的帧不算
+            if (interval > 0) {
+                intervals[count++] = interval;
+            }
+        }
+        if (count < 2) {
+            return 0;
+        }
+        Arrays.sort(intervals, 0, count);
+        return intervals[count / 2];
+    }
+
+    // ========== 评估报告 ==========
+
+    /**
+     * 评估报告，会被序列化成video_control消息的data发给服务器
+     *
+     * 格式示例：
+     * {"goodputKbps":850.5,"jitterMs":23.1,"dropRate":0.02,"decodeMs":6.3,
+     *  "receivedFps":19.7,"senderFps":20.0,"width":640,"height":360,"fps":20,"quality":60}
+     */
+    static final class Report {
+        // 统计结果
+        double goodputKbps;
+        double jitterMs;
+        double dropRate;
+        double decodeMs;
+        double receivedFps;
+        double senderFps;
+
+        // 推荐的视频参数
+        int width;
+        int height;
+        int fps;
+        int quality;
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.prt.module.Video;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.prt.module.WebSockets.WebSocketManager;
+import com.example.prt.module.WebSockets.WebSocketMessage;
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 视频接收器（单例模式）
+ *
+ * 负责实时视频的接收、缓冲、解码和显示
+ *
+ * 工作流程：
+ * WebSocketManager收到video_frame（网络线程）→ onFrame() 放进抖动缓冲区
+ * → 解码线程在播放时间到了之后取出最新的一帧 → JPEG解码成Bitmap
+ * → 只把最新的Bitmap交给主线程显示
+ *
+ * 视频质量反馈：
+ * 接收过程中每隔2秒统计一次吞吐量、抖动、丢帧率、解码耗时（VideoQualityMonitor）
+ * 并通过video_control消息告诉机器人推荐的分辨率/帧率/画质
+ * 弱网时机器人降低画质，保证画面流畅而不是卡住不动
+ *
+ * 为什么要单独的解码线程？
+ * JPEG解码一帧要好几毫秒，放在主线程会让界面卡顿
+ * 放在网络线程又会拖慢后续消息的接收
+ *
+ * 为什么只交出最新的一帧？
+ * 如果主线程忙不过来，排队等着显示的旧画面已经没有意义了
+ * 主线程每次只取最新解码好的那一帧，中间来不及显示的直接跳过
+ *
+ * 画面的内存复用：
+ * 解码时从BitmapPool取同样尺寸的Bitmap复用，不用每帧都分配新内存
+ * 新画面显示之后，上一帧的Bitmap放回池子；来不及显示就被替换的画面也直接放回池子
+ *
+ * 使用示例：
+ * VideoStreamReceiver.getInstance().setFrameListener(bitmap -> imageView.setImageBitmap(bitmap));
+ */
+public class VideoStreamReceiver {
+
+    // 日志标签
+    private static final String TAG = "VideoStreamReceiver";
+
+    // 质量反馈的发送间隔（毫秒）
+    private static final long REPORT_INTERVAL = 2000;
+
+    // 超过这么久没有收到帧，就认为视频已经停了，不再发送反馈（毫秒）
+    private static final long IDLE_TIMEOUT = 10000;
+
+    // ========== 单例相关 ==========
+
+    private static volatile VideoStreamReceiver instance;
+
+    /**
+     * 获取单例实例（双重检查锁定）
+     */
+    public static VideoStreamReceiver getInstance() {
+        if (instance == null) {
+            synchronized (VideoStreamReceiver.class) {
+                if (instance == null) {
+                    instance = new VideoStreamReceiver();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ========== 回调接口 ==========
+
+    /**
+     * 视频帧回调接口（在主线程调用）
+     */
+    public interface FrameListener {
+        /**
+         * 有新的画面需要显示
+         *
+         * 注意：下一次回调之后，这个Bitmap会被放回复用池继续解码新画面
+         * 所以要直接替换到界面上，不要另外保存引用
+         *
+         * @param bitmap 解码后的画面
+         */
+        void onVideoFrame(Bitmap bitmap);
+    }
+
+    // ========== 成员变量 ==========
+
+    // 抖动缓冲区（访问时需要对它加锁）
+    private final VideoJitterBuffer jitterBuffer = new VideoJitterBuffer();
+
+    // 接收质量统计
+    private final VideoQualityMonitor monitor = new VideoQualityMonitor();
+
+    // 每次取帧时被更新的帧取代的帧（只在解码线程使用，重复使用）
+    private final ArrayList<VideoFrame> superseded = new ArrayList<>();
+
+    // 最后收到帧的时间（SystemClock.elapsedRealtime()）
+    private volatile long lastFrameTime = 0;
+
+    // 是否正在定期发送质量反馈
+    private final AtomicBoolean reporting = new AtomicBoolean(false);
+
+    // JSON解析器
+    private final Gson gson = new Gson();
+
+    // 解码线程
+    private final HandlerThread decodeThread;
+    private final Handler decodeHandler;
+
+    // 主线程Handler
+    private final Handler mainHandler;
+
+    // 解码任务
+    private final Runnable decodeRunnable;
+
+    // 显示任务
+    private final Runnable deliverRunnable;
+
+    // 质量反馈任务
+    private final Runnable reportRunnable;
+
+    // 最新解码好、还没有显示的画面
+    private final AtomicReference<Bitmap> latestBitmap = new AtomicReference<>();
+
+    // 主线程是否已经有一个待执行的显示任务
+    private final AtomicBoolean deliverPending = new AtomicBoolean(false);
+
+    // 正在显示的画面（只在主线程访问）
+    private Bitmap displayedBitmap;
+
+    // Bitmap复用池
+    private final BitmapPool bitmapPool = BitmapPool.getInstance();
+
+    // 画面回调
+    private volatile FrameListener frameListener;
+
+    // ========== 构造函数 ==========
+
+    private VideoStreamReceiver() {
+        decodeThread = new HandlerThread("VideoDecode");
+        decodeThread.start();
+        decodeHandler = new Handler(decodeThread.getLooper());
+        mainHandler = new Handler(Looper.getMainLooper());
+
+        decodeRunnable = new Runnable() {
+            @Override
+            public void run() {
+                decodeDueFrame();
+            }
+        };
+
+        deliverRunnable = new Runnable() {
+            @Override
+            public void run() {
+                deliverPending.set(false);
+                Bitmap bitmap = latestBitmap.getAndSet(null);
+                if (bitmap == null) {
+                    return;
+                }
+                FrameListener listener = frameListener;
+                if (listener == null) {
+                    bitmapPool.put(bitmap);
+                    return;
+                }
+                listener.onVideoFrame(bitmap);
+
+                // 界面已经换成新画面，上一帧可以复用了
+                if (displayedBitmap != null && displayedBitmap != bitmap) {
+                    bitmapPool.put(displayedBitmap);
+                }
+                displayedBitmap = bitmap;
+            }
+        };
+
+        reportRunnable = new Runnable() {
+            @Override
+            public void run() {
+                sendQualityReport();
+            }
+        };
+
+        Log.d(TAG, "VideoStreamReceiver初始化完成");
+    }
+
+    // ========== 对外接口 ==========
+
+    /**
+     * 设置画面回调
+     *
+     * @param listener 回调接口，传null表示取消
+     */
+    public void setFrameListener(FrameListener listener) {
+        this.frameListener = listener;
+    }
+
+    /**
+     * 处理视频开始/停止消息：清空缓冲区
+     */
+    public void reset() {
+        synchronized (jitterBuffer) {
+            jitterBuffer.reset();
+        }
+        decodeHandler.removeCallbacks(decodeRunnable);
+        decodeHandler.removeCallbacks(reportRunnable);
+        reporting.set(false);
+        monitor.reset();
+        bitmapPool.put(latestBitmap.getAndSet(null));
+        Log.d(TAG, "视频缓冲区已重置");
+    }
+
+    /**
+     * 收到一帧视频（可以在任意线程调用）
+     *
+     * @param message video_frame类型的消息
+     */
+    public void onFrame(WebSocketMessage message) {
+        byte[] jpeg;
+        try {
+            jpeg = Base64.decode(message.getData(), Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "视频帧数据格式错误：" + e.getMessage());
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        VideoFrame frame = new VideoFrame(message.getTimestamp(), now, jpeg);
+        synchronized (jitterBuffer) {
+            jitterBuffer.offer(frame);
+        }
+        monitor.onFrameReceived(frame.pts, jpeg.length, now);
+
+        // 原样保存一份到片段录制器，用户随时可以导出最近一段视频
+        ClipRecorder.getInstance().record(frame.pts, jpeg);
+        lastFrameTime = now;
+
+        // 收到第一帧时开始定期发送质量反馈
+        if (reporting.compareAndSet(false, true)) {
+            decodeHandler.postDelayed(reportRunnable, REPORT_INTERVAL);
+        }
+
+        // 唤醒解码线程重新计算下一帧的播放时间
+        decodeHandler.removeCallbacks(decodeRunnable);
+        decodeHandler.post(decodeRunnable);
+    }
+
+    // ========== 解码线程 ==========
+
+    /**
+     * 取出到期的帧并解码（在解码线程执行）
+     */
+    private void decodeDueFrame() {
+        long now = SystemClock.elapsedRealtime();
+        VideoFrame frame;
+        long nextDelay;
+        synchronized (jitterBuffer) {
+            frame = jitterBuffer.poll(now, superseded);
+            nextDelay = jitterBuffer.nextDelay(now);
+        }
+
+        // 主动跳过的帧告诉质量监测，不要算成丢帧
+        for (int i = 0; i < superseded.size(); i++) {
+            monitor.onFrameSuperseded(superseded.get(i).pts);
+        }
+        superseded.clear();
+
+        if (frame != null) {
+            long start = System.nanoTime();
+            Bitmap bitmap = bitmapPool.decode(frame.jpeg, 0, frame.jpeg.length);
+            if (bitmap != null) {
+                monitor.onFrameDecoded(frame.pts, (System.nanoTime() - start) / 1e6);
+                publish(bitmap);
+            } else {
+                Log.w(TAG, "视频帧解码失败，pts=" + frame.pts);
+            }
+        }
+
+        // 还有没到期的帧，到时间再来
+        if (nextDelay >= 0) {
+            decodeHandler.postDelayed(decodeRunnable, nextDelay);
+        }
+    }
+
+    /**
+     * 统计接收质量并发送video_control消息（在解码线程执行）
+     *
+     * data格式见VideoQualityMonitor.Report
+     */
+    private void sendQualityReport() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastFrameTime > IDLE_TIMEOUT) {
+            // 很久没有收到帧，视频已经停了
+            reporting.set(false);
+            return;
+        }
+
+        double jitter;
+        synchronized (jitterBuffer) {
+            jitter = jitterBuffer.getJitter();
+        }
+        VideoQualityMonitor.Report report = monitor.evaluate(now, jitter);
+        WebSocketManager.getInstance().sendMessage(WebSocketMessage.TYPE_VIDEO_CONTROL,
+                gson.toJson(report));
+
+        decodeHandler.postDelayed(reportRunnable, REPORT_INTERVAL);
+    }
+
+    /**
+     * 把解码好的画面交给主线程
+     *
+     * 主线程还没来得及显示上一帧时，直接用新画面替换，不会排队
+     */
+    private void publish(Bitmap bitmap) {
+        // 上一帧还没来得及显示就被替换了，直接放回池子
+        bitmapPool.put(latestBitmap.getAndSet(bitmap));
+        if (deliverPending.compareAndSet(false, true)) {
+            mainHandler.post(deliverRunnable);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.prt.module.WebSockets;
+
+import java.util.ArrayDeque;
+
+/**
+ * 逻辑通道
+ *
+ * 同一条WebSocket连接上的一条独立的消息流（视频、AI、社区等各开一条）
+ * 通过WebSocketManager.openChannel()打开
+ *
+ * 流量控制（按条数计算的额度）：
+ * - 打开通道时告诉对方自己的接收窗口（RECEIVE_WINDOW条），对方最多先发这么多
+ * - 自己每处理完一半窗口的消息，就给对方补发相应的额度（channel_credit）
+ * - 自己发送时也一样：用完对方给的额度就先放在本地的发送队列里，等对方补额度再发
+ * 所以一个通道的消费者处理得慢，最多只积压一个窗口的消息，不会占满内存，
+ * 也不会影响其他通道
+ *
+ * 回调在后台线程执行（同一个通道的回调按顺序执行，不同通道之间互不等待）
+ * 同一个通道的onOpened、onMessage、onClosed排在同一个队列里依次执行，
+ * 不会同时执行，onMessage一定在onOpened之后，onClosed一定是最后一个
+ *
+ * 使用示例：
+ * Channel channel = WebSocketManager.getInstance().openChannel("ai", Lane.INTERACTIVE,
+ *         new Channel.Listener() { ... });
+ * channel.send(WebSocketMessage.TYPE_AI_REQUEST, "今天适合遛狗吗？");
+ * channel.close();
+ */
+public final class Channel {
+
+    // 接收窗口：对方最多可以连续发多少条消息而不用等额度
+    static final int RECEIVE_WINDOW = 64;
+
+    // 本地发送队列最多排多少条（对方一直不给额度时，再发就直接失败）
+    static final int MAX_OUTBOX = 256;
+
+    /**
+     * 通道的回调（在后台线程执行）
+     */
+    public interface Listener {
+        /**
+         * 对方确认打开了通道，可以开始收发
+         */
+        void onOpened(Channel channel);
+
+        /**
+         * 收到一条这个通道的消息
+         */
+        void onMessage(Channel channel, WebSocketMessage message);
+
+        /**
+         * 通道已关闭（自己关闭、对方关闭、或者连接断开）
+         */
+        void onClosed(Channel channel, String reason);
+    }
+
+    // 通道ID、名称、发送时使用的通道（优先级）
+    final int id;
+    final String name;
+    final Lane lane;
+    final Listener listener;
+
+    // 所属的复用器
+    private final ChannelMux mux;
+
+    // 以下状态由ChannelMux加锁访问
+    // 对方是否已经确认打开
+    boolean opened = false;
+    // 是否已经关闭
+    boolean closed = false;
+    // 还可以发给对方的条数
+    int sendCredit = 0;
+    // 等待额度的待发消息
+    final ArrayDeque<WebSocketMessage> outbox = new ArrayDeque<>();
+    // 还没交给回调的事件：收到的消息，以及channel_open（onOpened）、channel_close（onClosed）
+    final ArrayDeque<WebSocketMessage> inbox = new ArrayDeque<>();
+    // inbox里收到的消息的条数（不含open、close）
+    int inboxData = 0;
+    // 上次补发额度之后处理完的条数
+    int consumed = 0;
+    // 是否有后台任务正在调用回调
+    boolean draining = false;
+
+    Channel(ChannelMux mux, int id, String name, Lane lane, Listener listener) {
+        this.mux = mux;
+        this.id = id;
+        this.name = name;
+        this.lane = lane;
+        this.listener = listener;
+    }
+
+    // ========== 对外接口 ==========
+
+    /**
+     * 在这个通道上发送消息
+     *
+     * 有额度时立即发送，没有额度时先排队，等对方补发额度
+     *
+     * @param type 消息类型
+     * @param data 消息数据
+     * @return true表示已发送或已排队，false表示通道已关闭或发送队列已满
+     */
+    public boolean send(String type, String data) {
+        return mux.send(this, new WebSocketMessage(type, data));
+    }
+
+    /**
+     * 关闭通道（会通知对方）
+     */
+    public void close() {
+        mux.close(this, "客户端关闭", true);
+    }
+
+    /**
+     * 通道ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * 通道名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 还在本地排队等待额度的消息数
+     */
+    public int getPendingSendCount() {
+        return mux.pendingSendCount(this);
+    }
+
+    /**
+     * 是否已经关闭
+     */
+    public boolean isClosed() {
+        return mux.isClosed(this);
+    }
+}
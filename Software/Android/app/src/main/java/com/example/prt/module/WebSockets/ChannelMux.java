@@ -0,0 +1,308 @@
+package com.example.prt.module.WebSockets;
+
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 逻辑通道复用器
+ *
+ * 手机上多开几条WebSocket连接不一定合适（耗电、有的网络限制连接数），
+ * 所以在WebSocketManager的这一条连接上再分出多条逻辑通道（见Channel）
+ *
+ * 协议（都是普通的WebSocketMessage，channel字段是通道ID）：
+ * - channel_open  {"name":"ai","window":64}  打开通道，window是自己的接收窗口
+ *   对方回复同样的channel_open（带对方的窗口）表示确认
+ * - channel_credit {"credit":32}  补发额度：对方又可以多发32条
+ * - channel_close  "原因"  关闭通道
+ * - 其他带channel字段的消息都是这个通道的数据
+ *
+ * 公平：
+ * 每个通道同时在路上的消息不超过对方给的额度，
+ * 有多个通道在排队时轮流各发一条，不会有一个通道独占连接
+ *
+ * 回调：
+ * 每个通道的回调在共用的线程池里按顺序执行，每次最多处理BATCH条就让出线程，
+ * 一个通道的回调很慢只会卡住它自己
+ * 打开、关闭也作为事件放进同一个通道的inbox，和消息一起按顺序交给回调，
+ * 所以同一个通道的回调不会同时执行，也不会在onOpened之前或者onClosed之后收到消息
+ */
+final class ChannelMux {
+
+    // 日志标签
+    private static final String TAG = "ChannelMux";
+
+    // 回调每次最多连续处理多少条，然后让给其他通道
+    private static final int BATCH = 16;
+
+    // 用来发送消息的WebSocketManager
+    private final WebSocketManager manager;
+
+    // 通道ID → 通道
+    private final HashMap<Integer, Channel> channels = new HashMap<>();
+
+    // 下一个通道ID（从1开始，0和null表示普通消息）
+    private int nextId = 1;
+
+    // 轮流发送时从哪个通道开始
+    private int roundRobinStart = 0;
+
+    // 执行通道回调的线程池
+    private final ExecutorService callbackExecutor = Executors.newCachedThreadPool();
+
+    ChannelMux(WebSocketManager manager) {
+        this.manager = manager;
+    }
+
+    // ========== 打开和关闭 ==========
+
+    /**
+     * 打开一个通道
+     */
+    synchronized Channel open(String name, Lane lane, Channel.Listener listener) {
+        int id = nextId++;
+        Channel channel = new Channel(this, id, name, lane, listener);
+        channels.put(id, channel);
+
+        JsonObject open = new JsonObject();
+        open.addProperty("name", name);
+        open.addProperty("window", Channel.RECEIVE_WINDOW);
+        sendControl(channel, WebSocketMessage.TYPE_CHANNEL_OPEN, open.toString());
+        Log.d(TAG, "打开通道" + id + "（" + name + "）");
+        return channel;
+    }
+
+    /**
+     * 关闭一个通道
+     *
+     * @param notifyPeer 是否通知对方（对方关闭的或者连接断开时不用）
+     */
+    void close(final Channel channel, final String reason, boolean notifyPeer) {
+        synchronized (this) {
+            if (channel.closed) {
+                return;
+            }
+            channel.closed = true;
+            channels.remove(channel.id);
+            channel.outbox.clear();
+            // 还没处理的消息不再处理，还没通知的onOpened照样先通知
+            channel.inbox.removeIf(m -> !WebSocketMessage.TYPE_CHANNEL_OPEN.equals(m.getType()));
+            channel.inboxData = 0;
+            channel.inbox.addLast(new WebSocketMessage(WebSocketMessage.TYPE_CHANNEL_CLOSE, reason));
+            scheduleDrain(channel);
+            if (notifyPeer) {
+                sendControl(channel, WebSocketMessage.TYPE_CHANNEL_CLOSE, reason);
+            }
+        }
+        Log.d(TAG, "关闭通道" + channel.id + "（" + channel.name + "）：" + reason);
+    }
+
+    /**
+     * 连接断开，关闭所有通道
+     */
+    void closeAll(String reason) {
+        List<Channel> all;
+        synchronized (this) {
+            all = new ArrayList<>(channels.values());
+        }
+        for (Channel channel : all) {
+            close(channel, reason, false);
+        }
+    }
+
+    // ========== 发送 ==========
+
+    /**
+     * 在通道上发送消息（有额度就发，没额度就排队）
+     */
+    synchronized boolean send(Channel channel, WebSocketMessage message) {
+        if (channel.closed) {
+            return false;
+        }
+        if (channel.outbox.size() >= Channel.MAX_OUTBOX) {
+            Log.w(TAG, "通道" + channel.id + "的发送队列已满，对方一直没有补发额度");
+            return false;
+        }
+        message.setChannel(channel.id);
+        channel.outbox.addLast(message);
+        flush();
+        return true;
+    }
+
+    synchronized int pendingSendCount(Channel channel) {
+        return channel.outbox.size();
+    }
+
+    synchronized boolean isClosed(Channel channel) {
+        return channel.closed;
+    }
+
+    /**
+     * 把有额度的通道的待发消息发出去，多个通道轮流各发一条（已加锁）
+     */
+    private void flush() {
+        if (channels.isEmpty()) {
+            return;
+        }
+        List<Channel> list = new ArrayList<>(channels.values());
+        boolean sent = true;
+        while (sent) {
+            sent = false;
+            for (int i = 0; i < list.size(); i++) {
+                Channel channel = list.get((roundRobinStart + i) % list.size());
+                if (channel.opened && channel.sendCredit > 0 && !channel.outbox.isEmpty()) {
+                    channel.sendCredit--;
+                    manager.sendMessage(channel.outbox.pollFirst(), channel.lane);
+                    sent = true;
+                }
+            }
+            roundRobinStart = (roundRobinStart + 1) % list.size();
+        }
+    }
+
+    private void sendControl(Channel channel, String type, String data) {
+        WebSocketMessage message = new WebSocketMessage(type, data);
+        message.setChannel(channel.id);
+        manager.sendMessage(message, Lane.CONTROL);
+    }
+
+    // ========== 接收 ==========
+
+    /**
+     * 收到一条带通道ID的消息（在网络线程调用）
+     */
+    void onMessage(WebSocketMessage message) {
+        final Channel channel;
+        synchronized (this) {
+            channel = channels.get(message.getChannel());
+            if (channel == null) {
+                Log.w(TAG, "收到未知通道的消息，丢弃：" + message.getChannel());
+                return;
+            }
+
+            String type = message.getType();
+            if (WebSocketMessage.TYPE_CHANNEL_OPEN.equals(type)) {
+                // 对方确认打开，带来对方的接收窗口
+                if (!channel.opened) {
+                    channel.opened = true;
+                    channel.sendCredit += readInt(message.getData(), "window");
+                    Log.d(TAG, "通道" + channel.id + "（" + channel.name + "）已打开");
+                    channel.inbox.addLast(message);
+                    scheduleDrain(channel);
+                    flush();
+                }
+                return;
+            } else if (WebSocketMessage.TYPE_CHANNEL_CREDIT.equals(type)) {
+                channel.sendCredit += readInt(message.getData(), "credit");
+                flush();
+                return;
+            } else if (WebSocketMessage.TYPE_CHANNEL_CLOSE.equals(type)) {
+                // 在锁外面关闭
+            } else {
+                if (channel.inboxData >= Channel.RECEIVE_WINDOW) {
+                    // 对方超出了额度，说明对方没有遵守流量控制
+                    Log.w(TAG, "通道" + channel.id + "超出接收窗口，丢弃消息");
+                    return;
+                }
+                channel.inbox.addLast(message);
+                channel.inboxData++;
+                scheduleDrain(channel);
+                return;
+            }
+        }
+
+        // channel_close
+        close(channel, message.getData() != null ? message.getData() : "对方关闭", false);
+    }
+
+    /**
+     * 安排后台任务调用回调（已加锁）
+     */
+    private void scheduleDrain(final Channel channel) {
+        if (channel.draining) {
+            return;
+        }
+        channel.draining = true;
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain(channel);
+            }
+        });
+    }
+
+    /**
+     * 按顺序把打开、收到的消息、关闭交给回调，处理完消息之后给对方补额度（在线程池执行）
+     */
+    private void drain(Channel channel) {
+        for (int i = 0; i < BATCH; i++) {
+            WebSocketMessage message;
+            synchronized (this) {
+                message = channel.inbox.pollFirst();
+                if (message == null) {
+                    channel.draining = false;
+                    return;
+                }
+            }
+
+            String type = message.getType();
+            if (WebSocketMessage.TYPE_CHANNEL_OPEN.equals(type)) {
+                channel.listener.onOpened(channel);
+                continue;
+            }
+            if (WebSocketMessage.TYPE_CHANNEL_CLOSE.equals(type)) {
+                // 关闭之后不会再有新的事件
+                channel.listener.onClosed(channel, message.getData());
+                continue;
+            }
+
+            synchronized (this) {
+                if (channel.closed) {
+                    // 回调之前通道刚刚关闭，这条不再处理
+                    continue;
+                }
+                channel.inboxData--;
+            }
+            channel.listener.onMessage(channel, message);
+
+            synchronized (this) {
+                channel.consumed++;
+                // 处理完半个窗口就补一次额度，不用每条都补
+                if (channel.consumed >= Channel.RECEIVE_WINDOW / 2 && !channel.closed) {
+                    JsonObject credit = new JsonObject();
+                    credit.addProperty("credit", channel.consumed);
+                    sendControl(channel, WebSocketMessage.TYPE_CHANNEL_CREDIT, credit.toString());
+                    channel.consumed = 0;
+                }
+            }
+        }
+
+        // 处理了一批，让出线程，剩下的重新排队
+        synchronized (this) {
+            channel.draining = false;
+            if (!channel.inbox.isEmpty()) {
+                scheduleDrain(channel);
+            }
+        }
+    }
+
+    /**
+     * 从JSON里读一个整数字段，格式不对返回0
+     */
+    private static int readInt(String json, String field) {
+        try {
+            JsonObject object = JsonParser.parseString(json).getAsJsonObject();
+            return object.has(field) ? Math.max(0, object.get(field).getAsInt()) : 0;
+        } catch (Exception e) {
+            Log.w(TAG, "通道控制消息格式错误：" + json);
+            return 0;
+        }
+    }
+}
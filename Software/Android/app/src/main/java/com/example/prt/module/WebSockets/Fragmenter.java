@@ -0,0 +1,210 @@
+package com.example.prt.module.WebSockets;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 大消息分片和重组
+ *
+ * WebSocket一帧发出去之后就不能打断，一条几百KB的聊天历史要发很久，
+ * 这期间登录、心跳都得在后面等着
+ * 所以批量通道里超过FRAGMENT_SIZE的消息先切成小分片，一次只发一片，
+ * 分片之间可以插入控制消息和交互消息
+ *
+ * 分片的格式（本身也是一条普通的WebSocketMessage）：
+ * {"type":"fragment","data":"{\"id\":\"...\",\"index\":0,\"count\":5,\"payload\":\"...\"}"}
+ * payload是原来那条消息的JSON文本的一段，接收方收齐之后按顺序拼起来就是原来的消息
+ *
+ * 接收方最多同时重组MAX_PENDING条消息，超过FRAGMENT_TIMEOUT还没收齐的直接丢弃
+ */
+final class Fragmenter {
+
+    // 日志标签
+    private static final String TAG = "Fragmenter";
+
+    // 每一片的最大长度（字符）
+    static final int FRAGMENT_SIZE = 16 * 1024;
+
+    // 能力协商时对方可以要求更小的分片，但不能小于这个大小（字符）
+    static final int MIN_FRAGMENT_SIZE = 1024;
+
+    // 最多同时重组多少条消息
+    private static final int MAX_PENDING = 16;
+
+    // 一条消息多久没收齐就丢弃（毫秒）
+    private static final long FRAGMENT_TIMEOUT = 60_000;
+
+    // 重组后的消息最大长度（字符），防止服务器出错时占满内存（FrameCodec解压时也用这个上限）
+    static final int MAX_MESSAGE_LENGTH = 8 * 1024 * 1024;
+
+    /**
+     * 分片的内容
+     */
+    private static final class Fragment {
+        String id;
+        int index;
+        int count;
+        String payload;
+    }
+
+    /**
+     * 正在重组的消息
+     */
+    private static final class Pending {
+        final String[] parts;
+        int received = 0;
+        int length = 0;
+        final long createdAt = System.currentTimeMillis();
+
+        Pending(int count) {
+            parts = new String[count];
+        }
+    }
+
+    private final Gson gson = new Gson();
+
+    // 消息ID → 正在重组的消息（按开始时间排列）
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+
+    // ========== 发送方：分片 ==========
+
+    /**
+     * 是否需要分片
+     *
+     * @param size 每片最多多少字符（FRAGMENT_SIZE或者协商的大小）
+     */
+    static boolean needsSplit(String text, int size) {
+        return text.length() > size;
+    }
+
+    /**
+     * 把一条消息的JSON文本切成分片
+     *
+     * @param text 原来那条消息的JSON文本
+     * @param size 每片最多多少字符
+     * @return 每一片对应的JSON文本（按顺序发送）
+     */
+    List<String> split(String text, int size) {
+        String id = UUID.randomUUID().toString();
+        List<int[]> ranges = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(start + size, text.length());
+            // 不要把一个字符的代理对切开
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+            ranges.add(new int[]{start, end});
+            start = end;
+        }
+
+        List<String> fragments = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            Fragment fragment = new Fragment();
+            fragment.id = id;
+            fragment.index = i;
+            fragment.count = ranges.size();
+            fragment.payload = text.substring(ranges.get(i)[0], ranges.get(i)[1]);
+            fragments.add(gson.toJson(new WebSocketMessage(
+                    WebSocketMessage.TYPE_FRAGMENT, gson.toJson(fragment))));
+        }
+        return fragments;
+    }
+
+    // ========== 接收方：重组 ==========
+
+    /**
+     * 收到一个分片
+     *
+     * @param message 分片消息
+     * @return 收齐之后返回原来那条消息的JSON文本，还没收齐返回null
+     */
+    synchronized String accept(WebSocketMessage message) {
+        Fragment fragment;
+        try {
+            fragment = gson.fromJson(message.getData(), Fragment.class);
+        } catch (Exception e) {
+            Log.w(TAG, "分片格式错误：" + e.getMessage());
+            return null;
+        }
+        if (fragment == null || fragment.id == null || fragment.payload == null
+                || fragment.count <= 0 || fragment.index < 0 || fragment.index >= fragment.count) {
+            Log.w(TAG, "分片格式错误");
+            return null;
+        }
+
+        expire();
+
+        Pending entry = pending.get(fragment.id);
+        if (entry == null) {
+            if (fragment.count > MAX_MESSAGE_LENGTH / MIN_FRAGMENT_SIZE + 1) {
+                Log.w(TAG, "消息太大，丢弃：" + fragment.count + "片");
+                return null;
+            }
+            if (pending.size() >= MAX_PENDING) {
+                // 丢弃最早开始的那条
+                Iterator<Map.Entry<String, Pending>> iterator = pending.entrySet().iterator();
+                Log.w(TAG, "同时重组的消息太多，丢弃：" + iterator.next().getKey());
+                iterator.remove();
+            }
+            entry = new Pending(fragment.count);
+            pending.put(fragment.id, entry);
+        } else if (entry.parts.length != fragment.count) {
+            Log.w(TAG, "分片数量不一致，丢弃：" + fragment.id);
+            pending.remove(fragment.id);
+            return null;
+        }
+
+        if (entry.parts[fragment.index] == null) {
+            entry.parts[fragment.index] = fragment.payload;
+            entry.received++;
+            entry.length += fragment.payload.length();
+        }
+        if (entry.length > MAX_MESSAGE_LENGTH) {
+            Log.w(TAG, "消息太大，丢弃：" + fragment.id);
+            pending.remove(fragment.id);
+            return null;
+        }
+        if (entry.received < entry.parts.length) {
+            return null;
+        }
+
+        pending.remove(fragment.id);
+        StringBuilder builder = new StringBuilder(entry.length);
+        for (String part : entry.parts) {
+            builder.append(part);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 清空正在重组的消息（断开连接时调用）
+     */
+    synchronized void clear() {
+        pending.clear();
+    }
+
+    /**
+     * 丢弃超时没收齐的消息
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Pending>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Pending> entry = iterator.next();
+            if (now - entry.getValue().createdAt <= FRAGMENT_TIMEOUT) {
+                break;
+            }
+            Log.w(TAG, "分片超时，丢弃：" + entry.getKey());
+            iterator.remove();
+        }
+    }
+}
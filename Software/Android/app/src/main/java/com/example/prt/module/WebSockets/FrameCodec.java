@@ -0,0 +1,203 @@
+package com.example.prt.module.WebSockets;
+
+import android.util.Log;
+
+import okio.ByteString;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 应用层压缩（服务器不支持permessage-deflate时使用）
+ *
+ * 聊天历史、社区、AI回答都是很长的JSON，字段名和内容大量重复，压缩后通常只有原来的几分之一
+ * OkHttp自己支持WebSocket的标准压缩扩展permessage-deflate，握手时会自动申请，
+ * 服务器同意的话什么都不用做；服务器不支持时，用这里的压缩二进制帧代替
+ *
+ * 二进制帧格式：
+ * [1字节 FORMAT_DEFLATE][deflate压缩的JSON（UTF-8）]
+ * 压缩方式和permessage-deflate一样：原始deflate，每条消息SYNC_FLUSH，去掉末尾的00 00 FF FF
+ *
+ * 每个连接一个FrameCodec，Deflater和Inflater在整个连接期间复用，不重置：
+ * 压缩窗口（最近32KB）跨消息保留，后一条消息里和前面重复的字段名、内容只需要记一个引用
+ * 所以压缩和解压都必须严格按发送/接收的顺序进行（发送线程和OkHttp的读线程各自只有一个）
+ *
+ * 小于THRESHOLD的消息压缩不划算，还是按文本帧发送
+ *
+ * 是否启用由连接时的能力协商决定（见ProtocolHandshake），
+ * 没有协商成功的服务器照旧只收发文本帧
+ */
+final class FrameCodec {
+
+    // 日志标签
+    private static final String TAG = "FrameCodec";
+
+    // 超过这个大小（字节）才压缩，和NetworkCore里permessage-deflate的阈值一样
+    static final int THRESHOLD = 1024;
+
+    // 能力协商里的名字
+    static final String NAME = "deflate";
+
+    // 一条消息解压后最多多少字节，和分片重组的上限一样
+    private static final int MAX_SIZE = Fragmenter.MAX_MESSAGE_LENGTH;
+
+    // 二进制帧的第一个字节：压缩格式
+    static final byte FORMAT_DEFLATE = 1;
+
+    // SYNC_FLUSH在每条消息末尾产生的空块，发送时去掉，解压时补回
+    private static final byte[] SYNC_TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+
+    // 压缩和解压（nowrap：原始deflate，不带zlib头）
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+
+    // 压缩/解压用的缓冲区
+    private final byte[] deflateBuffer = new byte[8 * 1024];
+    private final byte[] inflateBuffer = new byte[8 * 1024];
+
+    // 统计：压缩前和压缩后的字节数（只算压缩过的消息）
+    private long rawBytes = 0;
+    private long wireBytes = 0;
+
+    // 连接断开后不再使用
+    private boolean closed = false;
+
+    // ========== 发送 ==========
+
+    /**
+     * 需要压缩的消息压缩成二进制帧（在发送线程调用）
+     *
+     * @param text 消息的JSON文本
+     * @return 压缩后的二进制帧，null表示不用压缩，按文本帧发送
+     */
+    synchronized ByteString encode(String text) {
+        if (closed || text.length() < THRESHOLD / 3) {
+            // 一个字符UTF-8最多3个字节，肯定不够阈值
+            return null;
+        }
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < THRESHOLD) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+        out.write(FORMAT_DEFLATE);
+        deflater.setInput(raw);
+        int count;
+        do {
+            count = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+            out.write(deflateBuffer, 0, count);
+        } while (count == deflateBuffer.length);
+
+        byte[] frame = out.toByteArray();
+        int length = frame.length;
+        if (endsWithSyncTail(frame, length)) {
+            length -= SYNC_TAIL.length;
+        }
+
+        rawBytes += raw.length;
+        wireBytes += length;
+        return ByteString.of(frame, 0, length);
+    }
+
+    // ========== 接收 ==========
+
+    /**
+     * 把收到的二进制帧还原成JSON文本（在OkHttp的读线程调用）
+     *
+     * @param frame 收到的二进制帧
+     * @return JSON文本，格式不认识或者数据损坏时返回null
+     */
+    synchronized String decode(ByteString frame) {
+        if (closed) {
+            return null;
+        }
+        byte[] data = frame.toByteArray();
+        if (data.length < 1 || data[0] != FORMAT_DEFLATE) {
+            Log.w(TAG, "不认识的二进制帧格式：" + (data.length > 0 ? data[0] : -1));
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(data.length * 4, MAX_SIZE));
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+            boolean complete = inflateAll(out);
+            if (complete) {
+                inflater.setInput(SYNC_TAIL);
+                complete = inflateAll(out);
+            }
+            if (!complete) {
+                // 几KB的帧可能解压出几GB（压缩炸弹），超过上限就放弃这一帧
+                // 这条消息没有解压完，压缩窗口也对不上了，和数据损坏一样处理
+                Log.e(TAG, "解压后的消息太大，超过" + MAX_SIZE + "字节");
+                return null;
+            }
+        } catch (DataFormatException e) {
+            // 压缩窗口已经和对方对不上了，后面的消息也解不开，只能等重连
+            Log.e(TAG, "解压失败：" + e.getMessage());
+            return null;
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 把当前的输入全部解压到out
+     *
+     * @return false表示解压出来的数据超过了MAX_SIZE
+     */
+    private boolean inflateAll(ByteArrayOutputStream out) throws DataFormatException {
+        while (true) {
+            int count = inflater.inflate(inflateBuffer);
+            if (out.size() + count > MAX_SIZE) {
+                return false;
+            }
+            out.write(inflateBuffer, 0, count);
+            // 缓冲区写满时可能还有没输出的数据，要再取一次
+            if (count < inflateBuffer.length && inflater.needsInput()) {
+                return true;
+            }
+            if (count == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                return true;
+            }
+        }
+    }
+
+    // ========== 其他 ==========
+
+    /**
+     * 压缩后的大小 / 压缩前的大小（只算压缩过的消息，没有压缩过时返回1）
+     */
+    synchronized float getCompressionRatio() {
+        return rawBytes == 0 ? 1f : (float) wireBytes / rawBytes;
+    }
+
+    /**
+     * 连接断开，释放压缩器占用的内存
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        deflater.end();
+        inflater.end();
+        if (rawBytes > 0) {
+            Log.d(TAG, "本次连接压缩了" + rawBytes + "字节，实际发送" + wireBytes + "字节");
+        }
+    }
+
+    private static boolean endsWithSyncTail(byte[] frame, int length) {
+        if (length < 1 + SYNC_TAIL.length) {
+            return false;
+        }
+        for (int i = 0; i < SYNC_TAIL.length; i++) {
+            if (frame[length - SYNC_TAIL.length + i] != SYNC_TAIL[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.prt.module.WebSockets;
+
+import android.util.Log;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * 有界的接收缓冲区（按消息类型区分过载策略）
+ *
+ * 收到的消息在交给主线程之前先放在这里
+ * 服务器出问题疯狂推消息、或者重连后一下子补发一大堆时，缓冲区不会无限增长，
+ * 而是按消息的重要程度有选择地丢弃：
+ *
+ * - NEVER_DROP（登录、通知、聊天、AI回复等）：一条都不能丢
+ * - LATEST_WINS（位置）：平时一条不丢，按顺序排队；缓冲区满了以后，
+ *   同一只宠物还没分发的旧位置直接被新位置替换，只保留最新的
+ *   （location_update不经过这里，在位置线程逐条分发，见WebSocketManager）
+ * - DROP_OLDEST（视频控制消息和其他消息）：超过上限时丢掉最旧的
+ *
+ * 缓冲区总数超过CAPACITY时，从最旧的可丢弃消息开始丢（先丢批量通道的）；
+ * 全是不能丢的消息时照样接收（只打警告日志）
+ *
+ * 取出时按通道（Lane）的权重轮流取：登录、连接状态等控制消息不用排在
+ * 一大段聊天历史后面，同一通道内保持收到的顺序
+ *
+ * 注意取出的顺序和收到的顺序不完全一样：不同通道的消息会互相插队
+ * （比如后收到的通知可能比先收到的聊天历史先分发）
+ * 连接状态（connect、disconnect）例外：它们是分界线，之前收到的消息属于上一次连接，
+ * 必须先分发完，之后收到的消息也不能越过它们
+ * 所以有连接状态消息在排队时，暂停按权重取，严格按收到的顺序取，直到它被取出
+ *
+ * 被丢弃的消息会按类型计数，方便排查
+ *
+ * 注意：这个类的方法都是同步的，临界区很短，可以在网络线程和主线程同时调用
+ */
+final class InboundBuffer {
+
+    // 日志标签
+    private static final String TAG = "InboundBuffer";
+
+    // 缓冲区总容量（条）
+    static final int CAPACITY = 512;
+
+    // 同一类型的DROP_OLDEST消息最多排多少条
+    private static final int MAX_PER_DROPPABLE_TYPE = 32;
+
+    /**
+     * 过载策略
+     */
+    enum Policy {
+        NEVER_DROP,
+        LATEST_WINS,
+        DROP_OLDEST
+    }
+
+    /**
+     * 队列里的一项
+     */
+    private static final class Entry {
+        WebSocketMessage message;
+        final Policy policy;
+        final String key;
+        final Lane lane;
+        boolean removed = false;
+
+        // 收到的顺序
+        long seq;
+
+        Entry(WebSocketMessage message, Policy policy, String key) {
+            this.message = message;
+            this.policy = policy;
+            this.key = key;
+            this.lane = Lane.of(message.getType());
+        }
+    }
+
+    // 所有消息，按通道分开、通道内按到达顺序排列（被丢弃的只做标记，取出时跳过）
+    private final WeightedLanes<Entry> queue = new WeightedLanes<>();
+
+    // 容量不够时依次从这些通道里丢
+    private static final Lane[] SHED_ORDER = {Lane.BULK, Lane.INTERACTIVE, Lane.CONTROL};
+
+    // LATEST_WINS：合并键 → 还没分发的最新一项
+    private final HashMap<String, Entry> latest = new HashMap<>();
+
+    // DROP_OLDEST：消息类型 → 这个类型还没分发的项（按到达顺序）
+    private final HashMap<String, ArrayDeque<Entry>> droppable = new HashMap<>();
+
+    // 有效的消息数（不含已标记丢弃的）
+    private int size = 0;
+
+    // 其中可以丢弃的消息数（不是NEVER_DROP的）
+    private int droppableSize = 0;
+
+    // 下一条消息的序号
+    private long nextSeq = 0;
+
+    // 还没取出的连接状态消息（按收到的顺序）
+    private final ArrayDeque<Entry> barriers = new ArrayDeque<>();
+
+    // 丢弃计数：消息类型 → 条数
+    private final HashMap<String, Long> shedCounts = new HashMap<>();
+    private long totalShed = 0;
+
+    // ========== 放入和取出 ==========
+
+    /**
+     * 放入一条消息（在网络线程调用）
+     *
+     * @param message 收到的消息
+     */
+    synchronized void offer(WebSocketMessage message) {
+        String type = message.getType() != null ? message.getType() : "";
+        Policy policy = policyFor(type);
+
+        if (policy == Policy.LATEST_WINS) {
+            String key = type + "|" + coalesceKey(message);
+            Entry pending = latest.get(key);
+            if (pending != null && size >= CAPACITY) {
+                // 缓冲区满了，旧位置还没来得及分发，直接换成新的（保留原来的排队位置）
+                // 没满的时候每个位置都排队，订阅者不会漏掉中间的点
+                pending.message = message;
+                shed(type);
+                return;
+            }
+            Entry entry = new Entry(message, policy, key);
+            latest.put(key, entry);
+            append(entry);
+        } else if (policy == Policy.DROP_OLDEST) {
+            Entry entry = new Entry(message, policy, type);
+            ArrayDeque<Entry> sameType = droppable.get(type);
+            if (sameType == null) {
+                sameType = new ArrayDeque<>();
+                droppable.put(type, sameType);
+            }
+            if (sameType.size() >= MAX_PER_DROPPABLE_TYPE) {
+                remove(sameType.peekFirst());
+            }
+            sameType.addLast(entry);
+            append(entry);
+        } else {
+            append(new Entry(message, policy, null));
+        }
+
+        // 总数超出容量，从批量通道最旧的可丢弃消息开始丢
+        // 剩下的全是不能丢的消息时不用再遍历（否则每收到一条都要把整个队列走一遍）
+        if (size > CAPACITY && droppableSize > 0) {
+            for (Lane lane : SHED_ORDER) {
+                for (Entry entry : queue.queue(lane)) {
+                    if (size <= CAPACITY || droppableSize == 0) {
+                        break;
+                    }
+                    if (!entry.removed && entry.policy != Policy.NEVER_DROP) {
+                        remove(entry);
+                    }
+                }
+            }
+        }
+        if (size > CAPACITY && droppableSize == 0) {
+            Log.w(TAG, "接收缓冲区已满，但剩下的都是不能丢弃的消息：" + size + "条");
+        }
+
+        // 标记丢弃的项积累太多时真正清理掉（主线程卡住、一直没有取出时也不会无限增长）
+        if (queue.size() - size > CAPACITY) {
+            queue.removeIf(e -> e.removed);
+        }
+    }
+
+    /**
+     * 按通道权重取出下一条消息（在主线程调用）
+     *
+     * 有连接状态消息在排队时按收到的顺序取
+     *
+     * @return 消息，缓冲区为空时返回null
+     */
+    synchronized WebSocketMessage poll() {
+        Entry entry;
+        while ((entry = barriers.isEmpty() ? queue.poll() : pollOldest()) != null) {
+            if (entry.removed) {
+                continue;
+            }
+            forget(entry);
+            size--;
+            if (entry.policy != Policy.NEVER_DROP) {
+                droppableSize--;
+            }
+            if (entry == barriers.peekFirst()) {
+                barriers.pollFirst();
+            }
+            return entry.message;
+        }
+        return null;
+    }
+
+    /**
+     * 取出所有通道里最早收到的一项
+     */
+    private Entry pollOldest() {
+        Lane oldest = null;
+        long oldestSeq = Long.MAX_VALUE;
+        for (Lane lane : Lane.values()) {
+            Entry head = queue.peek(lane);
+            if (head != null && head.seq < oldestSeq) {
+                oldest = lane;
+                oldestSeq = head.seq;
+            }
+        }
+        return oldest != null ? queue.poll(oldest) : null;
+    }
+
+    /**
+     * 有效的消息数
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 是否为空
+     */
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    // ========== 统计 ==========
+
+    /**
+     * 某种类型被丢弃（或被合并）的消息数
+     */
+    synchronized long getShedCount(String type) {
+        Long count = shedCounts.get(type);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 被丢弃（或被合并）的消息总数
+     */
+    synchronized long getTotalShedCount() {
+        return totalShed;
+    }
+
+    // ========== 内部实现 ==========
+
+    /**
+     * 消息类型对应的过载策略
+     */
+    static Policy policyFor(String type) {
+        switch (type) {
+            case WebSocketMessage.TYPE_LOCATION:
+            case WebSocketMessage.TYPE_LOCATION_UPDATE:
+                return Policy.LATEST_WINS;
+
+            case WebSocketMessage.TYPE_VIDEO_START:
+            case WebSocketMessage.TYPE_VIDEO_STOP:
+            case WebSocketMessage.TYPE_VIDEO_FRAME:
+            case WebSocketMessage.TYPE_VIDEO_CONTROL:
+                return Policy.DROP_OLDEST;
+
+            case WebSocketMessage.TYPE_CONNECT:
+            case WebSocketMessage.TYPE_DISCONNECT:
+            case WebSocketMessage.TYPE_LOGIN:
+            case WebSocketMessage.TYPE_REGISTER:
+            case WebSocketMessage.TYPE_LOGOUT:
+            case WebSocketMessage.TYPE_CHAT:
+            case WebSocketMessage.TYPE_CHAT_HISTORY:
+            case WebSocketMessage.TYPE_NOTIFICATION:
+            case WebSocketMessage.TYPE_AI_REQUEST:
+            case WebSocketMessage.TYPE_AI_RESPONSE:
+            case WebSocketMessage.TYPE_LOCATION_BATCH:
+            case WebSocketMessage.TYPE_GEOFENCE_ENTER:
+            case WebSocketMessage.TYPE_GEOFENCE_EXIT:
+                return Policy.NEVER_DROP;
+
+            default:
+                // 不认识的消息类型可以丢，防止服务器乱发消息把缓冲区塞满
+                return Policy.DROP_OLDEST;
+        }
+    }
+
+    /**
+     * 位置消息的合并键：宠物ID（不同宠物的位置不能互相替换）
+     */
+    private static String coalesceKey(WebSocketMessage message) {
+        try {
+            JsonElement element = JsonParser.parseString(message.getData());
+            if (element.isJsonObject()) {
+                JsonObject object = element.getAsJsonObject();
+                if (object.has("petId") && !object.get("petId").isJsonNull()) {
+                    return object.get("petId").getAsString();
+                }
+            }
+        } catch (Exception e) {
+            // 不是JSON（比如服务器的文字回执），按没有宠物ID处理
+        }
+        return "";
+    }
+
+    /**
+     * 连接状态消息：之前和之后收到的消息不能越过它
+     */
+    private static boolean isBarrier(String type) {
+        return WebSocketMessage.TYPE_CONNECT.equals(type)
+                || WebSocketMessage.TYPE_DISCONNECT.equals(type);
+    }
+
+    private void append(Entry entry) {
+        entry.seq = nextSeq++;
+        queue.add(entry.lane, entry);
+        size++;
+        if (entry.policy != Policy.NEVER_DROP) {
+            droppableSize++;
+        }
+        if (isBarrier(entry.message.getType())) {
+            barriers.addLast(entry);
+        }
+    }
+
+    /**
+     * 丢弃一项（只做标记，取出时跳过）
+     */
+    private void remove(Entry entry) {
+        if (entry == null || entry.removed) {
+            return;
+        }
+        entry.removed = true;
+        forget(entry);
+        size--;
+        droppableSize--;
+        shed(entry.message.getType() != null ? entry.message.getType() : "");
+    }
+
+    /**
+     * 从合并表和分类队列里移除一项
+     */
+    private void forget(Entry entry) {
+        if (entry.policy == Policy.LATEST_WINS) {
+            // 同一个键可能有好几项在排队，合并表只记最新的那一项
+            if (latest.get(entry.key) == entry) {
+                latest.remove(entry.key);
+            }
+        } else if (entry.policy == Policy.DROP_OLDEST) {
+            ArrayDeque<Entry> sameType = droppable.get(entry.key);
+            if (sameType != null) {
+                sameType.remove(entry);
+                if (sameType.isEmpty()) {
+                    droppable.remove(entry.key);
+                }
+            }
+        }
+    }
+
+    private void shed(String type) {
+        Long count = shedCounts.get(type);
+        shedCounts.put(type, count != null ? count + 1 : 1);
+        totalShed++;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.prt.module.WebSockets;
+
+/**
+ * 消息通道（优先级）
+ *
+ * 以前所有消息排在同一个队列里，前面有一大段聊天历史或者图片在发，
+ * 登录和心跳就得排在后面等，等久了就会被误判为超时
+ *
+ * 现在按消息类型分成三条通道，发送和接收时按权重轮流处理：
+ * - CONTROL（控制）：心跳、能力协商、登录、连接状态、视频控制、逻辑通道的控制消息等，量小但必须及时
+ * - INTERACTIVE（交互）：聊天、AI问答、位置、通知等，用户在等着看
+ * - BULK（批量）：聊天历史、批量位置、视频帧等，量大但晚一点没关系
+ *
+ * 每一轮最多处理控制通道WEIGHT条、交互通道WEIGHT条、批量通道WEIGHT条，
+ * 批量通道的大消息会被切成小分片，一次只发一片，不会堵住控制消息
+ */
+public enum Lane {
+
+    CONTROL(8),
+    INTERACTIVE(4),
+    BULK(1);
+
+    // 每一轮最多处理的条数
+    final int weight;
+
+    Lane(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * 消息类型对应的通道
+     *
+     * @param type 消息类型
+     * @return 通道，不认识的类型归到交互通道
+     */
+    public static Lane of(String type) {
+        if (type == null) {
+            return INTERACTIVE;
+        }
+        switch (type) {
+            case WebSocketMessage.TYPE_HEARTBEAT:
+            case WebSocketMessage.TYPE_HELLO:
+            case WebSocketMessage.TYPE_CONNECT:
+            case WebSocketMessage.TYPE_DISCONNECT:
+            case WebSocketMessage.TYPE_LOGIN:
+            case WebSocketMessage.TYPE_REGISTER:
+            case WebSocketMessage.TYPE_LOGOUT:
+            case WebSocketMessage.TYPE_VIDEO_START:
+            case WebSocketMessage.TYPE_VIDEO_STOP:
+            case WebSocketMessage.TYPE_VIDEO_CONTROL:
+            case WebSocketMessage.TYPE_CHANNEL_OPEN:
+            case WebSocketMessage.TYPE_CHANNEL_CLOSE:
+            case WebSocketMessage.TYPE_CHANNEL_CREDIT:
+                return CONTROL;
+
+            case WebSocketMessage.TYPE_CHAT_HISTORY:
+            case WebSocketMessage.TYPE_LOCATION_BATCH:
+            case WebSocketMessage.TYPE_VIDEO_FRAME:
+            case WebSocketMessage.TYPE_FRAGMENT:
+            case WebSocketMessage.TYPE_BATCH:
+                return BULK;
+
+            default:
+                return INTERACTIVE;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.prt.module.WebSockets;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import okhttp3.WebSocket;
+import okio.ByteString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 发送调度器（按通道优先级发送）
+ *
+ * OkHttp的WebSocket内部只有一个先进先出的发送队列，
+ * 一旦把一大段聊天历史交给它，后面的登录、心跳都只能等它发完
+ *
+ * 现在的做法：
+ * 1. 要发送的消息先按通道（Lane）放进这里的三条队列
+ * 2. 发送线程按权重轮流取出消息交给OkHttp，
+ *    但只有OkHttp的发送队列里积压的字节数（webSocket.queueSize()）低于HIGH_WATER时才交，
+ *    这样OkHttp那边始终只排着一小段，新来的控制消息可以很快插到前面
+ * 3. 超过分片大小（Fragmenter.FRAGMENT_SIZE或者协商的大小）的大消息切成分片，放到批量通道一片一片地发
+ * 4. 协商好应用层压缩之后（见ProtocolHandshake、FrameCodec），消息在交给OkHttp之前压缩成二进制帧，
+ *    压缩在发送线程按发送顺序进行，保证和服务器的解压顺序一致
+ *
+ * 断开连接时，还没交给OkHttp的消息直接丢弃（和以前未连接时发送失败一样）
+ * 需要知道消息有没有真的发出去的调用者可以带一个SendCallback：
+ * 交给OkHttp之后回调onSent，被丢弃时回调onDropped
+ */
+final class OutboundScheduler {
+
+    // 日志标签
+    private static final String TAG = "OutboundScheduler";
+
+    // OkHttp发送队列里最多积压多少字节
+    private static final long HIGH_WATER = 64 * 1024;
+
+    // OkHttp发送队列积压时，隔多久再检查一次（毫秒）
+    private static final long RETRY_DELAY = 5;
+
+    // 待发送的消息
+    private final WeightedLanes<Outgoing> lanes = new WeightedLanes<>();
+
+    // 大消息分片
+    private final Fragmenter fragmenter = new Fragmenter();
+
+    // 当前的连接（断开时为null）
+    private WebSocket webSocket;
+
+    // 当前连接的应用层压缩（还没协商好或者不需要时为null）
+    private FrameCodec codec;
+
+    // 当前连接的分片大小（字符）
+    private volatile int fragmentSize = Fragmenter.FRAGMENT_SIZE;
+
+    // 是否已经安排了发送任务
+    private boolean pumpScheduled = false;
+
+    // 发送线程
+    private final Handler sendHandler;
+
+    // 发送任务
+    private final Runnable pumpRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pump();
+        }
+    };
+
+    OutboundScheduler() {
+        HandlerThread thread = new HandlerThread("WebSocketSend");
+        thread.start();
+        sendHandler = new Handler(thread.getLooper());
+    }
+
+    // ========== 连接 ==========
+
+    /**
+     * 连接建立后，开始往这个连接发送（先按普通JSON发送）
+     */
+    synchronized void attach(WebSocket webSocket) {
+        this.webSocket = webSocket;
+        this.codec = null;
+        this.fragmentSize = Fragmenter.FRAGMENT_SIZE;
+        schedule();
+    }
+
+    /**
+     * 能力协商完成，切换编码
+     *
+     * 切换在两条消息之间进行：之后从队列里取出的消息都按新的方式发送
+     *
+     * @param codec        应用层压缩，不需要时传null
+     * @param fragmentSize 分片大小（字符）
+     */
+    synchronized void configure(FrameCodec codec, int fragmentSize) {
+        this.codec = codec;
+        this.fragmentSize = fragmentSize;
+    }
+
+    /**
+     * 连接断开，丢弃还没发送的消息
+     */
+    void detach() {
+        List<WebSocketManager.SendCallback> dropped = new ArrayList<>();
+        synchronized (this) {
+            if (!lanes.isEmpty()) {
+                Log.w(TAG, "连接已断开，丢弃" + lanes.size() + "条未发送的消息");
+            }
+            for (Lane lane : Lane.values()) {
+                for (Outgoing outgoing : lanes.queue(lane)) {
+                    if (outgoing.callback != null) {
+                        dropped.add(outgoing.callback);
+                    }
+                }
+            }
+            webSocket = null;
+            codec = null;
+            lanes.clear();
+        }
+
+        // 回调不占用锁（回调里可能再发消息）
+        for (WebSocketManager.SendCallback callback : dropped) {
+            callback.onDropped();
+        }
+    }
+
+    // ========== 发送 ==========
+
+    /**
+     * 放进发送队列（可以在任意线程调用）
+     *
+     * @param text 消息的JSON文本
+     * @param lane 通道
+     * @return true表示已放入队列，false表示当前没有连接
+     */
+    boolean enqueue(String text, Lane lane) {
+        return enqueue(text, lane, null);
+    }
+
+    /**
+     * 放进发送队列，并在发出去或者被丢弃时回调（可以在任意线程调用）
+     *
+     * @param text     消息的JSON文本
+     * @param lane     通道
+     * @param callback 发送结果回调，可以为null；返回false时不会回调
+     * @return true表示已放入队列，false表示当前没有连接
+     */
+    boolean enqueue(String text, Lane lane, WebSocketManager.SendCallback callback) {
+        // 分片比较耗时，不占用锁
+        int size = fragmentSize;
+        List<String> fragments = Fragmenter.needsSplit(text, size) ? fragmenter.split(text, size) : null;
+
+        synchronized (this) {
+            if (webSocket == null) {
+                return false;
+            }
+            if (fragments != null) {
+                // 大消息不管原来是哪个通道，都按批量通道一片一片地发
+                // 回调挂在最后一片上：同一通道按顺序发送，最后一片发出去说明前面的都发出去了
+                Log.d(TAG, "大消息切成" + fragments.size() + "片发送");
+                int last = fragments.size() - 1;
+                for (int i = 0; i <= last; i++) {
+                    lanes.add(Lane.BULK, new Outgoing(fragments.get(i), i == last ? callback : null));
+                }
+            } else {
+                lanes.add(lane, new Outgoing(text, callback));
+            }
+            schedule();
+        }
+        return true;
+    }
+
+    /**
+     * 某条通道里还没发送的消息数
+     */
+    synchronized int getPendingCount(Lane lane) {
+        return lanes.size(lane);
+    }
+
+    // ========== 内部实现 ==========
+
+    /**
+     * 安排发送任务（已加锁）
+     */
+    private void schedule() {
+        if (!pumpScheduled && webSocket != null && !lanes.isEmpty()) {
+            pumpScheduled = true;
+            sendHandler.post(pumpRunnable);
+        }
+    }
+
+    /**
+     * 把消息交给OkHttp，直到队列为空或者OkHttp那边积压太多（在发送线程执行）
+     */
+    private void pump() {
+        while (true) {
+            WebSocket socket;
+            FrameCodec frameCodec;
+            Outgoing outgoing;
+            synchronized (this) {
+                socket = webSocket;
+                if (socket == null || lanes.isEmpty()) {
+                    pumpScheduled = false;
+                    return;
+                }
+                if (socket.queueSize() >= HIGH_WATER) {
+                    // OkHttp还有不少没发出去，等一会再交
+                    sendHandler.postDelayed(pumpRunnable, RETRY_DELAY);
+                    return;
+                }
+                frameCodec = codec;
+                outgoing = lanes.poll();
+            }
+
+            String text = outgoing.text;
+            ByteString compressed = frameCodec != null ? frameCodec.encode(text) : null;
+            boolean sent = compressed != null ? socket.send(compressed) : socket.send(text);
+            if (!sent) {
+                Log.e(TAG, "消息发送失败：" + text);
+            }
+            if (outgoing.callback != null) {
+                if (sent) {
+                    outgoing.callback.onSent();
+                } else {
+                    outgoing.callback.onDropped();
+                }
+            }
+        }
+    }
+
+    /**
+     * 队列里的一条消息
+     */
+    private static final class Outgoing {
+        final String text;
+        final WebSocketManager.SendCallback callback;
+
+        Outgoing(String text, WebSocketManager.SendCallback callback) {
+            this.text = text;
+            this.callback = callback;
+        }
+    }
+}
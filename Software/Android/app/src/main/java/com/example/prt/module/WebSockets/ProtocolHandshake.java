@@ -0,0 +1,212 @@
+package com.example.prt.module.WebSockets;
+
+import android.util.Log;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * 连接时的能力协商
+ *
+ * 以前客户端和服务器只认一种固定的JSON协议，想换更快的编码、加新功能，
+ * 就得客户端和服务器同时发版，老版本的一方收到看不懂的数据就出错
+ *
+ * 现在连接建立后，客户端先发一条hello，列出自己支持的能力：
+ * {"version":1,"codecs":["json"],"compression":["deflate"],
+ *  "batching":true,"resume":false,"maxFrameSize":16384}
+ * - codecs：消息编码（目前只有json）
+ * - compression：应用层压缩（deflate，见FrameCodec）
+ * - batching：能接收batch消息（一帧里装多条消息）
+ * - resume：断线后能否恢复会话（还不支持）
+ * - maxFrameSize：一帧最多多少字符，超过的消息要分片（见Fragmenter）
+ *
+ * 服务器从里面选一组，回复一条hello：
+ * {"version":1,"codec":"json","compression":"deflate",
+ *  "batching":true,"resume":false,"maxFrameSize":8192}
+ * 客户端收到之后，后面发送的消息马上按选中的方式编码；
+ * 服务器发出回复之后，后面发送的消息也按选中的方式编码
+ *
+ * 压缩的消息用二进制帧，没压缩的用文本帧，两种帧可以混着收发，
+ * 所以切换的时候不用停下来等对方，也不会有消息按错误的方式解码
+ *
+ * 不认识hello的服务器（比如test_server.py）不回复或者回复的内容看不懂，
+ * 这时双方一直使用普通JSON文本帧，和以前完全一样
+ *
+ * 以后新的协议优化加一个能力字段，服务器选中了才启用，客户端和服务器可以分别升级
+ */
+final class ProtocolHandshake {
+
+    // 日志标签
+    private static final String TAG = "ProtocolHandshake";
+
+    // 协商协议的版本
+    static final int VERSION = 1;
+
+    // 消息编码
+    static final String CODEC_JSON = "json";
+
+    // 不压缩
+    static final String COMPRESSION_NONE = "none";
+
+    // 服务器是否已经在HTTP握手时同意了permessage-deflate
+    private final boolean permessageDeflate;
+
+    // 协商结果（收到服务器回复之前都是普通JSON）
+    private volatile FrameCodec codec;
+    private volatile int maxFrameSize = Fragmenter.FRAGMENT_SIZE;
+    private volatile boolean batching = false;
+
+    // 是否已经收到服务器的回复
+    private boolean settled = false;
+
+    // 连接断开后不再使用
+    private boolean closed = false;
+
+    /**
+     * @param permessageDeflate 服务器是否已经同意了permessage-deflate（大消息由OkHttp压缩）
+     */
+    ProtocolHandshake(boolean permessageDeflate) {
+        this.permessageDeflate = permessageDeflate;
+    }
+
+    // ========== 客户端的提议 ==========
+
+    /**
+     * 客户端支持的能力（连接建立后马上发送）
+     */
+    WebSocketMessage createHello() {
+        JsonObject offer = new JsonObject();
+        offer.addProperty("version", VERSION);
+
+        JsonArray codecs = new JsonArray();
+        codecs.add(CODEC_JSON);
+        offer.add("codecs", codecs);
+
+        JsonArray compression = new JsonArray();
+        compression.add(FrameCodec.NAME);
+        offer.add("compression", compression);
+
+        offer.addProperty("batching", true);
+        offer.addProperty("resume", false);
+        offer.addProperty("maxFrameSize", Fragmenter.FRAGMENT_SIZE);
+
+        return new WebSocketMessage(WebSocketMessage.TYPE_HELLO, offer.toString());
+    }
+
+    // ========== 服务器的选择 ==========
+
+    /**
+     * 收到服务器的hello（在OkHttp的读线程调用）
+     *
+     * @return true表示协商成功，需要切换编码；false表示继续使用普通JSON
+     */
+    synchronized boolean onReply(WebSocketMessage reply) {
+        if (settled || closed) {
+            Log.w(TAG, "重复的hello，忽略");
+            return false;
+        }
+        settled = true;
+
+        JsonObject selection;
+        try {
+            selection = JsonParser.parseString(reply.getData()).getAsJsonObject();
+        } catch (Exception e) {
+            Log.d(TAG, "服务器不支持能力协商，使用普通JSON：" + reply.getData());
+            return false;
+        }
+
+        int version = getInt(selection, "version", 0);
+        String codecName = getString(selection, "codec", CODEC_JSON);
+        if (version != VERSION || !CODEC_JSON.equals(codecName)) {
+            Log.e(TAG, "服务器选择了不支持的协议，使用普通JSON：" + selection);
+            return false;
+        }
+
+        // 压缩
+        FrameCodec selected = null;
+        String compression = getString(selection, "compression", COMPRESSION_NONE);
+        if (FrameCodec.NAME.equals(compression)) {
+            // permessage-deflate已经在压缩了，应用层不用再压一遍
+            selected = permessageDeflate ? null : new FrameCodec();
+        } else if (!COMPRESSION_NONE.equals(compression)) {
+            Log.e(TAG, "服务器选择了不支持的压缩方式，使用普通JSON：" + compression);
+            return false;
+        }
+
+        // 分片大小：不超过客户端自己的，也不能小得离谱
+        int frameSize = getInt(selection, "maxFrameSize", Fragmenter.FRAGMENT_SIZE);
+        maxFrameSize = Math.max(Fragmenter.MIN_FRAGMENT_SIZE, Math.min(frameSize, Fragmenter.FRAGMENT_SIZE));
+        batching = getBoolean(selection, "batching");
+        codec = selected;
+
+        Log.d(TAG, "协商完成：压缩=" + compression
+                + (selected != null ? "（应用层）" : "")
+                + "，batching=" + batching
+                + "，maxFrameSize=" + maxFrameSize);
+        return true;
+    }
+
+    // ========== 协商结果 ==========
+
+    /**
+     * 应用层压缩，没有启用时返回null
+     */
+    FrameCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * 一帧最多多少字符（超过的消息分片发送）
+     */
+    int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * 服务器是否会发送batch消息
+     */
+    boolean isBatching() {
+        return batching;
+    }
+
+    /**
+     * 连接断开，释放压缩器
+     */
+    synchronized void close() {
+        closed = true;
+        if (codec != null) {
+            codec.close();
+        }
+    }
+
+    // ========== 内部实现 ==========
+
+    private static int getInt(JsonObject object, String field, int defaultValue) {
+        try {
+            JsonElement element = object.get(field);
+            return element != null && !element.isJsonNull() ? element.getAsInt() : defaultValue;
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    private static String getString(JsonObject object, String field, String defaultValue) {
+        try {
+            JsonElement element = object.get(field);
+            return element != null && !element.isJsonNull() ? element.getAsString() : defaultValue;
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    private static boolean getBoolean(JsonObject object, String field) {
+        try {
+            JsonElement element = object.get(field);
+            return element != null && !element.isJsonNull() && element.getAsBoolean();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
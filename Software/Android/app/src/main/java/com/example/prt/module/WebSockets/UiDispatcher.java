@@ -0,0 +1,122 @@
+package com.example.prt.module.WebSockets;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 主线程消息分发器（按帧批量分发）
+ *
+ * 以前每收到一条消息就mainHandler.post()一次，消息很密集时（比如重连后的同步、
+ * 高频的位置推送），主线程的消息队列里塞满了一个个小任务，点击和绘制都要排队
+ *
+ * 现在的做法：
+ * 1. 网络线程收到消息后放进一个有界的接收缓冲区（InboundBuffer），
+ *    消息太多时按类型丢弃（视频丢最旧的、位置只留最新的、登录/通知/聊天不丢）
+ * 2. 在下一次屏幕刷新时（Choreographer帧回调）一次性取出来，通过EventBus分发
+ * 3. 每一帧最多用FRAME_BUDGET_NANOS的时间分发，超时的话剩下的消息留到下一帧，
+ *    保证主线程还有时间处理绘制和触摸
+ *
+ * 分发的顺序：同一通道（Lane）内和收到的顺序一致，不同通道之间按权重交错，
+ * connect、disconnect和前后的消息严格按收到的顺序（见InboundBuffer）
+ */
+final class UiDispatcher {
+
+    // 日志标签
+    private static final String TAG = "UiDispatcher";
+
+    // 每一帧最多用于分发消息的时间（纳秒），一帧大约16ms，留一半给绘制
+    private static final long FRAME_BUDGET_NANOS = 8_000_000L;
+
+    // 待分发的消息
+    private final InboundBuffer queue = new InboundBuffer();
+
+    // 是否已经预约了帧回调
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    // 主线程Handler（用于在主线程预约帧回调，Choreographer只能在主线程获取）
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 在主线程预约帧回调
+    private final Runnable scheduleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+
+    // 帧回调：分发消息
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            drain();
+        }
+    };
+
+    /**
+     * 把消息交给主线程分发（可以在任意线程调用）
+     *
+     * @param message 要通过EventBus分发的消息
+     */
+    void dispatch(WebSocketMessage message) {
+        queue.offer(message);
+        if (scheduled.compareAndSet(false, true)) {
+            mainHandler.post(scheduleRunnable);
+        }
+    }
+
+    /**
+     * 还没有分发的消息数
+     */
+    int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * 因为过载被丢弃（或被合并）的消息总数
+     */
+    long getShedCount() {
+        return queue.getTotalShedCount();
+    }
+
+    /**
+     * 某种类型因为过载被丢弃（或被合并）的消息数
+     */
+    long getShedCount(String type) {
+        return queue.getShedCount(type);
+    }
+
+    /**
+     * 分发队列里的消息，直到队列为空或者用完这一帧的时间（在主线程执行）
+     */
+    private void drain() {
+        long start = System.nanoTime();
+        int count = 0;
+        WebSocketMessage message;
+        while ((message = queue.poll()) != null) {
+            EventBus.getDefault().post(message);
+            count++;
+            if (System.nanoTime() - start > FRAME_BUDGET_NANOS) {
+                break;
+            }
+        }
+
+        if (!queue.isEmpty()) {
+            // 这一帧的时间用完了，剩下的下一帧继续
+            Log.d(TAG, "本帧分发" + count + "条，剩余" + queue.size() + "条留到下一帧");
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+            return;
+        }
+
+        scheduled.set(false);
+        // 清除标志之前刚好有新消息进来的话，它不会再预约，这里补上
+        if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+}
@@ -4,13 +4,13 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.example.prt.module.Network.NetworkCore;
+
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 
-import java.util.concurrent.TimeUnit;
-
 /**
  * WebSocket客户端工具类
  *
@@ -58,7 +58,7 @@ public class WebSocketClient {
     // 连接状态标志
     // true表示已连接，false表示未连接
     // 用这个变量可以判断当前是否可以发送消息
-    private boolean isConnected = false;
+    private volatile boolean isConnected = false;
 
     /**
      * 构造函数 - 创建WebSocketClient对象时会调用这个方法
@@ -72,6 +72,20 @@ public class WebSocketClient {
      * });
      */
     public WebSocketClient(String serverUrl, WebSocketListener listener) {
+        this(serverUrl, listener, createDefaultClient());
+    }
+
+    /**
+     * 构造函数 - 使用外部传入的OkHttpClient
+     *
+     * 多个WebSocketClient共用同一个OkHttpClient时，线程池、连接池、DNS缓存都是共享的，
+     * 比每个客户端各建一个省资源（比如传入NetworkCore.getInstance().getWebSocketClient()）
+     *
+     * @param serverUrl    服务器地址，例如："ws://192.168.1.100:8080"
+     * @param listener     消息监听器，用于接收各种事件通知
+     * @param okHttpClient 共用的OkHttpClient
+     */
+    public WebSocketClient(String serverUrl, WebSocketListener listener, OkHttpClient okHttpClient) {
         // 保存服务器地址
         this.serverUrl = serverUrl;
         // 保存监听器
@@ -81,24 +95,22 @@ public class WebSocketClient {
         // Looper是Android中的消息循环机制，主线程有一个默认的Looper
         this.mainHandler = new Handler(Looper.getMainLooper());
 
-        // 创建OkHttpClient对象，并配置一些参数
-        this.okHttpClient = new OkHttpClient.Builder()
-                // 设置连接超时时间为10秒
-                // 如果10秒内无法连接到服务器，就会触发连接失败
-                .connectTimeout(10, TimeUnit.SECONDS)
-                // 设置读取超时时间为10秒
-                // 如果10秒内没有收到服务器的数据，就会触发超时
-                .readTimeout(10, TimeUnit.SECONDS)
-                // 设置写入超时时间为10秒
-                // 如果10秒内无法发送数据到服务器，就会触发超时
-                .writeTimeout(10, TimeUnit.SECONDS)
-                // 构建OkHttpClient对象
-                .build();
+        // 保存OkHttpClient
+        this.okHttpClient = okHttpClient;
 
         // 打印日志，表示WebSocketClient对象创建成功
         Log.d(TAG, "WebSocketClient创建成功，服务器地址：" + serverUrl);
     }
 
+    /**
+     * 默认的OkHttpClient：全局共用的那一个（超时来自配置文件）
+     *
+     * 所有WebSocketClient共用NetworkCore的线程池、连接池和DNS缓存，不再各自新建
+     */
+    static OkHttpClient createDefaultClient() {
+        return NetworkCore.getInstance().getClient();
+    }
+
     /**
      * 连接到WebSocket服务器
      *
@@ -6,15 +6,23 @@ import android.os.Looper;
 import android.util.Log;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import com.example.prt.module.Location.LocationUpdate;
+import com.example.prt.module.Network.NetworkCore;
+import com.example.prt.module.Video.VideoStreamReceiver;
 
 import org.greenrobot.eventbus.EventBus;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
-
-import java.util.concurrent.TimeUnit;
+import okio.ByteString;
 
 /**
  * WebSocket管理器（单例模式）
@@ -28,6 +36,7 @@ import java.util.concurrent.TimeUnit;
  * 3. 消息路由（把不同类型的消息分发给不同模块）
  * 4. 心跳保活
  * 5. 断线重连
+ * 6. 连接后和服务器协商压缩等能力（见ProtocolHandshake）
  *
  * 什么是单例模式？
  * 单例模式确保一个类只有一个实例，并提供全局访问点
@@ -85,7 +94,7 @@ public class WebSocketManager {
     // OkHttpClient对象 - 用于创建WebSocket连接
     private OkHttpClient okHttpClient;
 
-    // WebSocket对象 - 代表当前的WebSocket连接
+    // WebSocket对象 - 代表当前的WebSocket连接（赋值时持有锁，见isCurrent）
     private WebSocket webSocket;
 
     // 服务器地址
@@ -94,8 +103,20 @@ public class WebSocketManager {
     // 连接状态
     private boolean isConnected = false;
 
-    // 主线程Handler - 用于在主线程执行代码
-    private Handler mainHandler;
+    // 主线程分发器 - 把收到的消息放进有界缓冲区，按帧批量交给主线程，通过EventBus分发
+    private final UiDispatcher uiDispatcher = new UiDispatcher();
+
+    // 发送调度器 - 按通道（控制/交互/批量）的优先级发送，大消息分片发送
+    private final OutboundScheduler outbound = new OutboundScheduler();
+
+    // 收到的分片 - 收齐之后还原成原来的消息
+    private final Fragmenter inboundFragments = new Fragmenter();
+
+    // 逻辑通道 - 在这一条连接上分出多条独立的消息流（带流量控制）
+    private final ChannelMux channelMux = new ChannelMux(this);
+
+    // 位置线程 - 按收到的顺序把每个定位点交给滤波、轨迹、围栏（见handleIncoming）
+    private final ExecutorService locationExecutor = Executors.newSingleThreadExecutor();
 
     // Gson对象 - 用于JSON的序列化和反序列化
     private Gson gson;
@@ -117,11 +138,8 @@ public class WebSocketManager {
 
     // 配置相关
     private static class Config {
+        // 超时和ping间隔由NetworkCore读取
         String serverUrl;
-        int connectTimeout;
-        int readTimeout;
-        int writeTimeout;
-        int pingInterval;
         long heartbeatInterval;
         int maxReconnectCount;
         long reconnectDelay;
@@ -136,23 +154,14 @@ public class WebSocketManager {
      * 只能通过getInstance()方法获取实例
      */
     private WebSocketManager() {
-        // 初始化主线程Handler
-        mainHandler = new Handler(Looper.getMainLooper());
-
         // 初始化Gson对象
         gson = new Gson();
 
         // 加载配置文件
         loadConfig();
 
-        // 初始化OkHttpClient（使用配置文件中的参数）
-        okHttpClient = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(10, TimeUnit.SECONDS)
-                .writeTimeout(10, TimeUnit.SECONDS)
-                // 设置ping间隔，OkHttp会自动发送ping帧保持连接
-                .pingInterval(20, TimeUnit.SECONDS)
-                .build();
+        // 使用全局共用的OkHttpClient（超时和ping间隔来自配置文件）
+        okHttpClient = NetworkCore.getInstance().getWebSocketClient();
 
         // 初始化心跳Handler
         heartbeatHandler = new Handler(Looper.getMainLooper());
@@ -206,111 +215,139 @@ public class WebSocketManager {
         Log.d(TAG, "开始连接到服务器：" + url);
 
         // 创建Request对象
+        // OkHttp会自动申请permessage-deflate压缩，其他能力连接之后再协商（见ProtocolHandshake）
         Request request = new Request.Builder()
                 .url(url)
                 .build();
 
         // 创建WebSocket连接
-        webSocket = okHttpClient.newWebSocket(request, new okhttp3.WebSocketListener() {
-
-            @Override
-            public void onOpen(WebSocket webSocket, Response response) {
-                Log.d(TAG, "WebSocket连接成功");
-                isConnected = true;
-                reconnectCount = 0; // 重置重连次数
-
-                // 启动心跳
-                startHeartbeat();
-
-                // 通过EventBus发送连接成功事件
-                // EventBus会把这个事件发送给所有订阅了这个事件的地方
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        WebSocketMessage message = new WebSocketMessage(
-                                WebSocketMessage.TYPE_CONNECT,
-                                "连接成功"
-                        );
-                        EventBus.getDefault().post(message);
+        // 加锁赋值：回调里用isCurrent()判断是不是当前连接，不能在赋值之前就判断
+        synchronized (this) {
+            webSocket = okHttpClient.newWebSocket(request, new okhttp3.WebSocketListener() {
+
+                // 这个连接的能力协商（里面有协商好的应用层压缩）
+                private ProtocolHandshake handshake;
+
+                // 下面的回调都先判断是不是当前连接：
+                // 重连、主动断开之后，旧连接的回调还可能晚到，不能把新连接的发送队列、分片、逻辑通道拆掉
+                @Override
+                public void onOpen(WebSocket webSocket, Response response) {
+                    if (!isCurrent(webSocket)) {
+                        Log.w(TAG, "旧连接打开了，直接关掉");
+                        webSocket.close(1000, "连接已被替换");
+                        return;
                     }
-                });
-            }
-
-            @Override
-            public void onMessage(WebSocket webSocket, String text) {
-                Log.d(TAG, "收到消息：" + text);
-
-                // 解析消息
-                try {
-                    // 使用Gson把JSON字符串转换成WebSocketMessage对象
-                    WebSocketMessage message = gson.fromJson(text, WebSocketMessage.class);
+                    Log.d(TAG, "WebSocket连接成功");
+                    isConnected = true;
+                    reconnectCount = 0; // 重置重连次数
+
+                    // 开始往这个连接发送消息（先按普通JSON发送），然后发起能力协商
+                    // 服务器回复之前、或者服务器不认识hello时，一直按普通JSON收发
+                    handshake = new ProtocolHandshake(isPermessageDeflate(response));
+                    outbound.attach(webSocket);
+                    sendMessage(handshake.createHello(), Lane.CONTROL);
+
+                    // 启动心跳
+                    startHeartbeat();
+
+                    // 通过EventBus发送连接成功事件
+                    // EventBus会把这个事件发送给所有订阅了这个事件的地方
+                    uiDispatcher.dispatch(new WebSocketMessage(
+                            WebSocketMessage.TYPE_CONNECT,
+                            "连接成功"
+                    ));
+                }
 
-                    // 如果是心跳消息，不需要分发
-                    if (message.isHeartbeat()) {
-                        Log.d(TAG, "收到心跳响应");
+                @Override
+                public void onMessage(WebSocket webSocket, String text) {
+                    if (!isCurrent(webSocket)) {
                         return;
                     }
-
-                    // 通过EventBus分发消息
-                    // 各个模块可以订阅EventBus来接收消息
-                    mainHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            EventBus.getDefault().post(message);
-                        }
-                    });
-
-                } catch (Exception e) {
-                    Log.e(TAG, "解析消息失败：" + e.getMessage());
+                    handleIncoming(text, handshake);
                 }
-            }
-
-            @Override
-            public void onClosing(WebSocket webSocket, int code, String reason) {
-                Log.d(TAG, "WebSocket连接正在关闭：" + reason);
-                isConnected = false;
-
-                // 停止心跳
-                stopHeartbeat();
 
-                // 发送断开连接事件
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        WebSocketMessage message = new WebSocketMessage(
-                                WebSocketMessage.TYPE_DISCONNECT,
-                                reason
-                        );
-                        EventBus.getDefault().post(message);
+                @Override
+                public void onMessage(WebSocket webSocket, ByteString bytes) {
+                    if (!isCurrent(webSocket)) {
+                        return;
                     }
-                });
-            }
-
-            @Override
-            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
-                Log.e(TAG, "WebSocket连接失败：" + t.getMessage());
-                isConnected = false;
-
-                // 停止心跳
-                stopHeartbeat();
+                    // 二进制帧是应用层压缩过的消息，解压之后和文本消息一样处理
+                    FrameCodec codec = handshake != null ? handshake.getCodec() : null;
+                    if (codec == null) {
+                        Log.w(TAG, "没有启用应用层压缩，忽略二进制帧");
+                        return;
+                    }
+                    String text = codec.decode(bytes);
+                    if (text == null) {
+                        // 压缩窗口和服务器对不上了，后面的消息都解不开，断开重连
+                        webSocket.cancel();
+                        return;
+                    }
+                    handleIncoming(text, handshake);
+                }
 
-                // 尝试重连
-                scheduleReconnect();
+                @Override
+                public void onClosing(WebSocket webSocket, int code, String reason) {
+                    Log.d(TAG, "WebSocket连接正在关闭：" + reason);
+                    if (handshake != null) {
+                        handshake.close();
+                    }
+                    if (!isCurrent(webSocket)) {
+                        // 旧连接（已经被disconnect()或者新的connect()收拾过了）
+                        return;
+                    }
+                    isConnected = false;
+                    outbound.detach();
+                    inboundFragments.clear();
+                    channelMux.closeAll("连接断开");
+
+                    // 停止心跳
+                    stopHeartbeat();
+
+                    // 发送断开连接事件
+                    uiDispatcher.dispatch(new WebSocketMessage(
+                            WebSocketMessage.TYPE_DISCONNECT,
+                            reason
+                    ));
+                }
 
-                // 发送连接失败事件
-                final String errorMsg = t.getMessage() != null ? t.getMessage() : "未知错误";
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        WebSocketMessage message = new WebSocketMessage(
-                                WebSocketMessage.TYPE_DISCONNECT,
-                                "连接失败：" + errorMsg
-                        );
-                        EventBus.getDefault().post(message);
+                @Override
+                public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                    Log.e(TAG, "WebSocket连接失败：" + t.getMessage());
+                    if (handshake != null) {
+                        handshake.close();
                     }
-                });
-            }
-        });
+                    if (!isCurrent(webSocket)) {
+                        // 旧连接失败不用重连，也不用通知
+                        return;
+                    }
+                    isConnected = false;
+                    outbound.detach();
+                    inboundFragments.clear();
+                    channelMux.closeAll("连接断开");
+
+                    // 停止心跳
+                    stopHeartbeat();
+
+                    // 尝试重连
+                    scheduleReconnect();
+
+                    // 发送连接失败事件
+                    final String errorMsg = t.getMessage() != null ? t.getMessage() : "未知错误";
+                    uiDispatcher.dispatch(new WebSocketMessage(
+                            WebSocketMessage.TYPE_DISCONNECT,
+                            "连接失败：" + errorMsg
+                    ));
+                }
+            });
+        }
+    }
+
+    /**
+     * 判断回调来自的连接是不是当前连接
+     */
+    private synchronized boolean isCurrent(WebSocket socket) {
+        return socket == webSocket;
     }
 
     /**
@@ -318,6 +355,7 @@ public class WebSocketManager {
      */
     public void disconnect() {
         Log.d(TAG, "断开WebSocket连接");
+        boolean wasConnected = isConnected;
 
         // 停止心跳
         stopHeartbeat();
@@ -325,13 +363,134 @@ public class WebSocketManager {
         // 取消重连任务
         cancelReconnect();
 
+        // 丢弃还没发送的消息，关闭所有逻辑通道
+        outbound.detach();
+        inboundFragments.clear();
+        channelMux.closeAll("客户端主动断开");
+
         // 关闭WebSocket连接
-        if (webSocket != null) {
-            webSocket.close(1000, "客户端主动断开");
-            webSocket = null;
+        // 置为null之后旧连接的回调都会被忽略，所以断开事件在这里发
+        synchronized (this) {
+            if (webSocket != null) {
+                webSocket.close(1000, "客户端主动断开");
+                webSocket = null;
+            }
         }
 
         isConnected = false;
+
+        if (wasConnected) {
+            uiDispatcher.dispatch(new WebSocketMessage(
+                    WebSocketMessage.TYPE_DISCONNECT,
+                    "客户端主动断开"
+            ));
+        }
+    }
+
+    // ========== 消息接收 ==========
+
+    /**
+     * 服务器是否在HTTP握手时同意了permessage-deflate（同意的话OkHttp会自动压缩大消息）
+     */
+    private static boolean isPermessageDeflate(Response response) {
+        String extensions = response.header("Sec-WebSocket-Extensions");
+        if (extensions != null && extensions.contains("permessage-deflate")) {
+            Log.d(TAG, "使用permessage-deflate压缩：" + extensions);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 处理收到的一条消息（在OkHttp的读线程调用）
+     *
+     * @param text      消息的JSON文本（压缩过的已经解压）
+     * @param handshake 这个连接的能力协商
+     */
+    private void handleIncoming(String text, ProtocolHandshake handshake) {
+        Log.d(TAG, "收到消息：" + text);
+
+        // 解析消息
+        try {
+            // 使用Gson把JSON字符串转换成WebSocketMessage对象
+            WebSocketMessage message = gson.fromJson(text, WebSocketMessage.class);
+
+            // 大消息的分片：收齐之后还原成原来的消息再处理
+            if (WebSocketMessage.TYPE_FRAGMENT.equals(message.getType())) {
+                String whole = inboundFragments.accept(message);
+                if (whole == null) {
+                    return;
+                }
+                message = gson.fromJson(whole, WebSocketMessage.class);
+            }
+
+            // 能力协商的回复：按服务器的选择切换编码，不用分发
+            if (WebSocketMessage.TYPE_HELLO.equals(message.getType())) {
+                if (handshake != null && handshake.onReply(message)) {
+                    outbound.configure(handshake.getCodec(), handshake.getMaxFrameSize());
+                }
+                return;
+            }
+
+            // 一帧里装的多条消息（data是消息对象的数组）：拆开逐条处理
+            if (WebSocketMessage.TYPE_BATCH.equals(message.getType())) {
+                for (JsonElement element : JsonParser.parseString(message.getData()).getAsJsonArray()) {
+                    handleIncoming(element.toString(), handshake);
+                }
+                return;
+            }
+
+            // 逻辑通道的消息交给对应的通道，不走EventBus
+            if (message.getChannel() != null && message.getChannel() != 0) {
+                channelMux.onMessage(message);
+                return;
+            }
+
+            // 如果是心跳消息，不需要分发
+            if (message.isHeartbeat()) {
+                Log.d(TAG, "收到心跳响应");
+                return;
+            }
+
+            // 视频帧不走主线程，直接交给视频接收器
+            // 视频接收器有自己的抖动缓冲区和解码线程，只把最新的画面交给界面
+            if (WebSocketMessage.TYPE_VIDEO_FRAME.equals(message.getType())) {
+                VideoStreamReceiver.getInstance().onFrame(message);
+                return;
+            }
+
+            // 位置更新也不走主线程：在这里解析一次，由位置线程通过EventBus分发LocationUpdate
+            // 滤波、轨迹保存、轨迹金字塔、电子围栏都要拿到每一个定位点，
+            // 不能进主线程的接收缓冲区（那里同一只宠物的位置会被合并），也不用各自再解析一遍
+            if (WebSocketMessage.TYPE_LOCATION_UPDATE.equals(message.getType())) {
+                final LocationUpdate update = LocationUpdate.parse(message);
+                if (update == null) {
+                    Log.w(TAG, "位置更新没有有效的坐标，忽略：" + message.getData());
+                    return;
+                }
+                locationExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        EventBus.getDefault().post(update);
+                    }
+                });
+                return;
+            }
+
+            // 视频开始/停止时清空视频缓冲区，然后照常分发
+            if (WebSocketMessage.TYPE_VIDEO_START.equals(message.getType())
+                    || WebSocketMessage.TYPE_VIDEO_STOP.equals(message.getType())) {
+                VideoStreamReceiver.getInstance().reset();
+            }
+
+            // 通过EventBus分发消息
+            // 各个模块可以订阅EventBus来接收消息
+            // 消息先进入分发队列，在下一帧和同一帧内到达的其他消息一起分发
+            uiDispatcher.dispatch(message);
+
+        } catch (Exception e) {
+            Log.e(TAG, "解析消息失败：" + e.getMessage());
+        }
     }
 
     // ========== 消息发送 ==========
@@ -339,8 +498,10 @@ public class WebSocketManager {
     /**
      * 发送消息
      *
+     * 消息按类型进入对应的通道（见Lane），由发送线程按优先级发送
+     *
      * @param message WebSocketMessage对象
-     * @return true表示发送成功，false表示发送失败
+     * @return true表示已放入发送队列，false表示发送失败（未连接）
      *
      * 使用示例：
      * WebSocketMessage msg = new WebSocketMessage(
@@ -350,6 +511,37 @@ public class WebSocketManager {
      * WebSocketManager.getInstance().sendMessage(msg);
      */
     public boolean sendMessage(WebSocketMessage message) {
+        return sendMessage(message, Lane.of(message.getType()));
+    }
+
+    /**
+     * 通过指定的通道发送消息
+     *
+     * 比如一条很大的聊天消息（带图片）可以指定Lane.BULK，不影响其他消息
+     *
+     * @param message WebSocketMessage对象
+     * @param lane    通道
+     * @return true表示已放入发送队列，false表示发送失败（未连接）
+     */
+    public boolean sendMessage(WebSocketMessage message, Lane lane) {
+        return sendMessage(message, lane, null);
+    }
+
+    /**
+     * 发送消息，并在消息真正交给连接或者被丢弃时回调
+     *
+     * sendMessage返回true只表示放进了发送队列；队列里的消息在连接断开时会被直接丢弃
+     * 需要确认消息发出去了才能做下一步的（比如上传完成后删除断点状态），用这个方法
+     *
+     * @param message  WebSocketMessage对象
+     * @param callback 发送结果回调；返回false时不会回调
+     * @return true表示已放入发送队列，false表示发送失败（未连接）
+     */
+    public boolean sendMessage(WebSocketMessage message, SendCallback callback) {
+        return sendMessage(message, Lane.of(message.getType()), callback);
+    }
+
+    private boolean sendMessage(WebSocketMessage message, Lane lane, SendCallback callback) {
         if (!isConnected || webSocket == null) {
             Log.e(TAG, "发送消息失败：WebSocket未连接");
             return false;
@@ -363,11 +555,11 @@ public class WebSocketManager {
         // 使用Gson把WebSocketMessage对象转换成JSON字符串
         String jsonString = gson.toJson(message);
 
-        // 发送消息
-        boolean result = webSocket.send(jsonString);
+        // 放进对应通道的发送队列
+        boolean result = outbound.enqueue(jsonString, lane, callback);
 
         if (result) {
-            Log.d(TAG, "消息已发送：" + jsonString);
+            Log.d(TAG, "消息已放入发送队列：" + jsonString);
         } else {
             Log.e(TAG, "消息发送失败：" + jsonString);
         }
@@ -393,6 +585,58 @@ public class WebSocketManager {
         return sendMessage(message);
     }
 
+    /**
+     * 发送结果回调（在发送线程或者断开连接的线程执行，不要做耗时操作）
+     */
+    public interface SendCallback {
+        /**
+         * 消息已经交给了连接（OkHttp），不代表服务器已经处理
+         */
+        void onSent();
+
+        /**
+         * 消息还没发出去连接就断开了，消息被丢弃
+         */
+        void onDropped();
+    }
+
+    /**
+     * 分发手机端自己产生的消息（比如电子围栏事件）
+     *
+     * 和服务器发来的消息进同一个接收缓冲区，按同样的规则排序和分发，
+     * 不会越过前后的连接/断开事件；和服务器消息一样在主线程通过EventBus分发
+     *
+     * @param message 要分发的消息（可以在任意线程调用）
+     */
+    public void dispatchLocal(WebSocketMessage message) {
+        uiDispatcher.dispatch(message);
+    }
+
+    // ========== 逻辑通道 ==========
+
+    /**
+     * 在当前连接上打开一个逻辑通道
+     *
+     * 视频、AI、社区等功能可以各开一个通道，互不影响：
+     * 每个通道有自己的流量控制，一个通道处理得慢不会拖累其他通道
+     * 连接断开时所有通道都会关闭（回调onClosed），重新连接后需要重新打开
+     *
+     * @param name     通道名称（告诉服务器这是什么功能，比如"video"、"ai"）
+     * @param lane     这个通道的消息用哪个优先级发送
+     * @param listener 通道的回调（在后台线程执行）
+     * @return 通道，未连接时返回null
+     *
+     * 使用示例：
+     * Channel channel = WebSocketManager.getInstance().openChannel("ai", Lane.INTERACTIVE, listener);
+     */
+    public Channel openChannel(String name, Lane lane, Channel.Listener listener) {
+        if (!isConnected) {
+            Log.e(TAG, "打开通道失败：WebSocket未连接");
+            return null;
+        }
+        return channelMux.open(name, lane, listener);
+    }
+
     // ========== 心跳保活 ==========
 
     /**
@@ -517,33 +761,39 @@ public class WebSocketManager {
         return serverUrl;
     }
 
+    /**
+     * 获取因为过载被丢弃（或被合并）的消息总数
+     */
+    public long getShedCount() {
+        return uiDispatcher.getShedCount();
+    }
+
+    /**
+     * 获取某种类型因为过载被丢弃（或被合并）的消息数
+     *
+     * @param type 消息类型，比如WebSocketMessage.TYPE_LOCATION
+     */
+    public long getShedCount(String type) {
+        return uiDispatcher.getShedCount(type);
+    }
+
     // ========== 配置加载 ==========
 
     /**
      * 加载配置文件
      *
-     * 从JSON文件中读取WebSocket配置参数
+     * 配置文件在assets目录下，由NetworkCore.init()读进来（这里没有Context）
      * 如果读取失败，使用默认值
      */
     private void loadConfig() {
+        String json = NetworkCore.getConfigJson();
+        if (json == null) {
+            Log.w(TAG, "没有读取配置文件（NetworkCore.init()没有调用或者失败），使用默认配置");
+            return;
+        }
         try {
-            // 读取JSON配置文件（使用相对路径）
-            java.io.File configFile = new java.io.File(
-                "app/src/main/java/com/example/prt/data/config/websocket_config.json"
-            );
-
-            // 如果相对路径找不到，尝试从类路径读取
-            if (!configFile.exists()) {
-                configFile = new java.io.File(
-                    "Software/Android/app/src/main/java/com/example/prt/data/config/websocket_config.json"
-                );
-            }
-
-            java.io.InputStream is = new java.io.FileInputStream(configFile);
-            java.io.InputStreamReader reader = new java.io.InputStreamReader(is, "UTF-8");
-
             // 使用Gson解析JSON
-            Config config = gson.fromJson(reader, Config.class);
+            Config config = gson.fromJson(json, Config.class);
 
             // 应用配置
             if (config != null) {
@@ -561,9 +811,6 @@ public class WebSocketManager {
                           ", 重连延迟=" + reconnectDelay + "ms");
             }
 
-            reader.close();
-            is.close();
-
         } catch (Exception e) {
             Log.w(TAG, "配置文件加载失败，使用默认配置：" + e.getMessage());
             // 使用默认值（已在变量声明时设置）
@@ -35,6 +35,12 @@ public class WebSocketMessage {
     public static final String TYPE_HEARTBEAT = "heartbeat";      // 心跳消息（用于保持连接）
     public static final String TYPE_CONNECT = "connect";          // 连接消息
     public static final String TYPE_DISCONNECT = "disconnect";    // 断开连接消息
+    public static final String TYPE_FRAGMENT = "fragment";        // 大消息的分片（收齐后还原成原来的消息）
+    public static final String TYPE_CHANNEL_OPEN = "channel_open";     // 打开逻辑通道（带接收窗口）
+    public static final String TYPE_CHANNEL_CLOSE = "channel_close";   // 关闭逻辑通道
+    public static final String TYPE_CHANNEL_CREDIT = "channel_credit"; // 逻辑通道的发送额度（流量控制）
+    public static final String TYPE_HELLO = "hello";              // 能力协商（连接后客户端提议，服务器选择）
+    public static final String TYPE_BATCH = "batch";              // 一帧里装多条消息（协商了batching才会收到）
 
     // 用户相关消息类型
     public static final String TYPE_LOGIN = "login";              // 登录消息
@@ -51,17 +57,26 @@ public class WebSocketMessage {
 
     // 定位相关消息类型
     public static final String TYPE_LOCATION = "location";        // 位置信息
-    public static final String TYPE_LOCATION_UPDATE = "location_update"; // 位置更新
+    public static final String TYPE_LOCATION_UPDATE = "location_update"; // 位置更新（解析成LocationUpdate后通过EventBus分发，不以WebSocketMessage分发）
+    public static final String TYPE_LOCATION_BATCH = "location_batch"; // 批量位置（增量编码）
+
+    // 电子围栏相关消息类型（由手机端GeofenceEngine生成，不经过服务器）
+    public static final String TYPE_GEOFENCE_ENTER = "geofence_enter"; // 宠物进入围栏
+    public static final String TYPE_GEOFENCE_EXIT = "geofence_exit";   // 宠物离开围栏
 
     // 视频相关消息类型
     public static final String TYPE_VIDEO_START = "video_start";  // 开始视频传输
     public static final String TYPE_VIDEO_STOP = "video_stop";    // 停止视频传输
     public static final String TYPE_VIDEO_FRAME = "video_frame";  // 视频帧数据
+    public static final String TYPE_VIDEO_CONTROL = "video_control"; // 视频质量反馈（推荐的分辨率/帧率/画质）
 
     // 社区相关消息类型
     public static final String TYPE_COMMUNITY = "community";      // 社区消息
     public static final String TYPE_NOTIFICATION = "notification"; // 通知消息
 
+    // 文件上传相关消息类型（文件本身通过HTTP分块上传，WebSocket只发完成通知）
+    public static final String TYPE_UPLOAD_COMPLETE = "upload_complete"; // 上传完成
+
     // ========== 消息字段 ==========
 
     /**
@@ -117,6 +132,15 @@ public class WebSocketMessage {
      */
     private String messageId;
 
+    /**
+     * 逻辑通道ID（可选）
+     *
+     * 同一条WebSocket连接上可以开多个逻辑通道（视频、AI、社区等各用一个），
+     * 带通道ID的消息交给对应的Channel处理，不走EventBus
+     * 为null表示普通消息（Gson序列化时不输出这个字段）
+     */
+    private Integer channel;
+
     // ========== 构造函数 ==========
 
     /**
@@ -242,6 +266,20 @@ public class WebSocketMessage {
         this.messageId = messageId;
     }
 
+    /**
+     * 获取逻辑通道ID（普通消息返回null）
+     */
+    public Integer getChannel() {
+        return channel;
+    }
+
+    /**
+     * 设置逻辑通道ID
+     */
+    public void setChannel(Integer channel) {
+        this.channel = channel;
+    }
+
     // ========== 工具方法 ==========
 
     /**
@@ -259,6 +297,7 @@ public class WebSocketMessage {
                 ", timestamp=" + timestamp +
                 ", token='" + token + '\'' +
                 ", messageId='" + messageId + '\'' +
+                ", channel=" + channel +
                 '}';
     }
 
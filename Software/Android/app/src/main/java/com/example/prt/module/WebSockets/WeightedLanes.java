@@ -0,0 +1,150 @@
+package com.example.prt.module.WebSockets;
+
+import java.util.ArrayDeque;
+import java.util.function.Predicate;
+
+/**
+ * 按权重轮流取出的三条队列（控制、交互、批量）
+ *
+ * 每一轮每条通道最多取出Lane.weight个，按控制→交互→批量的顺序取，
+ * 一轮里所有有内容的通道都取完了配额，就开始下一轮
+ * 这样控制消息总是最先处理，但批量通道每一轮至少也能处理一个，不会饿死
+ *
+ * 同一条通道内的顺序不变
+ *
+ * 注意：这个类不是线程安全的，由调用方加锁
+ *
+ * @param <T> 队列里的元素
+ */
+final class WeightedLanes<T> {
+
+    private static final Lane[] LANES = Lane.values();
+
+    // 每条通道一个队列，下标是Lane.ordinal()
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<T>[] queues = new ArrayDeque[LANES.length];
+
+    // 这一轮每条通道还能取多少个
+    private final int[] credits = new int[LANES.length];
+
+    // 元素总数
+    private int size = 0;
+
+    WeightedLanes() {
+        for (int i = 0; i < LANES.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        refill();
+    }
+
+    /**
+     * 加到指定通道的末尾
+     */
+    void add(Lane lane, T item) {
+        queues[lane.ordinal()].addLast(item);
+        size++;
+    }
+
+    /**
+     * 按权重取出下一个元素
+     *
+     * @return 元素，全部为空时返回null
+     */
+    T poll() {
+        if (size == 0) {
+            return null;
+        }
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < LANES.length; i++) {
+                if (credits[i] > 0 && !queues[i].isEmpty()) {
+                    credits[i]--;
+                    size--;
+                    return queues[i].pollFirst();
+                }
+            }
+            // 有内容的通道都用完了这一轮的配额，开始下一轮
+            refill();
+        }
+        return null;
+    }
+
+    /**
+     * 某条通道最前面的元素（不取出）
+     *
+     * @return 元素，这条通道为空时返回null
+     */
+    T peek(Lane lane) {
+        return queues[lane.ordinal()].peekFirst();
+    }
+
+    /**
+     * 不按权重，直接从某条通道取出最前面的元素
+     *
+     * @return 元素，这条通道为空时返回null
+     */
+    T poll(Lane lane) {
+        T item = queues[lane.ordinal()].pollFirst();
+        if (item != null) {
+            size--;
+        }
+        return item;
+    }
+
+    /**
+     * 某条通道的队列（只用于遍历，不要直接增删元素）
+     */
+    Iterable<T> queue(Lane lane) {
+        return queues[lane.ordinal()];
+    }
+
+    /**
+     * 移除所有满足条件的元素
+     *
+     * @return 移除的个数
+     */
+    int removeIf(Predicate<? super T> filter) {
+        int removed = 0;
+        for (ArrayDeque<T> queue : queues) {
+            int before = queue.size();
+            queue.removeIf(filter);
+            removed += before - queue.size();
+        }
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * 某条通道里的元素个数
+     */
+    int size(Lane lane) {
+        return queues[lane.ordinal()].size();
+    }
+
+    /**
+     * 元素总数
+     */
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空所有通道
+     */
+    void clear() {
+        for (ArrayDeque<T> queue : queues) {
+            queue.clear();
+        }
+        size = 0;
+        refill();
+    }
+
+    private void refill() {
+        for (int i = 0; i < LANES.length; i++) {
+            credits[i] = LANES[i].weight;
+        }
+    }
+}
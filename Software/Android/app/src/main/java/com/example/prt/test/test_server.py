@@ -25,14 +25,34 @@ WebSocket 测试服务器
 import asyncio
 import websockets
 import json
+import os
+import re
+import threading
 import time
+import uuid
+import zlib
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
 
 # 服务器配置
 HOST = "127.0.0.1"
 PORT = 8080
+HTTP_PORT = 8081  # 分块上传的 HTTP 接口（模拟 MobileHttpController）
 
+# 上传完成的文件保存在这里
+UPLOAD_DIR = os.path.join(os.path.dirname(os.path.abspath(__file__)), "uploads")
 
-def create_message(msg_type, data, token=None):
+# 大消息分片：超过这个长度（字符）的消息切成多片发送，和客户端的 Fragmenter 一致
+FRAGMENT_SIZE = 16 * 1024
+
+# 逻辑通道的接收窗口（条），和客户端的 Channel.RECEIVE_WINDOW 一致
+CHANNEL_WINDOW = 64
+
+# 聊天记录（用于 chat_history 增量同步）
+# 每条：{"messageId": ..., "content": ..., "timestamp": ..., "outgoing": ...}
+chat_log = []
+
+
+def create_message(msg_type, data, token=None, message_id=None, channel=None):
     """
     创建符合 Android 客户端格式的消息
 
@@ -40,6 +60,8 @@ def create_message(msg_type, data, token=None):
     - msg_type: 消息类型（例如：chat、ai_response、location 等）
     - data: 消息数据（字符串）
     - token: 用户认证 token（可选）
+    - message_id: 消息ID（可选），AI 回复用它和请求对应
+    - channel: 逻辑通道ID（可选），在哪个通道上发送
 
     返回值：
     - JSON 格式的字符串
@@ -54,9 +76,131 @@ def create_message(msg_type, data, token=None):
     if token:
         message["token"] = token
 
+    # 如果提供了 message_id，则添加到消息中
+    if message_id:
+        message["messageId"] = message_id
+
+    # 如果提供了 channel，则添加到消息中
+    if channel:
+        message["channel"] = channel
+
     return json.dumps(message, ensure_ascii=False)
 
 
+# 正在进行的上传：uploadId → {"fileName", "size", "chunkCount", "chunks": {序号: 数据}}
+uploads = {}
+uploads_lock = threading.Lock()
+
+
+class UploadHandler(BaseHTTPRequestHandler):
+    """
+    分块上传的 HTTP 接口（和客户端 UploadEngine 对应）
+
+    - POST /upload                        创建上传任务，返回 {"uploadId"}
+    - PUT  /upload/{uploadId}/chunks/{n}  上传第 n 块，请求头 X-Chunk-Crc32 是这块的 CRC32
+    - POST /upload/{uploadId}/complete    所有块都传完，拼成完整文件，返回 {"fileId"}
+    """
+
+    def _reply(self, code, body=None):
+        data = json.dumps(body or {}, ensure_ascii=False).encode("utf-8")
+        self.send_response(code)
+        self.send_header("Content-Type", "application/json; charset=utf-8")
+        self.send_header("Content-Length", str(len(data)))
+        self.end_headers()
+        self.wfile.write(data)
+
+    def _body(self):
+        return self.rfile.read(int(self.headers.get("Content-Length", 0)))
+
+    def do_POST(self):
+        if self.path == "/upload":
+            request = json.loads(self._body() or b"{}")
+            upload_id = uuid.uuid4().hex
+            with uploads_lock:
+                uploads[upload_id] = {
+                    "fileName": request.get("fileName", "file"),
+                    "size": request.get("size", 0),
+                    "chunkCount": request.get("chunkCount", 1),
+                    "chunks": {}
+                }
+            print(f"[上传] 创建上传任务 {upload_id}：{request}")
+            self._reply(200, {"uploadId": upload_id})
+            return
+
+        match = re.fullmatch(r"/upload/(\w+)/complete", self.path)
+        if match:
+            self._body()
+            with uploads_lock:
+                upload = uploads.get(match.group(1))
+                if upload is None:
+                    self._reply(404, {"error": "unknown upload"})
+                    return
+                missing = [i for i in range(upload["chunkCount"]) if i not in upload["chunks"]]
+                if missing:
+                    self._reply(409, {"error": "missing chunks", "missing": missing})
+                    return
+                del uploads[match.group(1)]
+            file_id = uuid.uuid4().hex
+            os.makedirs(UPLOAD_DIR, exist_ok=True)
+            path = os.path.join(UPLOAD_DIR, f"{file_id}_{os.path.basename(upload['fileName'])}")
+            with open(path, "wb") as f:
+                for i in range(upload["chunkCount"]):
+                    f.write(upload["chunks"][i])
+            print(f"[上传] 上传完成：{path}")
+            self._reply(200, {"fileId": file_id})
+            return
+
+        self._reply(404, {"error": "not found"})
+
+    def do_PUT(self):
+        match = re.fullmatch(r"/upload/(\w+)/chunks/(\d+)", self.path)
+        if not match:
+            self._reply(404, {"error": "not found"})
+            return
+        data = self._body()
+        with uploads_lock:
+            upload = uploads.get(match.group(1))
+        if upload is None:
+            self._reply(404, {"error": "unknown upload"})
+            return
+        # 校验这一块的 CRC32，不对就让客户端重传
+        expected = self.headers.get("X-Chunk-Crc32", "")
+        actual = f"{zlib.crc32(data) & 0xffffffff:08x}"
+        if expected.lower() != actual:
+            print(f"[上传] 第 {match.group(2)} 块校验失败：{expected} != {actual}")
+            self._reply(400, {"error": "checksum mismatch"})
+            return
+        with uploads_lock:
+            upload["chunks"][int(match.group(2))] = data
+        self._reply(200)
+
+    def log_message(self, format, *args):
+        # 每块都打印太多了，只打印上面的关键信息
+        pass
+
+
+async def send_message(websocket, text):
+    """
+    发送一条消息，太长的消息切成分片（type 为 fragment）一片一片地发
+
+    每片的 data 是 {"id": 消息ID, "index": 序号, "count": 总片数, "payload": 原消息的一段}
+    客户端收齐之后按顺序拼起来就是原来的消息
+    """
+    if len(text) <= FRAGMENT_SIZE:
+        await websocket.send(text)
+        return
+    fragment_id = uuid.uuid4().hex
+    pieces = [text[i:i + FRAGMENT_SIZE] for i in range(0, len(text), FRAGMENT_SIZE)]
+    for index, piece in enumerate(pieces):
+        await websocket.send(create_message("fragment", json.dumps({
+            "id": fragment_id,
+            "index": index,
+            "count": len(pieces),
+            "payload": piece
+        }, ensure_ascii=False)))
+    print(f"[分片] 大消息切成 {len(pieces)} 片发送")
+
+
 async def handle_client(websocket):
     """
     处理客户端连接
@@ -73,6 +217,12 @@ async def handle_client(websocket):
     print(f"[连接] 新客户端已连接：{client_ip}")
     print(f"{'='*60}\n")
 
+    # 正在重组的分片：消息ID → 各片内容
+    fragments = {}
+
+    # 逻辑通道：通道ID → {"name": 名称, "credit": 还能发给客户端的条数, "received": 上次补额度后收到的条数}
+    channels = {}
+
     try:
         # 发送欢迎消息
         welcome_msg = create_message("connect", "欢迎连接到测试服务器！")
@@ -86,7 +236,54 @@ async def handle_client(websocket):
             try:
                 # 解析 JSON 消息
                 msg_data = json.loads(message)
+
+                # 大消息的分片：收齐之后还原成原来的消息再处理
+                if msg_data.get("type") == "fragment":
+                    fragment = json.loads(msg_data.get("data", "{}"))
+                    parts = fragments.setdefault(fragment["id"], [None] * fragment["count"])
+                    parts[fragment["index"]] = fragment["payload"]
+                    if any(part is None for part in parts):
+                        continue
+                    del fragments[fragment["id"]]
+                    message = "".join(parts)
+                    msg_data = json.loads(message)
+                    print(f"[分片] 收齐 {len(parts)} 片，还原成 {msg_data.get('type')} 消息")
+
                 msg_type = msg_data.get("type", "unknown") # 获取消息类型
+                channel_id = msg_data.get("channel") # 逻辑通道ID（普通消息没有）
+
+                # 逻辑通道的控制消息
+                if channel_id:
+                    if msg_type == "channel_open":
+                        # 打开通道：记下客户端的接收窗口，回复服务器的接收窗口
+                        request = json.loads(msg_data.get("data") or "{}")
+                        channels[channel_id] = {
+                            "name": request.get("name"),
+                            "credit": request.get("window", 0),
+                            "received": 0
+                        }
+                        print(f"[通道] 打开通道 {channel_id}（{request.get('name')}）")
+                        await websocket.send(create_message(
+                            "channel_open", json.dumps({"window": CHANNEL_WINDOW}), channel=channel_id))
+                        continue
+                    if msg_type == "channel_credit":
+                        if channel_id in channels:
+                            channels[channel_id]["credit"] += json.loads(msg_data.get("data") or "{}").get("credit", 0)
+                        continue
+                    if msg_type == "channel_close":
+                        channels.pop(channel_id, None)
+                        print(f"[通道] 客户端关闭通道 {channel_id}")
+                        continue
+                    if channel_id not in channels:
+                        print(f"[通道] 未知通道 {channel_id}，忽略")
+                        continue
+                    # 通道的数据消息：处理完半个窗口就给客户端补额度
+                    state = channels[channel_id]
+                    state["received"] += 1
+                    if state["received"] >= CHANNEL_WINDOW // 2:
+                        await websocket.send(create_message(
+                            "channel_credit", json.dumps({"credit": state["received"]}), channel=channel_id))
+                        state["received"] = 0
                 msg_content = msg_data.get("data", "") # 获取消息内容
                 msg_token = msg_data.get("token", None) # 获取消息token
 
@@ -101,20 +298,68 @@ async def handle_client(websocket):
 
                 if msg_type == "chat":
                     # 聊天消息：回复一个简单的确认消息
+                    # 客户端发的消息和服务器的回复都记下来，供 chat_history 同步
+                    reply_id = uuid.uuid4().hex
                     response = create_message(
                         "chat",
                         f"服务器收到你的消息：{msg_content}",
-                        msg_token
+                        msg_token,
+                        reply_id
                     )
-
-                elif msg_type == "ai_request":
-                    # AI 请求：模拟 AI 回复
+                    chat_log.append({
+                        "messageId": msg_data.get("messageId") or uuid.uuid4().hex,
+                        "content": msg_content,
+                        "timestamp": msg_data.get("timestamp", int(time.time() * 1000)),
+                        "outgoing": True
+                    })
+                    chat_log.append({
+                        "messageId": reply_id,
+                        "content": f"服务器收到你的消息：{msg_content}",
+                        "timestamp": json.loads(response)["timestamp"],
+                        "outgoing": False
+                    })
+
+                elif msg_type == "chat_history":
+                    # 聊天历史增量同步：只返回 since 之后（含）的消息，按 (timestamp, messageId) 排序
+                    # 带 afterId 时只返回 (timestamp, messageId) 排在 (since, afterId) 之后的消息
+                    request = json.loads(msg_content or "{}")
+                    since = request.get("since", 0)
+                    after_id = request.get("afterId")
+                    limit = request.get("limit", 200)
+                    if after_id is None:
+                        newer = [m for m in chat_log if m["timestamp"] >= since]
+                    else:
+                        newer = [m for m in chat_log
+                                 if (m["timestamp"], m["messageId"]) > (since, after_id)]
+                    newer.sort(key=lambda m: (m["timestamp"], m["messageId"]))
                     response = create_message(
-                        "ai_response",
-                        f"这是 AI 对「{msg_content}」的模拟回复：你好！我是测试服务器的模拟 AI。",
+                        "chat_history",
+                        json.dumps({
+                            "messages": newer[:limit],
+                            "more": len(newer) > limit
+                        }, ensure_ascii=False),
                         msg_token
                     )
 
+                elif msg_type == "ai_request":
+                    # AI 请求：模拟 AI 边生成边发送的分片回复
+                    # 每片的 data 是 {"seq": 序号, "delta": 新增文字, "done": 是否最后一片}
+                    # messageId 和请求的 messageId 相同，客户端用它把分片拼起来
+                    reply = f"这是 AI 对「{msg_content}」的模拟回复：你好！我是测试服务器的模拟 AI。"
+                    request_id = msg_data.get("messageId")
+                    pieces = [reply[i:i + 4] for i in range(0, len(reply), 4)]
+                    for seq, piece in enumerate(pieces):
+                        chunk = json.dumps({
+                            "seq": seq,
+                            "delta": piece,
+                            "done": seq == len(pieces) - 1
+                        }, ensure_ascii=False)
+                        chunk_msg = create_message("ai_response", chunk, msg_token, request_id, channel_id)
+                        await websocket.send(chunk_msg)
+                        print(f"[发送] {chunk_msg}")
+                        await asyncio.sleep(0.05)
+                    print()
+
                 elif msg_type == "location":
                     # 位置消息：确认收到位置信息
                     response = create_message(
@@ -151,9 +396,21 @@ async def handle_client(websocket):
                         msg_token
                     )
 
+                # 通道上的消息在同一个通道上回复，用掉一条客户端给的额度
+                if response and channel_id:
+                    state = channels[channel_id]
+                    if state["credit"] <= 0:
+                        print(f"[通道] 通道 {channel_id} 没有额度了，丢弃回复\n")
+                        response = None
+                    else:
+                        state["credit"] -= 1
+                        reply = json.loads(response)
+                        reply["channel"] = channel_id
+                        response = json.dumps(reply, ensure_ascii=False)
+
                 # 发送回复消息
                 if response:
-                    await websocket.send(response)
+                    await send_message(websocket, response)
                     print(f"[发送] {response}\n")
 
             except json.JSONDecodeError:
@@ -185,6 +442,7 @@ async def main():
     print("WebSocket 测试服务器")
     print("="*60)
     print(f"服务器地址：ws://{HOST}:{PORT}")
+    print(f"上传接口：http://{HOST}:{HTTP_PORT}/upload")
     print(f"启动时间：{time.strftime('%Y-%m-%d %H:%M:%S')}")
     print("="*60)
     print("\n等待客户端连接...\n")
@@ -194,6 +452,10 @@ async def main():
     # 参数一：处理客户端连接的函数
     # 参数二：服务器地址
     # 参数三：服务器端口
+    # 启动分块上传的 HTTP 服务器（在后台线程运行）
+    http_server = ThreadingHTTPServer((HOST, HTTP_PORT), UploadHandler)
+    threading.Thread(target=http_server.serve_forever, daemon=True).start()
+
     async with websockets.serve(handle_client, HOST, PORT):
         # 保持服务器运行
         await asyncio.Future()  # 永远等待（直到程序被终止）
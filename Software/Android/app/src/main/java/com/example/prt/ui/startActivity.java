@@ -15,6 +15,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.example.prt.MainActivity;
 import com.example.prt.R;
 import com.example.prt.module.Auth.AuthManager;
+import com.example.prt.module.Network.NetworkCore;
 import com.example.prt.module.WebSockets.WebSocketManager;
 
 import org.greenrobot.eventbus.EventBus;
@@ -139,6 +140,9 @@ public class startActivity extends AppCompatActivity {
      * 获取WebSocketManager和AuthManager的单例实例
      */
     private void initManagers() {
+        // 读取网络配置（assets/websocket_config.json），要在第一次获取WebSocketManager之前
+        NetworkCore.init(getApplicationContext());
+
         // 获取WebSocketManager单例
         webSocketManager = WebSocketManager.getInstance();
 
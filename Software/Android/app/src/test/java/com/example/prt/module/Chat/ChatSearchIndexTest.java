@@ -0,0 +1,140 @@
+package com.example.prt.module.Chat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ChatSearchIndex的单元测试
+ *
+ * 1. 分词：建索引时中文切成一元组和二元组，搜索时只切二元组（只有一个字时用这个字）
+ * 2. 搜索：一个字、两个字以上的中文关键词，英文关键词
+ * 3. 建索引期间收到的消息在建完之后可以搜到
+ */
+public class ChatSearchIndexTest {
+
+    // ========== 分词 ==========
+
+    @Test
+    public void tokenizeForIndexAddsUnigrams() {
+        List<String> tokens = new ArrayList<>();
+        ChatSearchIndex.tokenize("兽医说", tokens, true);
+        assertEquals(Arrays.asList("兽", "医", "兽医", "说", "医说"), tokens);
+    }
+
+    @Test
+    public void tokenizeForQueryUsesBigrams() {
+        List<String> tokens = new ArrayList<>();
+        ChatSearchIndex.tokenize("兽医说", tokens, false);
+        assertEquals(Arrays.asList("兽医", "医说"), tokens);
+    }
+
+    @Test
+    public void tokenizeSingleCharacter() {
+        List<String> query = new ArrayList<>();
+        ChatSearchIndex.tokenize("猫", query, false);
+        assertEquals(Arrays.asList("猫"), query);
+
+        // 建索引时单独一个字也只出现一次
+        List<String> index = new ArrayList<>();
+        ChatSearchIndex.tokenize("猫", index, true);
+        assertEquals(Arrays.asList("猫"), index);
+    }
+
+    @Test
+    public void tokenizeMixedText() {
+        List<String> tokens = new ArrayList<>();
+        ChatSearchIndex.tokenize("Cat吃了2次", tokens, false);
+        assertEquals(Arrays.asList("cat", "吃了", "2", "次"), tokens);
+    }
+
+    // ========== 搜索 ==========
+
+    @Test
+    public void singleCharacterQueryMatchesInsideLongerText() {
+        ChatSearchIndex index = build(
+                "今天带猫去了医院",
+                "狗狗吃了两碗饭",
+                "晚上一起散步");
+
+        assertArrayEquals(new long[]{1}, index.search("猫", 10));
+        assertArrayEquals(new long[]{2}, index.search("狗", 10));
+        assertArrayEquals(new long[0], index.search("鱼", 10));
+    }
+
+    @Test
+    public void singleCharacterQueryMatchesSeveralMessages() {
+        ChatSearchIndex index = build(
+                "猫",
+                "小猫在睡觉",
+                "狗在院子里");
+
+        long[] result = index.search("猫", 10);
+        Arrays.sort(result);
+        assertArrayEquals(new long[]{1, 2}, result);
+    }
+
+    @Test
+    public void multiCharacterQueryStillUsesBigrams() {
+        ChatSearchIndex index = build(
+                "猫和狗在玩",
+                "猫狗都很乖");
+
+        // "猫狗"只在第2条里相邻出现，第1条只是分别含有这两个字
+        assertArrayEquals(new long[]{2}, index.search("猫狗", 10));
+    }
+
+    @Test
+    public void moreMatchedTermsRankFirst() {
+        ChatSearchIndex index = build(
+                "兽医说要打疫苗",
+                "兽医很好",
+                "明天去打疫苗");
+
+        long[] result = index.search("兽医 疫苗", 10);
+        assertEquals(3, result.length);
+        assertEquals(1, result[0]);
+    }
+
+    @Test
+    public void englishWordsAreCaseInsensitive() {
+        ChatSearchIndex index = build(
+                "Walk the dog",
+                "feed the CAT");
+
+        assertArrayEquals(new long[]{2}, index.search("cat", 10));
+        assertArrayEquals(new long[]{1}, index.search("DOG", 10));
+    }
+
+    @Test
+    public void messagesAddedDuringBuildAreIndexedAfterwards() {
+        ChatSearchIndex index = new ChatSearchIndex();
+        index.add(2, "新来的猫");
+        index.addExisting(1, "以前的狗");
+        assertArrayEquals(new long[0], index.search("猫", 10));
+
+        index.finishBuild();
+        assertEquals(2, index.size());
+        assertArrayEquals(new long[]{2}, index.search("猫", 10));
+        assertArrayEquals(new long[]{1}, index.search("狗", 10));
+    }
+
+    // ========== 工具方法 ==========
+
+    /**
+     * 按顺序建索引，消息ID从1开始
+     */
+    private static ChatSearchIndex build(String... texts) {
+        ChatSearchIndex index = new ChatSearchIndex();
+        for (int i = 0; i < texts.length; i++) {
+            index.addExisting(i + 1, texts[i]);
+        }
+        index.finishBuild();
+        return index;
+    }
+}
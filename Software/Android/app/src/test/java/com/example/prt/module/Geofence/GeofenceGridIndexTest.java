@@ -0,0 +1,107 @@
+package com.example.prt.module.Geofence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * GeofenceGridIndex的单元测试
+ *
+ * 索引可以多返回，但不能漏掉：离边界不到margin米的点一定要查到这个围栏
+ */
+public class GeofenceGridIndexTest {
+
+    private static final double CELL_SIZE = 0.005;
+    private static final double MARGIN = 10.0;
+
+    private final List<Geofence> out = new ArrayList<>();
+
+    @Test
+    public void neverMissesFenceWithinMargin() {
+        Random random = new Random(42);
+        GeofenceGridIndex index = new GeofenceGridIndex(CELL_SIZE, MARGIN);
+        List<Geofence> fences = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            // 正负经纬度都覆盖到（方格编号是负数的情况）
+            double lat = (random.nextDouble() - 0.5) * 0.2 + (i % 2 == 0 ? 39.9 : -33.9);
+            double lng = (random.nextDouble() - 0.5) * 0.2 + (i % 2 == 0 ? 116.4 : -70.6);
+            Geofence fence;
+            if (i % 3 == 0) {
+                double d = 0.001 + random.nextDouble() * 0.004;
+                fence = Geofence.polygon("p" + i, "p" + i,
+                        new double[]{lat - d, lat - d, lat + d, lat + d},
+                        new double[]{lng - d, lng + d, lng + d, lng - d});
+            } else {
+                fence = Geofence.circle("c" + i, "c" + i, lat, lng, 20 + random.nextDouble() * 800);
+            }
+            fences.add(fence);
+            index.add(fence);
+        }
+
+        int near = 0;
+        for (int i = 0; i < 200000; i++) {
+            Geofence target = fences.get(random.nextInt(fences.size()));
+            double lat = target.minLat + (random.nextDouble() - 0.5) * 2 * (target.maxLat - target.minLat);
+            double lng = target.minLng + (random.nextDouble() - 0.5) * 2 * (target.maxLng - target.minLng);
+            index.query(lat, lng, out);
+            for (Geofence fence : fences) {
+                if (fence.signedDistance(lat, lng) < MARGIN) {
+                    near++;
+                    assertTrue("漏掉了围栏 " + fence.getId() + " @ " + lat + "," + lng, out.contains(fence));
+                }
+            }
+        }
+        assertTrue(near > 10000);
+    }
+
+    @Test
+    public void farPointReturnsNothing() {
+        GeofenceGridIndex index = new GeofenceGridIndex(CELL_SIZE, MARGIN);
+        index.add(Geofence.circle("home", "家", 39.9, 116.4, 100));
+        index.query(40.5, 117.0, out);
+        assertTrue(out.isEmpty());
+    }
+
+    @Test
+    public void largeFenceIsAlwaysReturned() {
+        GeofenceGridIndex index = new GeofenceGridIndex(CELL_SIZE, MARGIN);
+        // 半径50公里，超过每个围栏的方格上限
+        Geofence city = Geofence.circle("city", "城市", 39.9, 116.4, 50000);
+        index.add(city);
+        index.query(39.9, 116.4, out);
+        assertEquals(1, out.size());
+        index.query(-10, 20, out);
+        assertEquals(1, out.size());
+
+        index.remove(city);
+        index.query(39.9, 116.4, out);
+        assertTrue(out.isEmpty());
+    }
+
+    @Test
+    public void removeAndClear() {
+        GeofenceGridIndex index = new GeofenceGridIndex(CELL_SIZE, MARGIN);
+        Geofence a = Geofence.circle("a", "a", 39.9, 116.4, 300);
+        Geofence b = Geofence.circle("b", "b", 39.9, 116.4, 600);
+        index.add(a);
+        index.add(b);
+
+        index.query(39.9, 116.4, out);
+        assertEquals(2, out.size());
+
+        index.remove(a);
+        index.query(39.9, 116.4, out);
+        assertEquals(1, out.size());
+        assertFalse(out.contains(a));
+
+        index.clear();
+        index.query(39.9, 116.4, out);
+        assertTrue(out.isEmpty());
+    }
+}
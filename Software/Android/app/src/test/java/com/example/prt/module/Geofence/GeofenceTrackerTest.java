@@ -0,0 +1,141 @@
+package com.example.prt.module.Geofence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GeofenceTracker的单元测试（滞回判断）
+ *
+ * 围栏：以(39.9, 116.4)为圆心、半径100米的圆，滞回距离10米
+ * 测试点都在圆心正北方向，offset表示离圆心多少米
+ */
+public class GeofenceTrackerTest {
+
+    private static final double CENTER_LAT = 39.9;
+    private static final double CENTER_LNG = 116.4;
+    private static final double RADIUS = 100;
+    private static final double HYSTERESIS = 10;
+
+    private GeofenceTracker tracker;
+
+    // 收到的事件："enter:pet1:home" 这样的字符串
+    private final List<String> events = new ArrayList<>();
+
+    private final GeofenceTracker.Listener listener = new GeofenceTracker.Listener() {
+        @Override
+        public void onTransition(boolean entered, String petId, Geofence fence, double lat, double lng) {
+            events.add((entered ? "enter:" : "exit:") + petId + ":" + fence.getId());
+        }
+    };
+
+    @Before
+    public void setUp() {
+        tracker = new GeofenceTracker(0.005, HYSTERESIS);
+        tracker.addFence(Geofence.circle("home", "家", CENTER_LAT, CENTER_LNG, RADIUS));
+    }
+
+    @Test
+    public void entersOnlyPastHysteresis() {
+        at("pet1", 150);
+        // 已经越过边界，但还在缓冲带里
+        at("pet1", RADIUS - 5);
+        assertTrue(events.isEmpty());
+        assertFalse(tracker.isInside("pet1", "home"));
+
+        at("pet1", RADIUS - 15);
+        assertEquals(list("enter:pet1:home"), events);
+        assertTrue(tracker.isInside("pet1", "home"));
+    }
+
+    @Test
+    public void exitsOnlyPastHysteresis() {
+        at("pet1", 0);
+        events.clear();
+
+        at("pet1", RADIUS + 5);
+        assertTrue(events.isEmpty());
+        assertTrue(tracker.isInside("pet1", "home"));
+
+        at("pet1", RADIUS + 15);
+        assertEquals(list("exit:pet1:home"), events);
+        assertFalse(tracker.isInside("pet1", "home"));
+    }
+
+    @Test
+    public void jitterOnBoundaryProducesNoEvents() {
+        at("pet1", 0);
+        events.clear();
+        for (int i = 0; i < 100; i++) {
+            at("pet1", RADIUS + (i % 2 == 0 ? 8 : -8));
+        }
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void petsAreTrackedSeparately() {
+        at("pet1", 0);
+        at("pet2", 500);
+        assertEquals(list("enter:pet1:home"), events);
+        assertTrue(tracker.isInside("pet1", "home"));
+        assertFalse(tracker.isInside("pet2", "home"));
+    }
+
+    @Test
+    public void jumpingFarAwayExits() {
+        at("pet1", 0);
+        events.clear();
+        // 直接跳到很远的地方（索引查不到这个围栏）
+        tracker.evaluate("pet1", CENTER_LAT + 1, CENTER_LNG + 1, listener);
+        assertEquals(list("exit:pet1:home"), events);
+        assertFalse(tracker.isInside("pet1", "home"));
+    }
+
+    @Test
+    public void removedFenceForgetsState() {
+        at("pet1", 0);
+        events.clear();
+        tracker.removeFence("home");
+        assertFalse(tracker.isInside("pet1", "home"));
+        at("pet1", 0);
+        assertTrue(events.isEmpty());
+
+        // 重新加回来，再次进入会重新报
+        tracker.addFence(Geofence.circle("home", "家", CENTER_LAT, CENTER_LNG, RADIUS));
+        at("pet1", 0);
+        assertEquals(list("enter:pet1:home"), events);
+    }
+
+    @Test
+    public void replacedFenceUsesNewShape() {
+        at("pet1", 50);
+        events.clear();
+        // 同一个ID换成更小的圆，宠物现在在外面20米
+        tracker.addFence(Geofence.circle("home", "家", CENTER_LAT, CENTER_LNG, 30));
+        at("pet1", 50);
+        assertEquals(list("exit:pet1:home"), events);
+    }
+
+    // ========== 工具方法 ==========
+
+    /**
+     * 宠物出现在圆心正北offset米的位置
+     */
+    private void at(String petId, double offset) {
+        tracker.evaluate(petId, CENTER_LAT + offset / Geofence.METERS_PER_DEGREE, CENTER_LNG, listener);
+    }
+
+    private static List<String> list(String... items) {
+        List<String> result = new ArrayList<>();
+        for (String item : items) {
+            result.add(item);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.prt.module.Location;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * LocationBatchCodec的单元测试
+ *
+ * 1. 编码再解码得到原来的点（经纬度精度1e-7度）
+ * 2. 边界情况：空批次、zigzag的极值、数量字段不合法、数据被截断、版本不对
+ * 3. 大小：和逐点发送JSON相比省了多少
+ */
+public class LocationBatchCodecTest {
+
+    // 经纬度编码精度（度）
+    private static final double COORD_DELTA = 1e-7;
+
+    // ========== 编码再解码 ==========
+
+    @Test
+    public void roundTripWalk() {
+        int count = 300;
+        double[] lats = new double[count];
+        double[] lngs = new double[count];
+        long[] times = new long[count];
+        fillWalk(lats, lngs, times, count, new Random(1));
+
+        LocationBatchCodec.Batch batch = LocationBatchCodec.decode(
+                LocationBatchCodec.encode(lats, lngs, times, count));
+
+        assertEquals(count, batch.count);
+        assertArrayEquals(lats, batch.lats, COORD_DELTA);
+        assertArrayEquals(lngs, batch.lngs, COORD_DELTA);
+        assertArrayEquals(times, batch.times);
+    }
+
+    @Test
+    public void roundTripUsesOnlyCount() {
+        // 数组比count长时只编码前count个点
+        double[] lats = {39.9, 39.91, 0, 0};
+        double[] lngs = {116.4, 116.41, 0, 0};
+        long[] times = {1000, 2000, 0, 0};
+
+        LocationBatchCodec.Batch batch = LocationBatchCodec.decode(
+                LocationBatchCodec.encode(lats, lngs, times, 2));
+
+        assertEquals(2, batch.count);
+        assertEquals(39.91, batch.lats[1], COORD_DELTA);
+        assertEquals(116.41, batch.lngs[1], COORD_DELTA);
+        assertEquals(2000, batch.times[1]);
+    }
+
+    // ========== 边界情况 ==========
+
+    @Test
+    public void emptyBatch() {
+        byte[] bytes = LocationBatchCodec.encode(new double[0], new double[0], new long[0], 0);
+
+        // 只有版本号和数量
+        assertEquals(2, bytes.length);
+        assertEquals(0, LocationBatchCodec.decode(bytes).count);
+    }
+
+    @Test
+    public void zigzagExtremes() {
+        // 经纬度在两个极端之间跳，时间差值超出long范围（编码时溢出，解码时再溢出回来）
+        double[] lats = {-90, 90, -90, 0, 90};
+        double[] lngs = {180, -180, 180, -180, 0};
+        long[] times = {Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MAX_VALUE, -1};
+
+        LocationBatchCodec.Batch batch = LocationBatchCodec.decode(
+                LocationBatchCodec.encode(lats, lngs, times, lats.length));
+
+        assertArrayEquals(lats, batch.lats, COORD_DELTA);
+        assertArrayEquals(lngs, batch.lngs, COORD_DELTA);
+        assertArrayEquals(times, batch.times);
+    }
+
+    @Test
+    public void countLargerThanDataIsRejected() {
+        // 版本1，声称有100个点，但后面只有3个字节
+        assertRejected(new byte[]{1, 100, 0, 0, 0});
+    }
+
+    @Test
+    public void hugeCountIsRejected() {
+        // 数量是一个10字节的varint（超大的数），不能按它分配数组
+        assertRejected(new byte[]{1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01});
+    }
+
+    @Test
+    public void truncatedDataIsRejected() {
+        double[] lats = {39.9, 39.91, 39.92};
+        double[] lngs = {116.4, 116.41, 116.42};
+        long[] times = {1000, 2000, 3000};
+        byte[] bytes = LocationBatchCodec.encode(lats, lngs, times, 3);
+
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertRejected(truncated);
+    }
+
+    @Test
+    public void unknownVersionIsRejected() {
+        assertRejected(new byte[]{(byte) (LocationBatchCodec.VERSION + 1), 0});
+    }
+
+    @Test
+    public void unterminatedVarintIsRejected() {
+        byte[] bytes = new byte[12];
+        bytes[0] = 1;
+        for (int i = 1; i < bytes.length; i++) {
+            bytes[i] = (byte) 0x80;
+        }
+        assertRejected(bytes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeCountOutOfRange() {
+        LocationBatchCodec.encode(new double[1], new double[1], new long[1], 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeNegativeCount() {
+        LocationBatchCodec.encode(new double[1], new double[1], new long[1], -1);
+    }
+
+    // ========== 大小 ==========
+
+    @Test
+    public void sizeComparedToJson() {
+        // 1秒一个点的散步轨迹，和LocationBatcher默认的批次差不多大
+        int count = 60;
+        double[] lats = new double[count];
+        double[] lngs = new double[count];
+        long[] times = new long[count];
+        fillWalk(lats, lngs, times, count, new Random(2));
+
+        int binary = LocationBatchCodec.encode(lats, lngs, times, count).length;
+
+        // 以前每个点单独发一条location消息
+        int json = 0;
+        for (int i = 0; i < count; i++) {
+            String message = "{\"type\":\"location\",\"data\":\"{\\\"lat\\\":" + lats[i]
+                    + ",\\\"lng\\\":" + lngs[i] + "}\",\"timestamp\":" + times[i] + "}";
+            json += message.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        double perPoint = (double) binary / count;
+        System.out.println("LocationBatchCodec: " + count + "个点 " + binary + "字节（每点"
+                + String.format("%.1f", perPoint) + "字节），逐条JSON " + json + "字节，"
+                + String.format("%.1f", (double) json / binary) + "倍");
+
+        // 相邻点的差值很小，每个点三个varint加起来不到8字节
+        assertTrue("每个点" + perPoint + "字节", perPoint < 8);
+        assertTrue("只有JSON的" + binary * 100 / json + "%", binary * 10 < json);
+    }
+
+    // ========== 工具方法 ==========
+
+    /**
+     * 生成一段1秒一个点、每秒走一两米的轨迹
+     */
+    private static void fillWalk(double[] lats, double[] lngs, long[] times, int count, Random random) {
+        double lat = 39.9042;
+        double lng = 116.4074;
+        long time = 1_760_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            lat += (random.nextDouble() - 0.5) * 2e-5;
+            lng += (random.nextDouble() - 0.5) * 2e-5;
+            time += 1000 + random.nextInt(50);
+            lats[i] = lat;
+            lngs[i] = lng;
+            times[i] = time;
+        }
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            LocationBatchCodec.decode(bytes);
+            fail("应该拒绝不合法的数据");
+        } catch (IllegalArgumentException expected) {
+            // 预期的异常
+        }
+    }
+}
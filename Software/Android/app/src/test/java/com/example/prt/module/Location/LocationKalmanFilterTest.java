@@ -0,0 +1,163 @@
+package com.example.prt.module.Location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * LocationKalmanFilter的单元测试
+ *
+ * 1. 宠物不动时：平滑后的位置比原始定位点更接近真实位置，抖动不算显著移动
+ * 2. 宠物匀速走动时：平滑后的位置跟得上，速度估计接近真实速度
+ * 3. 中断太久、时间倒退、精度很差的点
+ */
+public class LocationKalmanFilterTest {
+
+    // 测试位置（北京）
+    private static final double LAT = 39.9;
+    private static final double LNG = 116.4;
+
+    // 每度纬度对应的米数（和LocationKalmanFilter一样）
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    // ========== 不动 ==========
+
+    @Test
+    public void stationaryNoiseIsSmoothed() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        Random random = new Random(1);
+        double rawError = 0;
+        double smoothError = 0;
+        int moves = 0;
+        // 不滤波、直接拿原始定位点和上次报告的点比较时，算作移动的次数
+        int rawMoves = 0;
+        double reportedLat = 0;
+        double reportedLng = 0;
+        for (int i = 0; i < 120; i++) {
+            // 标准差5米的抖动，每秒一个点
+            double lat = LAT + random.nextGaussian() * 5 / METERS_PER_DEGREE;
+            double lng = LNG + random.nextGaussian() * 5 / metersPerDegreeLng();
+            boolean moved = filter.update(lat, lng, i * 1000L, 5);
+            if (i == 0) {
+                assertTrue(moved);
+                reportedLat = lat;
+                reportedLng = lng;
+                continue;
+            }
+            if (distance(lat, lng, reportedLat, reportedLng) >= 5) {
+                rawMoves++;
+                reportedLat = lat;
+                reportedLng = lng;
+            }
+            if (i >= 20) {
+                rawError += distance(lat, lng, LAT, LNG);
+                smoothError += distance(filter.getLatitude(), filter.getLongitude(), LAT, LNG);
+            }
+            if (moved) {
+                moves++;
+            }
+        }
+        // 平滑后的误差明显小于原始定位点的误差（大约一半）
+        assertTrue("smooth=" + smoothError + " raw=" + rawError, smoothError < rawError * 0.7);
+        // 抖动和阈值一样大，滤波之后偶尔还会超过阈值，但比不滤波少得多
+        assertTrue("moves=" + moves + " rawMoves=" + rawMoves, moves * 2 < rawMoves);
+        assertTrue(filter.getSpeed() < 1);
+    }
+
+    // ========== 走动 ==========
+
+    @Test
+    public void constantWalkIsTracked() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        Random random = new Random(2);
+        // 往北每秒1.5米
+        double speed = 1.5;
+        int moves = 0;
+        double trueLat = LAT;
+        for (int i = 0; i < 120; i++) {
+            trueLat = LAT + i * speed / METERS_PER_DEGREE;
+            double lat = trueLat + random.nextGaussian() * 3 / METERS_PER_DEGREE;
+            double lng = LNG + random.nextGaussian() * 3 / metersPerDegreeLng();
+            if (filter.update(lat, lng, i * 1000L, 3)) {
+                moves++;
+            }
+        }
+        assertTrue(distance(filter.getLatitude(), filter.getLongitude(), trueLat, LNG) < 5);
+        assertEquals(speed, filter.getSpeed(), 0.5);
+        // 走了180米，5米阈值：大约每3、4秒报一次移动
+        assertTrue("moves=" + moves, moves >= 25 && moves <= 45);
+    }
+
+    // ========== 特殊情况 ==========
+
+    @Test
+    public void longGapResetsToNewPoint() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        for (int i = 0; i < 10; i++) {
+            filter.update(LAT, LNG, i * 1000L, 5);
+        }
+        // 两分钟没有定位，然后出现在1公里以外：直接用新的点，不做平滑
+        double lat = LAT + 1000 / METERS_PER_DEGREE;
+        assertTrue(filter.update(lat, LNG, 9000L + 120_000L, 5));
+        assertEquals(lat, filter.getLatitude(), 1e-9);
+        assertEquals(LNG, filter.getLongitude(), 1e-9);
+        assertEquals(0, filter.getSpeed(), 1e-9);
+    }
+
+    @Test
+    public void outOfOrderPointOnlyCorrects() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        filter.update(LAT, LNG, 10_000L, 5);
+        filter.update(LAT, LNG, 11_000L, 5);
+        // 时间倒退的点不会让滤波器重置，也不会产生无穷大的速度
+        filter.update(LAT + 2 / METERS_PER_DEGREE, LNG, 5_000L, 5);
+        assertTrue(filter.isInitialized());
+        assertTrue(Double.isFinite(filter.getLatitude()));
+        assertTrue(filter.getSpeed() < 10);
+        assertTrue(distance(filter.getLatitude(), filter.getLongitude(), LAT, LNG) < 2);
+    }
+
+    @Test
+    public void inaccuratePointMovesLess() {
+        LocationKalmanFilter accurate = new LocationKalmanFilter();
+        LocationKalmanFilter inaccurate = new LocationKalmanFilter();
+        for (int i = 0; i < 10; i++) {
+            accurate.update(LAT, LNG, i * 1000L, 5);
+            inaccurate.update(LAT, LNG, i * 1000L, 5);
+        }
+        // 同样跳到30米外，精度100米的点几乎不被相信
+        double lat = LAT + 30 / METERS_PER_DEGREE;
+        accurate.update(lat, LNG, 10_000L, 5);
+        assertFalse(inaccurate.update(lat, LNG, 10_000L, 100));
+        assertTrue(distance(inaccurate.getLatitude(), LNG, LAT, LNG)
+                < distance(accurate.getLatitude(), LNG, LAT, LNG) / 3);
+    }
+
+    @Test
+    public void unknownAccuracyUsesDefault() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        filter.update(LAT, LNG, 0, 0);
+        filter.update(LAT + 1 / METERS_PER_DEGREE, LNG, 1000, -1);
+        assertTrue(Double.isFinite(filter.getLatitude()));
+        assertTrue(filter.getLatitude() > LAT && filter.getLatitude() < LAT + 1 / METERS_PER_DEGREE);
+    }
+
+    // ========== 工具方法 ==========
+
+    private static double metersPerDegreeLng() {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT));
+    }
+
+    /**
+     * 两点之间的距离（米，局部平面近似）
+     */
+    private static double distance(double lat1, double lng1, double lat2, double lng2) {
+        double dy = (lat1 - lat2) * METERS_PER_DEGREE;
+        double dx = (lng1 - lng2) * metersPerDegreeLng();
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.prt.module.Location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.example.prt.module.WebSockets.WebSocketMessage;
+
+/**
+ * LocationUpdate.parse的单元测试
+ *
+ * 没有坐标或者坐标无效的消息不能变成(0,0)
+ */
+public class LocationUpdateTest {
+
+    @Test
+    public void parsesFullUpdate() {
+        LocationUpdate update = parse("{\"petId\":\"pet1\",\"lat\":39.9,\"lng\":116.4,\"accuracy\":5.0,\"time\":1234}");
+        assertNotNull(update);
+        assertEquals("pet1", update.getPetId());
+        assertEquals(39.9, update.getLat(), 0);
+        assertEquals(116.4, update.getLng(), 0);
+        assertEquals(5.0, update.getAccuracy(), 0);
+        assertEquals(1234, update.getTime());
+    }
+
+    @Test
+    public void fillsDefaults() {
+        LocationUpdate update = parse("{\"lat\":0,\"lng\":0}");
+        assertNotNull(update);
+        assertEquals(LocationUpdate.DEFAULT_PET_ID, update.getPetId());
+        assertEquals(42, update.getTime());
+    }
+
+    @Test
+    public void rejectsMissingCoordinates() {
+        assertNull(parse("{\"petId\":\"pet1\"}"));
+        assertNull(parse("{\"lat\":39.9}"));
+        assertNull(parse("{\"lng\":116.4}"));
+        assertNull(parse("{\"lat\":null,\"lng\":116.4}"));
+    }
+
+    @Test
+    public void rejectsInvalidCoordinates() {
+        assertNull(parse("{\"lat\":NaN,\"lng\":116.4}"));
+        assertNull(parse("{\"lat\":39.9,\"lng\":Infinity}"));
+        assertNull(parse("{\"lat\":91,\"lng\":116.4}"));
+        assertNull(parse("{\"lat\":39.9,\"lng\":-180.5}"));
+    }
+
+    @Test
+    public void rejectsNonJson() {
+        assertNull(parse("服务器已收到位置信息"));
+        assertNull(parse(null));
+    }
+
+    private static LocationUpdate parse(String data) {
+        WebSocketMessage message = new WebSocketMessage(WebSocketMessage.TYPE_LOCATION_UPDATE, data);
+        message.setTimestamp(42);
+        return LocationUpdate.parse(message);
+    }
+}
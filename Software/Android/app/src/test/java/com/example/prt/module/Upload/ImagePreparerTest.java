@@ -0,0 +1,257 @@
+package com.example.prt.module.Upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * ImagePreparer的单元测试和基准测试
+ *
+ * 1. sampleSize：各种尺寸、方向、目标长边下的inSampleSize
+ * 2. 基准测试：在JVM上用javax.imageio按同样的步骤处理1200万像素的照片
+ *    （读尺寸 → 按sampleSize隔行隔列解码 → 缩放到长边 → 按画质重新压缩JPEG），
+ *    PARALLEL个线程同时处理，输出吞吐量和压缩前后的大小
+ *    BitmapFactory和Bitmap.compress只能在手机上运行，真机上的数字看ImagePreparer的统计和日志
+ */
+public class ImagePreparerTest {
+
+    // 基准测试的照片尺寸（1200万像素，4:3）
+    private static final int PHOTO_WIDTH = 4000;
+    private static final int PHOTO_HEIGHT = 3000;
+
+    // 基准测试用几张不同的照片，每张处理几遍
+    private static final int PHOTOS = 3;
+    private static final int ROUNDS = 3;
+
+    // 和ImagePreparer一样同时处理3张
+    private static final int PARALLEL = 3;
+
+    // ========== sampleSize ==========
+
+    @Test
+    public void sampleSizeKeepsLongEdgeAtLeastTarget() {
+        // 4000/2=2000 >= 1024，4000/4=1000 < 1024
+        assertEquals(2, ImagePreparer.sampleSize(4000, 3000, 1024));
+        // 1200万像素手机照片
+        assertEquals(2, ImagePreparer.sampleSize(4032, 3024, 1024));
+        // 4096/4=1024，刚好等于目标也可以
+        assertEquals(4, ImagePreparer.sampleSize(4096, 3072, 1024));
+        assertEquals(8, ImagePreparer.sampleSize(8192, 6144, 1024));
+    }
+
+    @Test
+    public void sampleSizeUsesLongSideForPortrait() {
+        assertEquals(ImagePreparer.sampleSize(4000, 3000, 1024), ImagePreparer.sampleSize(3000, 4000, 1024));
+        // 很窄的长图按长边算
+        assertEquals(4, ImagePreparer.sampleSize(500, 4800, 1024));
+    }
+
+    @Test
+    public void sampleSizeIsOneForSmallImages() {
+        assertEquals(1, ImagePreparer.sampleSize(1024, 768, 1024));
+        assertEquals(1, ImagePreparer.sampleSize(2047, 1000, 1024));
+        assertEquals(1, ImagePreparer.sampleSize(640, 480, 1024));
+        assertEquals(1, ImagePreparer.sampleSize(1, 1, 1024));
+    }
+
+    @Test
+    public void sampleSizeFollowsTargetEdge() {
+        assertEquals(1, ImagePreparer.sampleSize(4032, 3024, 4032));
+        assertEquals(4, ImagePreparer.sampleSize(4032, 3024, 512));
+        // 4032/16=252 < 256
+        assertEquals(8, ImagePreparer.sampleSize(4032, 3024, 256));
+        assertEquals(4096, ImagePreparer.sampleSize(4096, 4096, 1));
+    }
+
+    @Test
+    public void sampleSizeIsPowerOfTwo() {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            int width = 1 + random.nextInt(10000);
+            int height = 1 + random.nextInt(10000);
+            int edge = 1 + random.nextInt(3000);
+            int sample = ImagePreparer.sampleSize(width, height, edge);
+            int longSide = Math.max(width, height);
+            assertEquals(0, sample & (sample - 1));
+            // 长边不小于目标（原图就比目标小时不采样）
+            assertTrue(sample == 1 || longSide / sample >= edge);
+            // 已经是最大的：再大一倍就小于目标了
+            assertTrue(longSide / (sample * 2) < edge);
+        }
+    }
+
+    // ========== 基准测试 ==========
+
+    @Test
+    public void benchmarkThroughputAndOutputSize() throws Exception {
+        // 相机原图：画质95的JPEG
+        final List<byte[]> photos = new ArrayList<>();
+        long inputBytes = 0;
+        for (int i = 0; i < PHOTOS; i++) {
+            byte[] photo = encodeJpeg(syntheticPhoto(PHOTO_WIDTH, PHOTO_HEIGHT, i), 95);
+            photos.add(photo);
+            inputBytes += photo.length;
+        }
+
+        // 预热（JIT）
+        prepare(photos.get(0), ImagePreparer.DEFAULT_LONG_EDGE, ImagePreparer.DEFAULT_QUALITY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLEL);
+        try {
+            long start = System.nanoTime();
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (final byte[] photo : photos) {
+                    results.add(executor.submit(
+                            () -> prepare(photo, ImagePreparer.DEFAULT_LONG_EDGE, ImagePreparer.DEFAULT_QUALITY)));
+                }
+            }
+            long outputBytes = 0;
+            for (Future<byte[]> result : results) {
+                byte[] output = result.get();
+                outputBytes += output.length;
+                BufferedImage image = ImageIO.read(new ByteArrayInputStream(output));
+                assertEquals(ImagePreparer.DEFAULT_LONG_EDGE, Math.max(image.getWidth(), image.getHeight()));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            int count = results.size();
+            double averageInput = inputBytes / (double) PHOTOS;
+            double averageOutput = outputBytes / (double) count;
+            System.out.println(String.format(Locale.US,
+                    "ImagePreparer: %d张%dx%d，%d线程，%.1f张/秒，原图平均%dKB → %dKB（%.1f%%）",
+                    count, PHOTO_WIDTH, PHOTO_HEIGHT, PARALLEL, count / seconds,
+                    (long) averageInput / 1024, (long) averageOutput / 1024,
+                    100 * averageOutput / averageInput));
+
+            // 1024长边、画质85的输出应该远小于原图
+            assertTrue(averageOutput * 5 < averageInput);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // ========== 工具方法 ==========
+
+    /**
+     * 按ImagePreparer的步骤处理一张JPEG（EXIF方向不影响大小和耗时，这里不处理）
+     */
+    private static byte[] prepare(byte[] jpeg, int edge, int quality) throws IOException {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("jpeg").next();
+        BufferedImage decoded;
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg))) {
+            // 1. 只读尺寸
+            reader.setInput(in);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+
+            // 2. 隔行隔列采样解码
+            int sample = ImagePreparer.sampleSize(width, height, edge);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(sample, sample, 0, 0);
+            decoded = reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+
+        // 3. 双线性缩放到目标长边
+        int longSide = Math.max(decoded.getWidth(), decoded.getHeight());
+        BufferedImage scaled = decoded;
+        if (longSide > edge) {
+            float scale = edge / (float) longSide;
+            int width = Math.round(decoded.getWidth() * scale);
+            int height = Math.round(decoded.getHeight() * scale);
+            scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = scaled.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(decoded, 0, 0, width, height, null);
+            graphics.dispose();
+        }
+
+        // 4. 重新压缩
+        return encodeJpeg(scaled, quality);
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, int quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality / 100f);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 像照片一样的测试图：大块的渐变和色块（食物、盘子、桌面），再加上传感器噪声
+     */
+    private static BufferedImage syntheticPhoto(int width, int height, int seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] centersX = new int[6];
+        int[] centersY = new int[6];
+        int[] colors = new int[6];
+        for (int i = 0; i < centersX.length; i++) {
+            centersX[i] = random.nextInt(width);
+            centersY[i] = random.nextInt(height);
+            colors[i] = random.nextInt(0xFFFFFF);
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // 离哪个中心最近就用哪个颜色，再按位置加一点渐变
+                int nearest = 0;
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < centersX.length; i++) {
+                    long dx = x - centersX[i];
+                    long dy = y - centersY[i];
+                    long distance = dx * dx + dy * dy;
+                    if (distance < best) {
+                        best = distance;
+                        nearest = i;
+                    }
+                }
+                int shade = (x + y) * 64 / (width + height) + random.nextInt(12) - 6;
+                int r = clamp(((colors[nearest] >> 16) & 0xFF) + shade);
+                int g = clamp(((colors[nearest] >> 8) & 0xFF) + shade);
+                int b = clamp((colors[nearest] & 0xFF) + shade);
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
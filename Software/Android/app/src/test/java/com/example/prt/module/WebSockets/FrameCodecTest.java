@@ -0,0 +1,116 @@
+package com.example.prt.module.WebSockets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import okio.ByteString;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * FrameCodec的单元测试
+ *
+ * 1. 压缩和解压往返：多条消息共用压缩窗口，解压结果和原文一样
+ * 2. 小于阈值的消息不压缩
+ * 3. 解压后的大小限制：压缩炸弹、超过上限的消息直接失败，不会把内存占满
+ * 4. 数据损坏时返回null
+ */
+public class FrameCodecTest {
+
+    // ========== 往返 ==========
+
+    @Test
+    public void roundTripKeepsWindowAcrossMessages() {
+        FrameCodec sender = new FrameCodec();
+        FrameCodec receiver = new FrameCodec();
+        for (int i = 0; i < 20; i++) {
+            String text = historyPage(i);
+            ByteString frame = sender.encode(text);
+            assertNotNull(frame);
+            assertEquals(FrameCodec.FORMAT_DEFLATE, frame.toByteArray()[0]);
+            assertEquals(text, receiver.decode(frame));
+        }
+        assertTrue(sender.getCompressionRatio() < 0.5f);
+    }
+
+    @Test
+    public void smallMessagesAreNotCompressed() {
+        FrameCodec codec = new FrameCodec();
+        assertNull(codec.encode("{\"type\":\"ping\"}"));
+        assertEquals(1f, codec.getCompressionRatio(), 0f);
+    }
+
+    // ========== 解压后的大小限制 ==========
+
+    @Test
+    public void decodeRejectsCompressionBomb() {
+        // 9MB的0压缩之后只有几KB
+        byte[] bomb = deflateFrame(new byte[Fragmenter.MAX_MESSAGE_LENGTH + 1024 * 1024]);
+        assertTrue(bomb.length < 64 * 1024);
+
+        FrameCodec receiver = new FrameCodec();
+        assertNull(receiver.decode(ByteString.of(bomb)));
+    }
+
+    @Test
+    public void decodeAcceptsMessageAtLimit() {
+        byte[] raw = new byte[Fragmenter.MAX_MESSAGE_LENGTH];
+        Arrays.fill(raw, (byte) 'a');
+        FrameCodec receiver = new FrameCodec();
+        String text = receiver.decode(ByteString.of(deflateFrame(raw)));
+        assertNotNull(text);
+        assertEquals(raw.length, text.length());
+    }
+
+    @Test
+    public void decodeRejectsCorruptData() {
+        FrameCodec receiver = new FrameCodec();
+        assertNull(receiver.decode(ByteString.of(new byte[]{FrameCodec.FORMAT_DEFLATE, (byte) 0xFF, (byte) 0xFF, 0x12, 0x34})));
+        assertNull(receiver.decode(ByteString.of(new byte[]{9, 1, 2, 3})));
+    }
+
+    // ========== 工具方法 ==========
+
+    /**
+     * 按服务器的方式压缩成一帧：[FORMAT_DEFLATE][原始deflate，SYNC_FLUSH]
+     */
+    static byte[] deflateFrame(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(FrameCodec.FORMAT_DEFLATE);
+        deflater.setInput(raw);
+        byte[] buffer = new byte[8 * 1024];
+        int count;
+        do {
+            count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            out.write(buffer, 0, count);
+        } while (count == buffer.length);
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /**
+     * 一页聊天记录（和服务器发的history消息差不多）
+     */
+    static String historyPage(int page) {
+        StringBuilder builder = new StringBuilder("{\"type\":\"chat_history\",\"data\":[");
+        for (int i = 0; i < 20; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            int id = page * 20 + i;
+            builder.append("{\"messageId\":\"msg_").append(1700000000000L + id * 7919L)
+                    .append("\",\"senderId\":\"user_").append(id % 3)
+                    .append("\",\"content\":\"今天带小白去公园散步了").append(id)
+                    .append("圈\",\"timestamp\":").append(1700000000000L + id * 60000L)
+                    .append('}');
+        }
+        return builder.append("]}").toString();
+    }
+}
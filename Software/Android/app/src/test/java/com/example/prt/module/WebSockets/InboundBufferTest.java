@@ -0,0 +1,87 @@
+package com.example.prt.module.WebSockets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * InboundBuffer的单元测试
+ *
+ * 位置消息平时一条不丢，只有缓冲区满了才合并
+ */
+public class InboundBufferTest {
+
+    @Test
+    public void keepsEveryLocationWhileNotFull() {
+        InboundBuffer buffer = new InboundBuffer();
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(location("pet1", i));
+        }
+        assertEquals(10, buffer.size());
+        assertEquals(0, buffer.getTotalShedCount());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(location("pet1", i).getData(), buffer.poll().getData());
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void coalescesLocationsWhenFull() {
+        InboundBuffer buffer = new InboundBuffer();
+        buffer.offer(location("pet1", 0));
+        buffer.offer(location("pet2", 0));
+        // 用不能丢的消息把缓冲区塞满
+        for (int i = 2; i < InboundBuffer.CAPACITY; i++) {
+            buffer.offer(new WebSocketMessage(WebSocketMessage.TYPE_CHAT, "m" + i));
+        }
+        buffer.offer(location("pet1", 1));
+        buffer.offer(location("pet1", 2));
+
+        // pet1的位置换成最新的，不占新的位置；pet2不受影响
+        assertEquals(InboundBuffer.CAPACITY, buffer.size());
+        assertEquals(2, buffer.getShedCount(WebSocketMessage.TYPE_LOCATION));
+
+        int locations = 0;
+        WebSocketMessage message;
+        while ((message = buffer.poll()) != null) {
+            if (WebSocketMessage.TYPE_LOCATION.equals(message.getType())) {
+                locations++;
+                if (message.getData().contains("pet1")) {
+                    assertEquals(location("pet1", 2).getData(), message.getData());
+                } else {
+                    assertEquals(location("pet2", 0).getData(), message.getData());
+                }
+            }
+        }
+        assertEquals(2, locations);
+    }
+
+    @Test
+    public void coalescesIntoNewestPendingEntry() {
+        InboundBuffer buffer = new InboundBuffer();
+        buffer.offer(location("pet1", 0));
+        buffer.offer(location("pet1", 1));
+        // 取出最早的一条，合并表里记的应该还是还在排队的那一项
+        assertEquals(location("pet1", 0).getData(), buffer.poll().getData());
+
+        for (int i = 1; i < InboundBuffer.CAPACITY; i++) {
+            buffer.offer(new WebSocketMessage(WebSocketMessage.TYPE_CHAT, "m" + i));
+        }
+        buffer.offer(location("pet1", 2));
+        assertEquals(InboundBuffer.CAPACITY, buffer.size());
+        assertEquals(1, buffer.getShedCount(WebSocketMessage.TYPE_LOCATION));
+
+        WebSocketMessage message;
+        while ((message = buffer.poll()) != null) {
+            if (WebSocketMessage.TYPE_LOCATION.equals(message.getType())) {
+                assertEquals(location("pet1", 2).getData(), message.getData());
+            }
+        }
+    }
+
+    private static WebSocketMessage location(String petId, int i) {
+        return new WebSocketMessage(WebSocketMessage.TYPE_LOCATION,
+                "{\"petId\":\"" + petId + "\",\"lat\":" + (39.9 + i * 0.001) + ",\"lng\":116.4}");
+    }
+}